@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.lip6.move.pnml2nupn.export.ConversionOptions;
+import fr.lip6.move.pnml2nupn.generator.NetShape;
+import fr.lip6.move.pnml2nupn.generator.PNMLGenerator;
+import it.unimi.dsi.fastutil.objects.Object2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+/**
+ * A generated PNML net, written once per trial in a temporary directory, and
+ * the NUPN file it is converted into. Override the size on the command line,
+ * e.g. <code>-p size=1000000</code>.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractNetState {
+
+	/* Number of places, about as many transitions */
+	@Param({ "1000", "100000" })
+	public int size;
+
+	public File pnml;
+	public File nupn;
+	private File dir;
+
+	/**
+	 * Returns the shape of the generated net.
+	 */
+	protected abstract NetShape.Shape getShape();
+
+	/**
+	 * Tells whether the generated net has a NUPN tool specific section.
+	 */
+	protected boolean isNupn() {
+		return false;
+	}
+
+	@Setup(Level.Trial)
+	public void writeNet() throws IOException {
+		final String name = getShape().name().toLowerCase() + size + (isNupn() ? "-nupn" : "");
+		dir = Files.createTempDirectory("pnml2nupn-bench").toFile();
+		pnml = new File(dir, name + ".pnml");
+		nupn = new File(dir, name + ".nupn");
+		new PNMLGenerator(getShape(), 2L * size, PNMLGenerator.DEFAULT_SEED).setNupn(isNupn()).write(pnml);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteNet() {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Returns the default conversion options: no unit safeness checking, PNML
+	 * ids as labels.
+	 */
+	public static ConversionOptions getDefaultOptions() {
+		return new ConversionOptions(new Object2BooleanOpenHashMap<>(), new Object2LongOpenHashMap<>(), 0);
+	}
+}
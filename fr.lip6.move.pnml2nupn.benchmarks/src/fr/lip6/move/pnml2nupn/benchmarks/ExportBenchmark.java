@@ -0,0 +1,56 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import fr.lip6.move.pnml2nupn.exceptions.EarlyStopException;
+import fr.lip6.move.pnml2nupn.exceptions.InvalidPNMLTypeException;
+import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.export.ConversionReport;
+import fr.lip6.move.pnml2nupn.export.PNML2NUPNExporter;
+import fr.lip6.move.pnml2nupn.export.PNML2NUPNFactory;
+
+/**
+ * Whole conversion of a PNML file into a NUPN file, through the public
+ * exporter API.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+	private final PNML2NUPNExporter exporter = PNML2NUPNFactory.instance()
+			.createExporter(AbstractNetState.getDefaultOptions());
+
+	@Benchmark
+	public ConversionReport export2NUPN(NetState net) throws PNMLImportExportException, InterruptedException,
+			IOException, InvalidPNMLTypeException, EarlyStopException {
+		return exporter.export2NUPN(net.pnml, net.nupn, NOPLogger.NOP_LOGGER);
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+import fr.lip6.move.pnml2nupn.generator.NetShape;
+
+/**
+ * A generated net of each shape. Override the shapes on the command line, e.g.
+ * <code>-p shape=RING</code>.
+ */
+public class NetState extends AbstractNetState {
+
+	@Param({ "RING", "PHILOSOPHERS", "SPARSE", "UNSAFE" })
+	public NetShape.Shape shape;
+
+	@Override
+	protected NetShape.Shape getShape() {
+		return shape;
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
+import fr.lip6.move.pnml2nupn.utils.XMLNav;
+
+/**
+ * VTD parsing of the PNML document, with the standard engine from memory, and
+ * with the extended engine from a memory mapped file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParseBenchmark {
+
+	@Benchmark
+	public XMLNav openXMLStream(NetState net) throws PNMLImportExportException {
+		return PNML2NUPNUtils.openXMLStream(net.pnml, PNML2NUPNUtils.STANDARD_PARSER_MAX_SIZE);
+	}
+
+	@Benchmark
+	public XMLNav openXMLStreamHuge(NetState net) throws PNMLImportExportException {
+		return PNML2NUPNUtils.openXMLStream(net.pnml, 0L);
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.lip6.move.pnml2nupn.export.impl.ByteRingBuffer;
+import fr.lip6.move.pnml2nupn.export.impl.NUPNLineEncoder;
+import fr.lip6.move.pnml2nupn.export.impl.OutChannelBean;
+import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
+
+/**
+ * Writes NUPN transition lines (<code>T&lt;n&gt; #1 p #1 q</code>) into a
+ * file: through the encoder, the ring buffer and the writer thread, or through
+ * {@link PNML2NUPNUtils#writeToChannel(OutChannelBean, String)}, 1024 lines
+ * at a time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class WriterBenchmark {
+
+	/* Lines written by each call to writeToChannel */
+	private static final int LINES_PER_WRITE = 1024;
+
+	@Param({ "100000", "1000000" })
+	public int nbLines;
+
+	private File out;
+
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		out = File.createTempFile("pnml2nupn-bench", ".nupn");
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		out.delete();
+	}
+
+	@Benchmark
+	public long writerPipeline() throws IOException, InterruptedException {
+		final OutChannelBean ocb = PNML2NUPNUtils.openOutChannel(out);
+		final ByteRingBuffer queue = PNML2NUPNUtils.initQueue();
+		final NUPNLineEncoder enc = new NUPNLineEncoder(queue);
+		final Thread writer = PNML2NUPNUtils.startWriter(ocb, queue);
+		for (long t = 0L; t < nbLines; t++) {
+			enc.token("T").number(t).space().count(1L).space().number(t).space().count(1L).space().number(t + 1L)
+					.newLine();
+		}
+		PNML2NUPNUtils.stopWriter(queue);
+		writer.join();
+		final long size = ocb.getFc().size();
+		PNML2NUPNUtils.closeChannel(ocb);
+		return size;
+	}
+
+	@Benchmark
+	public long writeToChannel() throws IOException {
+		final OutChannelBean ocb = PNML2NUPNUtils.openOutChannel(out);
+		final StringBuilder lines = new StringBuilder();
+		for (long t = 0L; t < nbLines; t++) {
+			lines.append('T').append(t).append(" #1 ").append(t).append(" #1 ").append(t + 1L).append('\n');
+			if ((t + 1L) % LINES_PER_WRITE == 0L || t == nbLines - 1L) {
+				PNML2NUPNUtils.writeToChannel(ocb, lines.toString());
+				lines.setLength(0);
+			}
+		}
+		final long size = ocb.getFc().size();
+		PNML2NUPNUtils.closeChannel(ocb);
+		return size;
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import fr.lip6.move.pnml2nupn.benchmarks.AbstractNetState;
+import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.generator.NetShape;
+import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
+import fr.lip6.move.pnml2nupn.utils.XMLNav;
+
+/**
+ * Extraction of the NUPN from the tool specific section of a PNML net, without
+ * the parsing of the document, on rings with a NUPN tool specific section.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class NativeExtractionBenchmark {
+
+	/**
+	 * A parsed net, carrying a NUPN tool specific section.
+	 */
+	public static class ParsedState extends AbstractNetState {
+		XMLNav vn;
+
+		@Override
+		protected NetShape.Shape getShape() {
+			return NetShape.Shape.RING;
+		}
+
+		@Override
+		protected boolean isNupn() {
+			return true;
+		}
+
+		@Setup(Level.Invocation)
+		public void parse() throws PNMLImportExportException {
+			vn = PNML2NUPNUtils.openXMLStream(pnml);
+		}
+	}
+
+	@Benchmark
+	public void extractNUPN(ParsedState s) throws PNMLImportExportException, InterruptedException, IOException {
+		new NativeNUPNExtractor(s.pnml, OutputTarget.toFile(s.nupn), NOPLogger.NOP_LOGGER,
+				new ConversionContext(AbstractNetState.getDefaultOptions())).extractNUPN(s.vn);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+import com.ximpleware.extended.NavExceptionHuge;
+
+import fr.lip6.move.pnml2nupn.benchmarks.NetState;
+import fr.lip6.move.pnml2nupn.exceptions.InternalException;
+import fr.lip6.move.pnml2nupn.exceptions.InvalidNetException;
+import fr.lip6.move.pnml2nupn.exceptions.InvalidSafeNetException;
+import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
+
+/**
+ * Phases of the translation of a PNML net into NUPN. Each invocation runs on a
+ * new conversion context, prepared up to the measured phase: parsing, scanning
+ * and the previous phases are not measured. The NUPN output is written by the
+ * usual writer thread.
+ * <p>
+ * This class lives in the exporter package, to reach its package-private
+ * phases.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TranslationBenchmark {
+
+	/**
+	 * A conversion context with a scanned net, ready to export places.
+	 */
+	public static class PlacesState extends NetState {
+		ConversionContext context;
+		PNMLScanner scanner;
+		private OutChannelBean ocb;
+		private Thread writer;
+
+		@Setup(Level.Invocation)
+		public void setUp() throws PNMLImportExportException, NavExceptionHuge, InvalidNetException, IOException,
+				InterruptedException {
+			prepare();
+		}
+
+		void prepare() throws PNMLImportExportException, NavExceptionHuge, InvalidNetException, IOException,
+				InterruptedException {
+			context = new ConversionContext(getDefaultOptions());
+			context.initLog(NOPLogger.NOP_LOGGER);
+			context.openXMLStream(pnml);
+			context.hasNUPNToolSpecificSection(pnml);
+			scanner = context.scan();
+			ocb = PNML2NUPNUtils.openOutChannel(nupn);
+			final ByteRingBuffer queue = PNML2NUPNUtils.initQueue();
+			writer = PNML2NUPNUtils.startWriter(ocb, queue);
+			context.initQueues(queue);
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws InterruptedException, IOException {
+			PNML2NUPNUtils.stopWriter(context.getNupnQueue());
+			writer.join();
+			PNML2NUPNUtils.closeChannel(ocb);
+		}
+	}
+
+	/**
+	 * A conversion context with numbered places, ready to build transitions.
+	 */
+	public static class TransitionsState extends PlacesState {
+		@Override
+		void prepare() throws PNMLImportExportException, NavExceptionHuge, InvalidNetException, IOException,
+				InterruptedException {
+			super.prepare();
+			context.indexUnsafeArcsAndPlaces(scanner);
+		}
+	}
+
+	/**
+	 * A conversion context with built transitions, ready to write the unsafe
+	 * arcs pragma.
+	 */
+	public static class PragmaState extends TransitionsState {
+		@Override
+		void prepare() throws PNMLImportExportException, NavExceptionHuge, InvalidNetException, IOException,
+				InterruptedException {
+			super.prepare();
+			context.buildTransitions(scanner);
+		}
+	}
+
+	@Benchmark
+	public void exportPlacesIntoUnits(PlacesState s) throws NavExceptionHuge, InvalidSafeNetException,
+			InternalException, InterruptedException, InvalidNetException, IOException {
+		s.context.exportPlacesIntoUnits(s.scanner, s.context.getNupnQueue(), s.context.getPsQueue());
+	}
+
+	@Benchmark
+	public void buildTransitions(TransitionsState s) throws InterruptedException, NavExceptionHuge {
+		s.context.buildTransitions(s.scanner);
+	}
+
+	@Benchmark
+	public void buildUnsafeArcsPragma(PragmaState s) throws InterruptedException, NavExceptionHuge {
+		s.context.buildUnsafeArcsPragma(s.context.getNupnQueue());
+	}
+}
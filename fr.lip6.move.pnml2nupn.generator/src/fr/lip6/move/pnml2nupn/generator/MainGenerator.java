@@ -0,0 +1,81 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.generator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Command line of the generator:
+ * <code>java [-Dshape=ring|philosophers|sparse|unsafe] [-Dnodes=1e6] [-Dseed=N] [-Dnames=false] [-Dnupn=true] -jar pnml2nupn-generator.jar out.pnml</code>.
+ * The output path <code>-</code> stands for the standard output.
+ */
+public final class MainGenerator {
+
+	public static final String SHAPE = "shape";
+	public static final String NODES = "nodes";
+	public static final String SEED = "seed";
+	public static final String NAMES = "names";
+	public static final String NUPN = "nupn";
+	public static final String STDOUT = "-";
+
+	private MainGenerator() {
+		super();
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("The path of the PNML file to generate is expected (- for the standard output).");
+			System.exit(-1);
+		}
+		try {
+			final NetShape.Shape shape = NetShape.Shape
+					.valueOf(System.getProperty(SHAPE, "ring").toUpperCase(Locale.ROOT));
+			final long nbNodes = parseCount(System.getProperty(NODES, "1000"));
+			final long seed = Long.getLong(SEED, PNMLGenerator.DEFAULT_SEED);
+			final PNMLGenerator gen = new PNMLGenerator(shape, nbNodes, seed)
+					.setNames(Boolean.parseBoolean(System.getProperty(NAMES, "true")))
+					.setNupn(Boolean.getBoolean(NUPN));
+			final long startTime = System.nanoTime();
+			final long nbBytes = STDOUT.equals(args[0]) ? gen.write(new FileOutputStream(java.io.FileDescriptor.out).getChannel())
+					: gen.write(new File(args[0]));
+			final NetShape net = gen.getNet();
+			System.err.println("Generated " + shape.name().toLowerCase(Locale.ROOT) + " net: " + net.getNbPlaces()
+					+ " places, " + net.getNbTransitions() + " transitions, " + net.getNbArcs() + " arcs, " + nbBytes
+					+ " bytes in " + (System.nanoTime() - startTime) / 1.0e9 + " seconds.");
+		} catch (IllegalArgumentException e) {
+			System.err.println("Invalid option: " + e.getMessage());
+			System.exit(-1);
+		} catch (IOException e) {
+			System.err.println("Could not write the net: " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Parses a count, either an integer or in scientific notation (e.g. 1e8).
+	 */
+	static long parseCount(String s) {
+		try {
+			return Long.parseLong(s);
+		} catch (NumberFormatException e) {
+			final double d = Double.parseDouble(s);
+			if (d < 0 || d > Long.MAX_VALUE || d != Math.rint(d)) {
+				throw new NumberFormatException("not a count: " + s);
+			}
+			return (long) d;
+		}
+	}
+}
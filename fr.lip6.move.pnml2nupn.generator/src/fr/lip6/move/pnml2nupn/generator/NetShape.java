@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.generator;
+
+import java.io.IOException;
+
+/**
+ * The structure of a generated net. Everything is computed from node indexes
+ * (and the seed), so that places, transitions, arcs and units are streamed
+ * without being stored.
+ */
+public abstract class NetShape {
+
+	/**
+	 * The shapes of net the generator knows.
+	 */
+	public enum Shape {
+		/** A single token circulating along a cycle: 1-safe. */
+		RING,
+		/** Dining philosophers: 1-safe. */
+		PHILOSOPHERS,
+		/** Transitions with 1 to 3 input and output places, picked at random. */
+		SPARSE,
+		/** Like {@link #SPARSE}, with some arc inscriptions and markings > 1. */
+		UNSAFE;
+
+		/**
+		 * Returns the shape of about <code>nbNodes</code> places and transitions.
+		 */
+		public NetShape create(long nbNodes, long seed) {
+			switch (this) {
+			case RING:
+				return new Ring(nbNodes);
+			case PHILOSOPHERS:
+				return new Philosophers(nbNodes);
+			case SPARSE:
+				return new RandomSparse(nbNodes, seed, false);
+			default:
+				return new RandomSparse(nbNodes, seed, true);
+			}
+		}
+	}
+
+	public abstract long getNbPlaces();
+
+	public abstract long getNbTransitions();
+
+	/**
+	 * Returns the number of arcs, as written by {@link #writeArcs(PNMLWriter)}.
+	 */
+	public abstract long getNbArcs();
+
+	/**
+	 * Returns true if the net is known to be 1-safe.
+	 */
+	public abstract boolean isSafe();
+
+	public abstract long getMarking(long place);
+
+	/**
+	 * Returns the name of a place, to be followed by its index.
+	 */
+	public abstract String getPlaceName(long place);
+
+	/**
+	 * Returns the name of a transition, to be followed by its index.
+	 */
+	public abstract String getTransitionName(long transition);
+
+	/**
+	 * Writes all the arcs, numbered from 0.
+	 */
+	public abstract void writeArcs(PNMLWriter w) throws IOException;
+
+	/**
+	 * Returns the number of leaf units of the NUPN structure, numbered from 1
+	 * (unit 0 is the root, which holds no place).
+	 */
+	public abstract long getNbUnits();
+
+	/**
+	 * Writes the places of a leaf unit, separated by spaces.
+	 */
+	public abstract void writeUnitPlaces(long unit, PNMLWriter w) throws IOException;
+
+	/**
+	 * Returns a well mixed 64-bit value of an index, for the given seed: the
+	 * random choices of a node only depend on its index.
+	 */
+	static long mix(long seed, long index) {
+		long z = seed + (index + 1L) * 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns a value in [0, bound[ drawn from a mixed value.
+	 */
+	static long draw(long mixed, long bound) {
+		return Math.floorMod(mixed, bound);
+	}
+}
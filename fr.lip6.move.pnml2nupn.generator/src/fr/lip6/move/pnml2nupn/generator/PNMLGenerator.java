@@ -0,0 +1,135 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Generates a PNML P/T net of a given shape and size, in a single streaming
+ * pass: <code>/pnml/net/page</code> holds the optional NUPN tool specific
+ * section, then the places, the transitions and the arcs. The same shape,
+ * size and seed always give the same document.
+ */
+public final class PNMLGenerator {
+
+	public static final long DEFAULT_SEED = 0x504e4d4cL;
+	private static final String PTNET_TYPE = "http://www.pnml.org/version-2009/grammar/ptnet";
+
+	private final NetShape.Shape shape;
+	private final NetShape net;
+	private boolean names;
+	private boolean nupn;
+
+	/**
+	 * @param shape
+	 *            the shape of the net
+	 * @param nbNodes
+	 *            the number of places and transitions, rounded down to what
+	 *            the shape allows
+	 * @param seed
+	 *            the seed of the random choices
+	 */
+	public PNMLGenerator(NetShape.Shape shape, long nbNodes, long seed) {
+		this.shape = shape;
+		this.net = shape.create(nbNodes, seed);
+		this.names = true;
+	}
+
+	/**
+	 * Gives a name to each place and transition (default: true).
+	 */
+	public PNMLGenerator setNames(boolean names) {
+		this.names = names;
+		return this;
+	}
+
+	/**
+	 * Adds a NUPN tool specific section (default: false).
+	 */
+	public PNMLGenerator setNupn(boolean nupn) {
+		this.nupn = nupn;
+		return this;
+	}
+
+	public NetShape getNet() {
+		return net;
+	}
+
+	/**
+	 * Writes the net into a file.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long write(File out) throws IOException {
+		return write(FileChannel.open(out.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	/**
+	 * Writes the net into a channel, then closes it.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long write(WritableByteChannel out) throws IOException {
+		try (PNMLWriter w = new PNMLWriter(out)) {
+			w.ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			w.ascii("<pnml xmlns=\"http://www.pnml.org/version-2009/grammar/pnml\">\n");
+			w.ascii(" <net id=\"").ascii(shape.name().toLowerCase()).number(net.getNbPlaces() + net.getNbTransitions())
+					.ascii("\" type=\"").ascii(PTNET_TYPE).ascii("\">\n");
+			w.ascii("  <page id=\"page\">\n");
+			if (nupn) {
+				writeToolSpecific(w);
+			}
+			for (long p = 0L, nb = net.getNbPlaces(); p < nb; p++) {
+				w.place(p, names ? net.getPlaceName(p) : null, net.getMarking(p));
+			}
+			for (long t = 0L, nb = net.getNbTransitions(); t < nb; t++) {
+				w.transition(t, names ? net.getTransitionName(t) : null);
+			}
+			net.writeArcs(w);
+			w.ascii("  </page>\n");
+			w.ascii(" </net>\n");
+			w.ascii("</pnml>\n");
+			w.flush();
+			return w.getNbBytes();
+		}
+	}
+
+	private void writeToolSpecific(PNMLWriter w) throws IOException {
+		final long nbUnits = net.getNbUnits();
+		w.ascii("   <toolspecific tool=\"nupn\" version=\"1.1\">\n");
+		w.ascii("    <size places=\"").number(net.getNbPlaces()).ascii("\" transitions=\"")
+				.number(net.getNbTransitions()).ascii("\" arcs=\"").number(net.getNbArcs()).ascii("\"/>\n");
+		w.ascii("    <structure units=\"").number(nbUnits + 1L).ascii("\" root=\"u0\" safe=\"")
+				.ascii(String.valueOf(net.isSafe())).ascii("\">\n");
+		w.ascii("     <unit id=\"u0\"><places/><subunits>");
+		for (long u = 1L; u <= nbUnits; u++) {
+			if (u > 1L) {
+				w.ascii(" ");
+			}
+			w.id("u", u);
+		}
+		w.ascii("</subunits></unit>\n");
+		for (long u = 1L; u <= nbUnits; u++) {
+			w.ascii("     <unit id=\"").id("u", u).ascii("\"><places>");
+			net.writeUnitPlaces(u, w);
+			w.ascii("</places><subunits/></unit>\n");
+		}
+		w.ascii("    </structure>\n");
+		w.ascii("   </toolspecific>\n");
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.generator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams the PNML elements of a P/T net into a channel, through a single
+ * buffer. Numbers are encoded in place, so that writing a node allocates
+ * nothing: nets of 10^8 nodes are written in constant memory.
+ */
+public final class PNMLWriter implements Closeable {
+
+	public static final String PLACE_PREFIX = "p";
+	public static final String TRANSITION_PREFIX = "t";
+	public static final String ARC_PREFIX = "a";
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int MAX_LONG_CHARS = 20;
+	private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+	private final WritableByteChannel out;
+	private final ByteBuffer buffer;
+	private final byte[] digits;
+	private long nbBytes;
+
+	public PNMLWriter(WritableByteChannel out) {
+		this.out = out;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.digits = new byte[MAX_LONG_CHARS];
+	}
+
+	/**
+	 * Writes an ASCII string.
+	 */
+	public PNMLWriter ascii(String s) throws IOException {
+		final int len = s.length();
+		for (int i = 0; i < len;) {
+			ensure(1);
+			final int n = Math.min(len - i, buffer.remaining());
+			for (int k = 0; k < n; k++) {
+				buffer.put((byte) s.charAt(i + k));
+			}
+			i += n;
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the decimal representation of a number.
+	 */
+	public PNMLWriter number(long value) throws IOException {
+		ensure(MAX_LONG_CHARS);
+		if (value == Long.MIN_VALUE) {
+			buffer.put(MIN_LONG);
+			return this;
+		}
+		long v = value;
+		if (v < 0L) {
+			buffer.put((byte) '-');
+			v = -v;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + v % 10L);
+			v /= 10L;
+		} while (v != 0L);
+		while (n > 0) {
+			buffer.put(digits[--n]);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a node id: a prefix followed by an index.
+	 */
+	public PNMLWriter id(String prefix, long index) throws IOException {
+		return ascii(prefix).number(index);
+	}
+
+	/**
+	 * Writes a place, with an optional name (<code>namePrefix index</code>) and
+	 * marking (if > 0).
+	 */
+	public void place(long index, String namePrefix, long marking) throws IOException {
+		ascii("   <place id=\"").id(PLACE_PREFIX, index).ascii("\">");
+		name(namePrefix, index);
+		if (marking > 0L) {
+			ascii("<initialMarking><text>").number(marking).ascii("</text></initialMarking>");
+		}
+		ascii("</place>\n");
+	}
+
+	/**
+	 * Writes a transition, with an optional name (<code>namePrefix index</code>).
+	 */
+	public void transition(long index, String namePrefix) throws IOException {
+		ascii("   <transition id=\"").id(TRANSITION_PREFIX, index).ascii("\">");
+		name(namePrefix, index);
+		ascii("</transition>\n");
+	}
+
+	/**
+	 * Writes an arc between a place and a transition, with its inscription if >
+	 * 1.
+	 *
+	 * @param index
+	 *            index of the arc
+	 * @param place
+	 *            index of the place
+	 * @param transition
+	 *            index of the transition
+	 * @param toTransition
+	 *            true if the place is the source, false if it is the target
+	 * @param inscription
+	 *            the arc inscription
+	 */
+	public void arc(long index, long place, long transition, boolean toTransition, long inscription)
+			throws IOException {
+		ascii("   <arc id=\"").id(ARC_PREFIX, index).ascii("\" source=\"");
+		if (toTransition) {
+			id(PLACE_PREFIX, place).ascii("\" target=\"").id(TRANSITION_PREFIX, transition);
+		} else {
+			id(TRANSITION_PREFIX, transition).ascii("\" target=\"").id(PLACE_PREFIX, place);
+		}
+		ascii("\">");
+		if (inscription > 1L) {
+			ascii("<inscription><text>").number(inscription).ascii("</text></inscription>");
+		}
+		ascii("</arc>\n");
+	}
+
+	private void name(String namePrefix, long index) throws IOException {
+		if (namePrefix != null) {
+			ascii("<name><text>").ascii(namePrefix).number(index).ascii("</text></name>");
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written so far.
+	 */
+	public long getNbBytes() {
+		return nbBytes + buffer.position();
+	}
+
+	private void ensure(int nbBytes) throws IOException {
+		if (buffer.remaining() < nbBytes) {
+			flush();
+		}
+	}
+
+	public void flush() throws IOException {
+		buffer.flip();
+		nbBytes += buffer.remaining();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.generator;
+
+import java.io.IOException;
+
+/**
+ * Dining philosophers around a table. Philosopher i owns the places
+ * <code>p(4i)</code> (thinking, marked), <code>p(4i+1)</code> (has the left
+ * fork), <code>p(4i+2)</code> (eating) and its left fork <code>p(4i+3)</code>
+ * (marked), and the transitions <code>t(3i)</code> (takes the left fork),
+ * <code>t(3i+1)</code> (takes the right fork) and <code>t(3i+2)</code>
+ * (releases both forks). Each philosopher is a unit, and so is each fork.
+ */
+final class Philosophers extends NetShape {
+
+	private static final int THINKING = 0, HAS_LEFT = 1, EATING = 2, FORK = 3;
+	private static final String[] PLACE_NAMES = { "thinking ", "hasLeft ", "eating ", "fork " };
+	private static final String[] TRANSITION_NAMES = { "takeLeft ", "takeRight ", "release " };
+	private final long n;
+
+	Philosophers(long nbNodes) {
+		this.n = Math.max(2L, nbNodes / 7L);
+	}
+
+	private static long place(long philosopher, int kind) {
+		return 4L * philosopher + kind;
+	}
+
+	private long rightFork(long philosopher) {
+		return place((philosopher + 1L) % n, FORK);
+	}
+
+	@Override
+	public long getNbPlaces() {
+		return 4L * n;
+	}
+
+	@Override
+	public long getNbTransitions() {
+		return 3L * n;
+	}
+
+	@Override
+	public long getNbArcs() {
+		return 10L * n;
+	}
+
+	@Override
+	public boolean isSafe() {
+		return true;
+	}
+
+	@Override
+	public long getMarking(long place) {
+		final int kind = (int) (place % 4L);
+		return kind == THINKING || kind == FORK ? 1L : 0L;
+	}
+
+	@Override
+	public String getPlaceName(long place) {
+		return PLACE_NAMES[(int) (place % 4L)];
+	}
+
+	@Override
+	public String getTransitionName(long transition) {
+		return TRANSITION_NAMES[(int) (transition % 3L)];
+	}
+
+	@Override
+	public void writeArcs(PNMLWriter w) throws IOException {
+		long arc = 0L;
+		for (long i = 0L; i < n; i++) {
+			final long takeLeft = 3L * i, takeRight = takeLeft + 1L, release = takeLeft + 2L;
+			w.arc(arc++, place(i, THINKING), takeLeft, true, 1L);
+			w.arc(arc++, place(i, FORK), takeLeft, true, 1L);
+			w.arc(arc++, place(i, HAS_LEFT), takeLeft, false, 1L);
+			w.arc(arc++, place(i, HAS_LEFT), takeRight, true, 1L);
+			w.arc(arc++, rightFork(i), takeRight, true, 1L);
+			w.arc(arc++, place(i, EATING), takeRight, false, 1L);
+			w.arc(arc++, place(i, EATING), release, true, 1L);
+			w.arc(arc++, place(i, THINKING), release, false, 1L);
+			w.arc(arc++, place(i, FORK), release, false, 1L);
+			w.arc(arc++, rightFork(i), release, false, 1L);
+		}
+	}
+
+	@Override
+	public long getNbUnits() {
+		return 2L * n;
+	}
+
+	@Override
+	public void writeUnitPlaces(long unit, PNMLWriter w) throws IOException {
+		final long i = (unit - 1L) / 2L;
+		if ((unit - 1L) % 2L == 0L) {
+			w.id(PNMLWriter.PLACE_PREFIX, place(i, THINKING)).ascii(" ")
+					.id(PNMLWriter.PLACE_PREFIX, place(i, HAS_LEFT)).ascii(" ")
+					.id(PNMLWriter.PLACE_PREFIX, place(i, EATING));
+		} else {
+			w.id(PNMLWriter.PLACE_PREFIX, place(i, FORK));
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.generator;
+
+import java.io.IOException;
+
+/**
+ * As many places as transitions. Each transition has 1 to 3 consecutive input
+ * places, and 1 to 3 consecutive output places, starting at random places.
+ * One place in 16 is marked. In the unsafe variant, about one arc in 20 has
+ * an inscription of 2 or 3, and the marked places hold 1 to 3 tokens. Each
+ * place is a unit.
+ */
+final class RandomSparse extends NetShape {
+
+	private static final long SALT_IN = 0x1L, SALT_OUT = 0x2L, SALT_INSCRIPTION = 0x3L, SALT_MARKING = 0x4L;
+	private static final long MARKED_PLACES_STEP = 16L;
+	private final long n;
+	private final long seed;
+	private final boolean unsafe;
+	private final long nbArcs;
+
+	RandomSparse(long nbNodes, long seed, boolean unsafe) {
+		this.n = Math.max(1L, nbNodes / 2L);
+		this.seed = seed;
+		this.unsafe = unsafe;
+		long arcs = 0L;
+		for (long t = 0L; t < n; t++) {
+			arcs += getNbInputs(t) + getNbOutputs(t);
+		}
+		this.nbArcs = arcs;
+	}
+
+	private long getNbInputs(long t) {
+		return Math.min(n, 1L + draw(mix(seed, t), 3L));
+	}
+
+	private long getNbOutputs(long t) {
+		return Math.min(n, 1L + draw(mix(seed, t) >>> 16, 3L));
+	}
+
+	private long getInscription(long arc) {
+		if (unsafe) {
+			final long m = mix(seed ^ SALT_INSCRIPTION, arc);
+			if (draw(m, 20L) == 0L) {
+				return 2L + draw(m >>> 16, 2L);
+			}
+		}
+		return 1L;
+	}
+
+	@Override
+	public long getNbPlaces() {
+		return n;
+	}
+
+	@Override
+	public long getNbTransitions() {
+		return n;
+	}
+
+	@Override
+	public long getNbArcs() {
+		return nbArcs;
+	}
+
+	@Override
+	public boolean isSafe() {
+		return false;
+	}
+
+	@Override
+	public long getMarking(long place) {
+		if (place % MARKED_PLACES_STEP != 0L) {
+			return 0L;
+		}
+		return unsafe ? 1L + draw(mix(seed ^ SALT_MARKING, place), 3L) : 1L;
+	}
+
+	@Override
+	public String getPlaceName(long place) {
+		return "place ";
+	}
+
+	@Override
+	public String getTransitionName(long transition) {
+		return "transition ";
+	}
+
+	@Override
+	public void writeArcs(PNMLWriter w) throws IOException {
+		long arc = 0L;
+		for (long t = 0L; t < n; t++) {
+			final long firstIn = draw(mix(seed ^ SALT_IN, t), n);
+			for (long k = 0L, nb = getNbInputs(t); k < nb; k++, arc++) {
+				w.arc(arc, (firstIn + k) % n, t, true, getInscription(arc));
+			}
+			final long firstOut = draw(mix(seed ^ SALT_OUT, t), n);
+			for (long k = 0L, nb = getNbOutputs(t); k < nb; k++, arc++) {
+				w.arc(arc, (firstOut + k) % n, t, false, getInscription(arc));
+			}
+		}
+	}
+
+	@Override
+	public long getNbUnits() {
+		return n;
+	}
+
+	@Override
+	public void writeUnitPlaces(long unit, PNMLWriter w) throws IOException {
+		w.id(PNMLWriter.PLACE_PREFIX, unit - 1L);
+	}
+}
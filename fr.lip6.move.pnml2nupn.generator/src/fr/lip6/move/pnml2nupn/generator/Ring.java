@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.generator;
+
+import java.io.IOException;
+
+/**
+ * A cycle <code>p0 -&gt; t0 -&gt; p1 -&gt; ... -&gt; t(n-1) -&gt; p0</code>,
+ * with one token in p0. Its units hold 8 consecutive places.
+ */
+final class Ring extends NetShape {
+
+	private static final long UNIT_SIZE = 8L;
+	private final long n;
+
+	Ring(long nbNodes) {
+		this.n = Math.max(1L, nbNodes / 2L);
+	}
+
+	@Override
+	public long getNbPlaces() {
+		return n;
+	}
+
+	@Override
+	public long getNbTransitions() {
+		return n;
+	}
+
+	@Override
+	public long getNbArcs() {
+		return 2L * n;
+	}
+
+	@Override
+	public boolean isSafe() {
+		return true;
+	}
+
+	@Override
+	public long getMarking(long place) {
+		return place == 0L ? 1L : 0L;
+	}
+
+	@Override
+	public String getPlaceName(long place) {
+		return "place ";
+	}
+
+	@Override
+	public String getTransitionName(long transition) {
+		return "transition ";
+	}
+
+	@Override
+	public void writeArcs(PNMLWriter w) throws IOException {
+		long arc = 0L;
+		for (long t = 0L; t < n; t++) {
+			w.arc(arc++, t, t, true, 1L);
+			w.arc(arc++, (t + 1L) % n, t, false, 1L);
+		}
+	}
+
+	@Override
+	public long getNbUnits() {
+		return (n + UNIT_SIZE - 1L) / UNIT_SIZE;
+	}
+
+	@Override
+	public void writeUnitPlaces(long unit, PNMLWriter w) throws IOException {
+		final long first = (unit - 1L) * UNIT_SIZE;
+		final long last = Math.min(first + UNIT_SIZE, n);
+		for (long p = first; p < last; p++) {
+			if (p > first) {
+				w.ascii(" ");
+			}
+			w.id(PNMLWriter.PLACE_PREFIX, p);
+		}
+	}
+}
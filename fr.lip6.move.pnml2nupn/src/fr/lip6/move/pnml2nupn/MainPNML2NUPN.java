@@ -22,19 +22,31 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.LoggerContext;
+import fr.lip6.move.pnml2nupn.daemon.ConversionDaemon;
 import fr.lip6.move.pnml2nupn.exceptions.EarlyStopException;
 import fr.lip6.move.pnml2nupn.exceptions.InvalidPNMLTypeException;
 import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.export.ConversionMetrics;
+import fr.lip6.move.pnml2nupn.export.ConversionOptions;
+import fr.lip6.move.pnml2nupn.export.ConversionReport;
 import fr.lip6.move.pnml2nupn.export.PNML2NUPNExporter;
 import fr.lip6.move.pnml2nupn.export.PNML2NUPNFactory;
+import fr.lip6.move.pnml2nupn.jfr.JobEvent;
+import fr.lip6.move.pnml2nupn.utils.Compression;
 import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
 import it.unimi.dsi.fastutil.objects.Object2BooleanOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
 
 /**
  * Main class for command-line invocation.
@@ -57,18 +69,15 @@ public final class MainPNML2NUPN {
 	public static final String TOOL_VERSION_PROP = "mytool.version";
 	public static final String CREATOR = "creator";
 	public static final String UNIT_SAFE = "unit_safe";
-	public static final String BOUNDS = "cosyverif/bounds 1.0";
 	public static final String UNKNOWN = "unknown/tool";
 	public static final String PRAGMA_CREATOR_PREFIX = XP + CREATOR + WS;
 	public static final String PRAGMA_UNIT_SAFE_BY_CREATOR = XP + UNIT_SAFE;
-	public static final String PRAGMA_UNIT_SAFE_BY_BOUNDS = XP + UNIT_SAFE + WS + BOUNDS;
 	public static final String PRAGMA_UNIT_SAFE_BY_UNKNOWN = XP + UNIT_SAFE + WS + UNKNOWN;
 	public static final String PRAGMA_MULTIPLE_INIT_TOKEN = XP + "multiple_initial_tokens" + WS;
 	public static final String PRAGMA_MULTIPLE_ARCS = XP + "multiple_arcs" + WS;
 	public static final String NUPN = "nupn";
 	public static final String PNML_EXT = "pnml";
 	public static final String PNML2NUPN_DEBUG = "PNML2NUPN_DEBUG";
-	public static final String CAMI_TMP_KEEP = "cami.tmp.keep";
 	/**
 	 * Force NUPN Generation works by default for the case where bounds checking is
 	 * disabled.
@@ -119,6 +128,77 @@ public final class MainPNML2NUPN {
 	 */
 	public static final String FIRST_TRANSITION_NUMBER = "first.transition.number";
 
+	/**
+	 * Number of conversions run concurrently, in batch mode.
+	 */
+	public static final String PARALLEL_JOBS = "parallel.jobs";
+
+	/**
+	 * Number of unsafe places to report when a net is not 1-safe, -1 meaning all
+	 * of them.
+	 */
+	public static final String UNSAFE_PLACES_NB_REPORT = "unsafe.places.nb.report";
+
+	/**
+	 * Runs as a conversion daemon, listening on this port of the loopback
+	 * interface.
+	 */
+	public static final String DAEMON_PORT = "daemon.port";
+
+	/**
+	 * Writes the time and memory spent in each phase of a conversion into a
+	 * JSON file next to the NUPN file, and sums them up in batch mode.
+	 */
+	public static final String METRICS_REPORT = "metrics.report";
+
+	/**
+	 * Size in MB from which a PNML document is parsed with the extended VTD
+	 * engine instead of the standard one (default 512, at most 1024). A negative
+	 * value means always.
+	 */
+	public static final String HUGE_PARSER_THRESHOLD_MB = "huge.parser.threshold.mb";
+
+	/**
+	 * Keeps the VTD index of converted documents in a cache directory bounded
+	 * to this size in MB, so that converting them again skips their parsing.
+	 */
+	public static final String INDEX_CACHE_MB = "index.cache.mb";
+
+	/**
+	 * Size in KB of the queue between a conversion and its NUPN writer (default
+	 * 1024). A conversion waits for the writer when the queue is full, so that
+	 * a slow output device does not fill the heap.
+	 */
+	public static final String QUEUE_CAPACITY_KB = "queue.capacity.kb";
+
+	/**
+	 * Number of threads reading the arcs of a large net into the transitions
+	 * (default 0, meaning as many as available processors). 1 reads them
+	 * sequentially. The NUPN file is the same whatever the number.
+	 */
+	public static final String ARC_WORKERS = "arc.workers";
+
+	/**
+	 * Writes the NUPN file compressed with gzip, into <code>&lt;file&gt;.nupn.gz</code>.
+	 */
+	public static final String NUPN_GZIP = "nupn.gzip";
+
+	/**
+	 * Writes the NUPN file compressed with zstd, into <code>&lt;file&gt;.nupn.zst</code>.
+	 * It takes precedence over {@link #NUPN_GZIP}.
+	 */
+	public static final String NUPN_ZSTD = "nupn.zstd";
+
+	/**
+	 * Writes the NUPN contents into the standard output, e.g. to pipe them into
+	 * another tool, instead of the NUPN file. The log then goes into the
+	 * standard error. Only a single PNML file can be converted this way.
+	 */
+	public static final String NUPN_STDOUT = "nupn.stdout";
+
+	/**
+	 * Signature message: the options, then the messages of each conversion.
+	 */
 	private static StringBuilder signatureMesg;
 	/**
 	 * Application properties
@@ -141,6 +221,7 @@ public final class MainPNML2NUPN {
 	private static DirFileFilter dff;
 
 	private static boolean error;
+	private static final String METRICS_ROW_FORMAT = "%-20s %6s %12s %12s %15s %14s";
 	private static org.slf4j.Logger myLog;
 
 	private MainPNML2NUPN() {
@@ -152,17 +233,25 @@ public final class MainPNML2NUPN {
 	 */
 	public static void main(String[] args) {
 		long startTime = System.nanoTime();
+		if (Boolean.getBoolean(NUPN_STDOUT)) {
+			// Keep the standard output for the NUPN contents, before anything gets logged
+			System.setOut(System.err);
+		}
 		myLog = LoggerFactory.getLogger(MainPNML2NUPN.class.getCanonicalName());
 		StringBuilder msg = new StringBuilder();
 		error = false;
+		loadProperties();
+		initCommandLineOptions();
+		loadActualCommandLineOptions(msg);
+		if (longOptionsMap.getLong(DAEMON_PORT) > 0L) {
+			runDaemon();
+			return;
+		}
 		if (args.length < 1) {
 			myLog.error(
 					"The path to at least one PNML P/T file is expected. You may provide a file, a directory, or a mix of several of these.");
 			return;
 		}
-		loadProperties();
-		initCommandLineOptions();
-		loadActualCommandLineOptions(msg);
 		try {
 			extractSrcDestPaths(args);
 		} catch (IOException e1) {
@@ -170,23 +259,20 @@ public final class MainPNML2NUPN {
 			myLog.error(e1.getMessage());
 			PNML2NUPNUtils.printStackTrace(e1);
 		}
+		if (boolOptionsMap.getBoolean(NUPN_STDOUT) && pathSrc.size() > 1) {
+			myLog.error("Option {} expects a single PNML file, but {} were found.", NUPN_STDOUT, pathSrc.size());
+			return;
+		}
 		initSignatureMessage();
-		PNML2NUPNExporter pe = PNML2NUPNFactory.instance().createExporter();
-		org.slf4j.Logger jr = LoggerFactory.getLogger(pe.getClass().getCanonicalName());
-		for (int i = 0; i < pathSrc.size(); i++) {
-			try {
-				// Option exclusive of the others
-				if (boolOptionsMap.getBoolean(HAS_UNSAFE_ARCS)) {
-					pe.hasUnsafeArcs(pathSrc.get(i), pathDest.get(i), jr);
-				} else {
-					pe.export2NUPN(new File(pathSrc.get(i)), new File(pathDest.get(i)), jr);
-				}
-			} catch (PNMLImportExportException | InterruptedException | IOException | InvalidPNMLTypeException
-					| EarlyStopException e) {
-				myLog.error(e.getMessage());
-				PNML2NUPNUtils.printStackTrace(e);
-				error |= true;
-			}
+		final PNML2NUPNExporter pe = PNML2NUPNFactory.instance()
+				.createExporter(new ConversionOptions(boolOptionsMap, longOptionsMap, getNbUnsafePlacesToReport()));
+		final List<JobResult> results = runJobs(pe, (int) longOptionsMap.getLong(PARALLEL_JOBS));
+		for (JobResult r : results) {
+			signatureMesg.append(r.signatureMesg);
+			error |= !r.success;
+		}
+		if (results.size() > 1) {
+			logSummary(results);
 		}
 		if (!error) {
 			msg.append("Finished successfully.");
@@ -209,6 +295,166 @@ public final class MainPNML2NUPN {
 		}
 	}
 
+	/**
+	 * Serves conversion requests until the daemon is shut down. The number of
+	 * jobs run concurrently defaults to the number of available processors.
+	 */
+	private static void runDaemon() {
+		if (boolOptionsMap.removeBoolean(NUPN_STDOUT)) {
+			myLog.warn("Option {} is ignored by the conversion daemon.", NUPN_STDOUT);
+		}
+		final Object2LongOpenHashMap<String> longOptions = new Object2LongOpenHashMap<>(longOptionsMap);
+		longOptions.removeLong(DAEMON_PORT);
+		longOptions.removeLong(PARALLEL_JOBS);
+		longOptions.put(UNSAFE_PLACES_NB_REPORT, getNbUnsafePlacesToReport());
+		final long nbJobs = longOptionsMap.getLong(PARALLEL_JOBS);
+		try {
+			new ConversionDaemon((int) longOptionsMap.getLong(DAEMON_PORT),
+					nbJobs > 0L ? (int) nbJobs : Runtime.getRuntime().availableProcessors(), boolOptionsMap,
+					longOptions).run();
+		} catch (IOException e) {
+			myLog.error("Could not start the conversion daemon: {}", e.getMessage());
+			PNML2NUPNUtils.printStackTrace(e);
+			error = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+		loggerContext.stop();
+		if (error) {
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Runs the conversion of each source file, concurrently if more than one job
+	 * is requested.
+	 * 
+	 * @param pe
+	 *            the exporter, shared by all the conversions
+	 * @param nbJobs
+	 *            the number of conversions to run concurrently
+	 * @return the result of each conversion, in the order of the source files
+	 */
+	private static List<JobResult> runJobs(PNML2NUPNExporter pe, int nbJobs) {
+		final List<JobResult> results = new ArrayList<>(pathSrc.size());
+		if (nbJobs <= 1 || pathSrc.size() <= 1) {
+			for (int i = 0; i < pathSrc.size(); i++) {
+				results.add(runJob(pe, pathSrc.get(i), pathDest.get(i)));
+			}
+			return results;
+		}
+		myLog.info("Running {} conversions concurrently.", nbJobs);
+		final AtomicInteger jobThreadNb = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(nbJobs,
+				r -> new Thread(r, "pnml2nupn-job-" + jobThreadNb.incrementAndGet()));
+		final List<Future<JobResult>> futures = new ArrayList<>(pathSrc.size());
+		for (int i = 0; i < pathSrc.size(); i++) {
+			final String src = pathSrc.get(i), dest = pathDest.get(i);
+			futures.add(pool.submit(() -> runJob(pe, src, dest)));
+		}
+		pool.shutdown();
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results.add(futures.get(i).get());
+			} catch (InterruptedException | ExecutionException e) {
+				myLog.error("Conversion of {} did not complete: {}", pathSrc.get(i), e.getMessage());
+				PNML2NUPNUtils.printStackTrace(e);
+				results.add(new JobResult(pathSrc.get(i), false, "", null));
+				if (e instanceof InterruptedException) {
+					pool.shutdownNow();
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Converts a single source file.
+	 */
+	private static JobResult runJob(PNML2NUPNExporter pe, String src, String dest) {
+		final org.slf4j.Logger jr = LoggerFactory.getLogger(pe.getClass().getCanonicalName());
+		final JobEvent event = new JobEvent();
+		event.begin();
+		ConversionReport report = null;
+		try {
+			// Option exclusive of the others
+			if (pe.getOptions().isHasUnsafeArcs()) {
+				report = pe.hasUnsafeArcs(src, dest, jr);
+			} else {
+				report = pe.export2NUPN(new File(src), new File(dest), jr);
+			}
+			return new JobResult(src, true, report.getSignatureMesg(), report.getMetrics());
+		} catch (PNMLImportExportException | InterruptedException | IOException | InvalidPNMLTypeException
+				| EarlyStopException e) {
+			myLog.error(e.getMessage());
+			PNML2NUPNUtils.printStackTrace(e);
+			return new JobResult(src, false, "", null);
+		} finally {
+			event.finish(src, report);
+		}
+	}
+
+	private static int getNbUnsafePlacesToReport() {
+		int nbUnsafePlaces = 0;
+		String unsafePlaces = System.getProperty(UNSAFE_PLACES_NB_REPORT);
+		if (unsafePlaces != null) {
+			try {
+				nbUnsafePlaces = Integer.valueOf(unsafePlaces).intValue();
+			} catch (NumberFormatException e) {
+				myLog.error("Could not convert nb of unsafe places to report from the input string");
+			}
+		}
+		return nbUnsafePlaces;
+	}
+
+	private static void logSummary(List<JobResult> results) {
+		final List<String> failed = results.stream().filter(r -> !r.success).map(r -> r.src)
+				.collect(Collectors.toList());
+		myLog.info("Converted {} files: {} succeeded, {} failed.", results.size(), results.size() - failed.size(),
+				failed.size());
+		for (String f : failed) {
+			myLog.error("Failed: {}", f);
+		}
+		if (boolOptionsMap.getBoolean(METRICS_REPORT)) {
+			logMetrics(results);
+		}
+	}
+
+	/**
+	 * Logs the time and memory spent in each phase, summed over the successful
+	 * conversions.
+	 */
+	private static void logMetrics(List<JobResult> results) {
+		final Object2ObjectLinkedOpenHashMap<String, long[]> totals = new Object2ObjectLinkedOpenHashMap<>();
+		long blockedNanos = 0L, nbBlocks = 0L;
+		for (JobResult r : results) {
+			if (r.metrics == null) {
+				continue;
+			}
+			blockedNanos += r.metrics.getProducerBlockedNanos();
+			nbBlocks += r.metrics.getNbProducerBlocks();
+			for (ConversionMetrics.Phase p : r.metrics.getPhases()) {
+				final long[] t = totals.computeIfAbsent(p.getName(), k -> new long[5]);
+				t[0]++;
+				t[1] += p.getWallNanos();
+				t[2] = t[2] < 0L || p.getCpuNanos() < 0L ? -1L : t[2] + p.getCpuNanos();
+				t[3] = t[3] < 0L || p.getAllocatedBytes() < 0L ? -1L : t[3] + p.getAllocatedBytes();
+				t[4] = t[4] < 0L || p.getCount() < 0L ? -1L : t[4] + p.getCount();
+			}
+		}
+		final StringBuilder table = new StringBuilder("Time and memory spent in each phase, over all the conversions:");
+		table.append(NL).append(String.format(METRICS_ROW_FORMAT, "phase", "files", "wall (s)", "cpu (s)",
+				"allocated (MB)", "count"));
+		totals.forEach((phase, t) -> table.append(NL).append(String.format(METRICS_ROW_FORMAT, phase, t[0],
+				String.format("%.3f", t[1] / 1.0e9), t[2] < 0L ? "-" : String.format("%.3f", t[2] / 1.0e9),
+				t[3] < 0L ? "-" : String.format("%.1f", t[3] / 1048576.0), t[4] < 0L ? "-" : t[4])));
+		table.append(NL).append(String.format("Waited %.3f s for the NUPN writers, %d times.", blockedNanos / 1.0e9,
+				nbBlocks));
+		myLog.info(table.toString());
+	}
+
 	private static void loadActualCommandLineOptions(StringBuilder msg) {
 		// Debug mode?
 		checkDebugMode(myLog, msg);
@@ -295,7 +541,8 @@ public final class MainPNML2NUPN {
 
 	private static boolean isIntOption(String option) {
 		switch (option) {
-		case FIRST_PLACE_NUMBER: case FIRST_TRANSITION_NUMBER:
+		case FIRST_PLACE_NUMBER: case FIRST_TRANSITION_NUMBER: case PARALLEL_JOBS: case DAEMON_PORT:
+		case HUGE_PARSER_THRESHOLD_MB: case INDEX_CACHE_MB: case QUEUE_CAPACITY_KB: case ARC_WORKERS:
 			return true;
 		default:
 			return false;
@@ -329,26 +576,35 @@ public final class MainPNML2NUPN {
 		pathSrc = new ArrayList<String>();
 		File srcf;
 		File[] srcFiles;
-		String src, dest;
+		String src;
 		pff = new PNMLFilenameFilter();
 		dff = new DirFileFilter();
 		for (String s : args) {
 			srcf = new File(s);
 			if (srcf.isFile()) {
 				pathSrc.add(s);
-				pathDest.add(s.substring(0, s.lastIndexOf(DOT) + 1).concat(NUPN));
+				pathDest.add(getNupnPath(s));
 			} else if (srcf.isDirectory()) {
 				srcFiles = extractSrcFiles(srcf, pff, dff);
 				for (File f : srcFiles) {
 					src = f.getCanonicalPath();
 					pathSrc.add(src);
-					dest = src.substring(0, src.lastIndexOf(DOT) + 1) + NUPN;
-					pathDest.add(dest);
+					pathDest.add(getNupnPath(src));
 				}
 			}
 		}
 	}
 
+	/**
+	 * Returns the path of the NUPN file a PNML file is converted into: the same
+	 * path, with the NUPN extension instead of the PNML one and the compression
+	 * one, if any.
+	 */
+	public static String getNupnPath(String src) {
+		final String pnml = Compression.strip(src);
+		return pnml.substring(0, pnml.lastIndexOf(DOT) + 1).concat(NUPN);
+	}
+
 	private static File[] extractSrcFiles(File srcf, PNMLFilenameFilter pff, DirFileFilter dff) {
 		List<File> res = new ArrayList<File>();
 		// filter PNML files
@@ -369,7 +625,7 @@ public final class MainPNML2NUPN {
 	private static final class PNMLFilenameFilter implements FilenameFilter {
 		@Override
 		public boolean accept(File dir, String name) {
-			return name.endsWith(PNML_EXT);
+			return Compression.strip(name).endsWith(PNML_EXT);
 		}
 	}
 
@@ -399,71 +655,34 @@ public final class MainPNML2NUPN {
 	}
 
 	/**
-	 * Returns true if temporary Cami file should be deleted, false otherwise.
-	 * 
-	 * @return
-	 */
-	public static boolean isCamiTmpDelete() {
-		return boolOptionsMap.getBoolean(CAMI_TMP_KEEP);
-	}
-
-	/**
-	 * Returns true if BPN generation is forced, even if the net is not 1-safe.
-	 * 
-	 * @return
-	 */
-	public static boolean isForceNUPNGen() {
-		return boolOptionsMap.getBoolean(FORCE_NUPN_GENERATION);
-	}
-
-	/**
-	 * Returns true if unit safeness checking is enabled (default), false otherwise.
-	 * 
-	 * @return
+	 * Outcome of the conversion of a source file.
 	 */
-	public static boolean isUnitSafenessChecking() {
-		return boolOptionsMap.getBoolean(UNIT_SAFENESS_CHECKING);
-	}
-
-	/**
-	 * Returns true if unit safeness checking only is enabled, false otherwise
-	 * (default).
-	 * 
-	 * @return
-	 */
-	public static boolean isUnitSafenessCheckingOnly() {
-		return boolOptionsMap.getBoolean(UNIT_SAFENESS_CHECKING_ONLY);
-	}
-
-	public static boolean isPreserveNupnMix() {
-		return boolOptionsMap.getBoolean(PRESERVE_NUPN_MIX);
-	}
-
-	public static boolean isPreserveNupnNative() {
-		return boolOptionsMap.getBoolean(PRESERVE_NUPN_NATIVE);
-	}
-
-	public static boolean isUsePlaceNames() {
-		return boolOptionsMap.getBoolean(USE_PLACE_NAMES);
-	}
-
-	public static boolean isUseTransitionNames() {
-		return boolOptionsMap.getBoolean(USE_TRANSITION_NAMES);
-	}
-	
-	public static long getFirstPlaceNumber() {
-		return longOptionsMap.getLong(FIRST_PLACE_NUMBER);
-	}
-	
-	public static long getFirstTransitionNumber() {
-		return longOptionsMap.getLong(FIRST_TRANSITION_NUMBER);
-	}
-
-	public static void appendMesgLineToSignature(String msg) {
-		signatureMesg.append(NL).append(COLWS).append(msg);
+	private static final class JobResult {
+		private final String src;
+		private final boolean success;
+		private final String signatureMesg;
+		/* Null if the conversion failed */
+		private final ConversionMetrics metrics;
+
+		private JobResult(String src, boolean success, String signatureMesg, ConversionMetrics metrics) {
+			this.src = src;
+			this.success = success;
+			this.signatureMesg = signatureMesg;
+			this.metrics = metrics;
+		}
 	}
 
-	public static String getPragmaCreator() {
+	public static synchronized String getPragmaCreator() {
+		if (appProperties == null) {
+			// the exporter is embedded, main() was not run
+			appProperties = new Properties();
+			try (final InputStream appPropIs = MainPNML2NUPN.class.getResourceAsStream(APPPROP_FILE_NAME)) {
+				appProperties.load(appPropIs);
+			} catch (IOException ex) {
+				LoggerFactory.getLogger(MainPNML2NUPN.class.getCanonicalName())
+						.error("Could not get access to the properties file in the classpath: {}", ex.getMessage());
+			}
+		}
 		StringBuilder pragmaCreator = new StringBuilder();
 		pragmaCreator.append(PRAGMA_CREATOR_PREFIX).append(appProperties.getProperty(TOOL_NAME_PROP)).append(WS)
 				.append(appProperties.getProperty(TOOL_VERSION_PROP));
@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.daemon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import fr.lip6.move.pnml2nupn.MainPNML2NUPN;
+
+/**
+ * Command line client of the {@link ConversionDaemon}. Sends a conversion
+ * request for each file given as argument, and prints the status and the
+ * journal tail of each job. The options set as system properties (e.g.
+ * <code>-Duse.place.names=true</code>) are forwarded with each request.
+ * <p>
+ * Usage:
+ * <code>java -Ddaemon.port=N -cp ... fr.lip6.move.pnml2nupn.daemon.ConversionClient file.pnml...</code>.
+ * With <code>-Ddaemon.shutdown=true</code>, the daemon is stopped once the
+ * files are converted.
+ * </p>
+ * The exit status is 0 if all the conversions succeeded.
+ */
+public final class ConversionClient {
+
+	public static final String DAEMON_SHUTDOWN = "daemon.shutdown";
+
+	private ConversionClient() {
+		super();
+	}
+
+	public static void main(String[] args) {
+		final int port = Integer.getInteger(MainPNML2NUPN.DAEMON_PORT, 0);
+		final PrintStream out = System.out;
+		if (port <= 0) {
+			System.err.println("The port of the daemon is expected, like so: -D" + MainPNML2NUPN.DAEMON_PORT + "=N");
+			System.exit(-1);
+		}
+		final StringBuilder options = new StringBuilder();
+		for (String o : ConversionDaemon.getOverridableOptions()) {
+			final String value = System.getProperty(o);
+			if (value != null) {
+				options.append(ConversionDaemon.SEP).append(o).append(MainPNML2NUPN.EQ).append(value);
+			}
+		}
+		boolean error = false;
+		try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port);
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				BufferedWriter req = new BufferedWriter(
+						new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+			for (String f : args) {
+				req.write(ConversionDaemon.CONVERT + ConversionDaemon.SEP + new File(f).getCanonicalPath() + options);
+				req.newLine();
+				req.flush();
+				error |= !readResponse(in, out);
+			}
+			if (Boolean.getBoolean(DAEMON_SHUTDOWN)) {
+				req.write(ConversionDaemon.SHUTDOWN);
+				req.newLine();
+				req.flush();
+				error |= !readResponse(in, out);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not talk to the daemon on port " + port + ": " + e.getMessage());
+			error = true;
+		}
+		System.exit(error ? -1 : 0);
+	}
+
+	/**
+	 * Prints a response of the daemon, and returns true if its status is OK.
+	 */
+	private static boolean readResponse(BufferedReader in, PrintStream out) throws IOException {
+		boolean ok = false;
+		String line;
+		while ((line = in.readLine()) != null && !ConversionDaemon.END.equals(line)) {
+			final String[] fields = line.split(ConversionDaemon.SEP, 3);
+			if (ConversionDaemon.STATUS.equals(fields[0]) && fields.length == 3) {
+				ok = ConversionDaemon.OK.equals(fields[1]);
+				out.println(fields[1] + MainPNML2NUPN.COLWS + fields[2]);
+			} else if (ConversionDaemon.LOG.equals(fields[0]) && fields.length > 1) {
+				out.println("  " + line.substring(ConversionDaemon.LOG.length() + 1));
+			}
+		}
+		if (line == null) {
+			throw new IOException("Connection closed by the daemon.");
+		}
+		return ok;
+	}
+}
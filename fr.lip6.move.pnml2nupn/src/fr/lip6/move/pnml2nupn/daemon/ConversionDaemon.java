@@ -0,0 +1,387 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.daemon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.lip6.move.pnml2nupn.MainPNML2NUPN;
+import fr.lip6.move.pnml2nupn.exceptions.EarlyStopException;
+import fr.lip6.move.pnml2nupn.exceptions.InvalidPNMLTypeException;
+import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.export.ConversionOptions;
+import fr.lip6.move.pnml2nupn.export.ConversionReport;
+import fr.lip6.move.pnml2nupn.export.PNML2NUPNExporter;
+import fr.lip6.move.pnml2nupn.export.PNML2NUPNFactory;
+import fr.lip6.move.pnml2nupn.jfr.JobEvent;
+import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
+import it.unimi.dsi.fastutil.objects.Object2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+/**
+ * Long-running conversion server, listening on the loopback interface only.
+ * It saves the JVM start up, the loading of the properties and the JIT warm up
+ * on each conversion.
+ * <p>
+ * The protocol is line based, in UTF-8, with tab separated fields. A request
+ * is either:
+ * </p>
+ * <ul>
+ * <li><code>CONVERT&lt;TAB&gt;path[&lt;TAB&gt;option=value]*</code>: converts
+ * the PNML file at <code>path</code> (absolute, or relative to the daemon
+ * working directory) into the NUPN file next to it. The options override, for
+ * this job only, the ones the daemon was started with;</li>
+ * <li><code>SHUTDOWN</code>: stops the daemon once the running jobs are
+ * finished. The connections waiting for a request are closed.</li>
+ * </ul>
+ * Each request is answered by a <code>STATUS&lt;TAB&gt;OK|ERROR&lt;TAB&gt;message</code>
+ * line, then by the last lines of the job journal, each one as
+ * <code>LOG&lt;TAB&gt;line</code>, then by an <code>END</code> line. A
+ * connection may send several requests, one after the other.
+ * <p>
+ * Connections are read by threads of their own, so that idle clients do not
+ * hold a job slot: only the conversions run on the pool of jobs.
+ * </p>
+ */
+public final class ConversionDaemon {
+
+	public static final String CONVERT = "CONVERT";
+	public static final String SHUTDOWN = "SHUTDOWN";
+	public static final String STATUS = "STATUS";
+	public static final String LOG = "LOG";
+	public static final String END = "END";
+	public static final String OK = "OK";
+	public static final String ERROR = "ERROR";
+	public static final String SEP = "\t";
+	/* Number of journal lines sent back for each job */
+	private static final int TAIL_SIZE = 50;
+	/* Time given to the connections to send their last reply, on shutdown */
+	private static final long CLOSE_TIMEOUT_SECONDS = 10L;
+
+	private static final List<String> BOOL_OPTIONS = Arrays.asList(MainPNML2NUPN.FORCE_NUPN_GENERATION,
+			MainPNML2NUPN.UNIT_SAFENESS_CHECKING, MainPNML2NUPN.UNIT_SAFENESS_CHECKING_ONLY,
+			MainPNML2NUPN.HAS_UNSAFE_ARCS, MainPNML2NUPN.PRESERVE_NUPN_MIX, MainPNML2NUPN.PRESERVE_NUPN_NATIVE,
+			MainPNML2NUPN.USE_PLACE_NAMES, MainPNML2NUPN.USE_TRANSITION_NAMES, MainPNML2NUPN.NUPN_GZIP,
+			MainPNML2NUPN.NUPN_ZSTD);
+	private static final List<String> LONG_OPTIONS = Arrays.asList(MainPNML2NUPN.FIRST_PLACE_NUMBER,
+			MainPNML2NUPN.FIRST_TRANSITION_NUMBER, MainPNML2NUPN.UNSAFE_PLACES_NB_REPORT,
+			MainPNML2NUPN.QUEUE_CAPACITY_KB, MainPNML2NUPN.ARC_WORKERS);
+
+	private final int port;
+	private final int nbJobs;
+	private final Object2BooleanOpenHashMap<String> boolOptions;
+	private final Object2LongOpenHashMap<String> longOptions;
+	/* Exporters, by job options overrides */
+	private final Object2ObjectOpenHashMap<String, PNML2NUPNExporter> exporters;
+	private final Logger log;
+	private ServerSocket server;
+	private ExecutorService jobs;
+	/* Open connections, and those of them waiting for a request */
+	private final Set<Socket> clients;
+	private final Set<Socket> idleClients;
+	private volatile boolean stopping;
+
+	/**
+	 * @param port
+	 *            the TCP port to listen to, on the loopback interface
+	 * @param nbJobs
+	 *            number of jobs run concurrently
+	 * @param boolOptions
+	 *            default boolean options of the jobs
+	 * @param longOptions
+	 *            default numerical options of the jobs, including the number of
+	 *            unsafe places to report
+	 */
+	public ConversionDaemon(int port, int nbJobs, Object2BooleanOpenHashMap<String> boolOptions,
+			Object2LongOpenHashMap<String> longOptions) {
+		this.port = port;
+		this.nbJobs = nbJobs;
+		this.boolOptions = new Object2BooleanOpenHashMap<>(boolOptions);
+		this.longOptions = new Object2LongOpenHashMap<>(longOptions);
+		this.exporters = new Object2ObjectOpenHashMap<>();
+		this.log = LoggerFactory.getLogger(ConversionDaemon.class.getCanonicalName());
+		this.clients = ConcurrentHashMap.newKeySet();
+		this.idleClients = ConcurrentHashMap.newKeySet();
+	}
+
+	/**
+	 * Serves requests until a <code>SHUTDOWN</code> request is received.
+	 *
+	 * @throws IOException
+	 *             if the daemon cannot listen to its port
+	 * @throws InterruptedException
+	 */
+	public void run() throws IOException, InterruptedException {
+		final AtomicInteger jobNb = new AtomicInteger();
+		final AtomicInteger clientNb = new AtomicInteger();
+		jobs = Executors.newFixedThreadPool(nbJobs, r -> new Thread(r, "pnml2nupn-daemon-" + jobNb.incrementAndGet()));
+		final ExecutorService connections = Executors
+				.newCachedThreadPool(r -> new Thread(r, "pnml2nupn-daemon-client-" + clientNb.incrementAndGet()));
+		server = new ServerSocket(port, nbJobs, InetAddress.getLoopbackAddress());
+		log.info("Conversion daemon listening on {}:{}, running up to {} jobs concurrently.",
+				server.getInetAddress().getHostAddress(), server.getLocalPort(), nbJobs);
+		try {
+			while (!server.isClosed()) {
+				final Socket client;
+				try {
+					client = server.accept();
+				} catch (SocketException e) {
+					// closed by a shutdown request
+					break;
+				}
+				clients.add(client);
+				connections.execute(() -> serve(client));
+			}
+		} finally {
+			closeServer();
+			stopping = true;
+			closeAll(idleClients);
+			jobs.shutdown();
+			jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			connections.shutdown();
+			if (!connections.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				closeAll(clients);
+			}
+			log.info("Conversion daemon stopped.");
+		}
+	}
+
+	private void closeAll(Set<Socket> sockets) {
+		for (Socket s : sockets) {
+			try {
+				s.close();
+			} catch (IOException e) {
+				log.error("Could not close a client connection: {}", e.getMessage());
+			}
+		}
+	}
+
+	private synchronized void closeServer() {
+		try {
+			if (server != null && !server.isClosed()) {
+				server.close();
+			}
+		} catch (IOException e) {
+			log.error("Could not close the daemon socket: {}", e.getMessage());
+		}
+	}
+
+	private void serve(Socket client) {
+		try (Socket s = client;
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				BufferedWriter out = new BufferedWriter(
+						new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+			String request;
+			while (true) {
+				idleClients.add(s);
+				if (stopping) {
+					break;
+				}
+				request = in.readLine();
+				idleClients.remove(s);
+				if (request == null) {
+					break;
+				}
+				final String[] fields = request.split(SEP);
+				if (CONVERT.equals(fields[0]) && fields.length > 1) {
+					respond(out, submit(fields));
+				} else if (SHUTDOWN.equals(fields[0])) {
+					respond(out, OK, "Shutting down.", null);
+					closeServer();
+					break;
+				} else {
+					respond(out, ERROR, "Unknown request: " + fields[0], null);
+				}
+			}
+		} catch (IOException e) {
+			if (!stopping) {
+				log.error("Connection to client closed: {}", e.getMessage());
+			}
+		} finally {
+			idleClients.remove(client);
+			clients.remove(client);
+		}
+	}
+
+	/**
+	 * Runs a conversion on the pool of jobs, and waits for its reply.
+	 */
+	private Reply submit(String[] fields) {
+		final Future<Reply> job;
+		try {
+			job = jobs.submit(() -> convert(fields));
+		} catch (RejectedExecutionException e) {
+			return new Reply(ERROR, "The daemon is shutting down.", null);
+		}
+		try {
+			return job.get();
+		} catch (ExecutionException e) {
+			return new Reply(ERROR, String.valueOf(e.getCause()), null);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Reply(ERROR, "Interrupted while waiting for the job.", null);
+		}
+	}
+
+	private Reply convert(String[] fields) {
+		final PNML2NUPNExporter pe;
+		try {
+			pe = getExporter(Arrays.copyOfRange(fields, 2, fields.length));
+		} catch (IllegalArgumentException e) {
+			return new Reply(ERROR, e.getMessage(), null);
+		}
+		final String src = fields[1];
+		final String dest = MainPNML2NUPN.getNupnPath(src);
+		final JobLogger journal = new JobLogger(LoggerFactory.getLogger(pe.getClass().getCanonicalName()), TAIL_SIZE);
+		final long startTime = System.nanoTime();
+		final JobEvent event = new JobEvent();
+		event.begin();
+		ConversionReport report = null;
+		String status = OK, msg = pe.getOptions().isHasUnsafeArcs() ? dest
+				: dest + pe.getOptions().getNupnCompression().getExtension();
+		try {
+			if (pe.getOptions().isHasUnsafeArcs()) {
+				report = pe.hasUnsafeArcs(src, dest, journal);
+			} else {
+				report = pe.export2NUPN(new File(src), new File(dest), journal);
+			}
+			for (String line : report.getSignatureMesg().split(MainPNML2NUPN.NL)) {
+				if (!line.isEmpty()) {
+					journal.record("INFO", line);
+				}
+			}
+		} catch (PNMLImportExportException | InterruptedException | IOException | InvalidPNMLTypeException
+				| EarlyStopException e) {
+			PNML2NUPNUtils.printStackTrace(e);
+			status = ERROR;
+			msg = String.valueOf(e.getMessage());
+			journal.record(ERROR, msg);
+		} catch (RuntimeException e) {
+			PNML2NUPNUtils.printStackTrace(e);
+			log.error("Job {} crashed: {}", src, e.toString());
+			status = ERROR;
+			msg = e.toString();
+			journal.record(ERROR, msg);
+		}
+		event.finish(src, report);
+		log.info("Job {} finished in {} seconds: {}", src, (System.nanoTime() - startTime) / 1.0e9, status);
+		return new Reply(status, msg, journal.getTail());
+	}
+
+	/**
+	 * Returns the exporter for the given option overrides, creating it the first
+	 * time they are requested.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if an option is unknown or malformed
+	 */
+	private PNML2NUPNExporter getExporter(String[] overrides) {
+		final String key = String.join(SEP, overrides);
+		synchronized (exporters) {
+			PNML2NUPNExporter pe = exporters.get(key);
+			if (pe == null) {
+				final Object2BooleanOpenHashMap<String> bo = new Object2BooleanOpenHashMap<>(boolOptions);
+				final Object2LongOpenHashMap<String> lo = new Object2LongOpenHashMap<>(longOptions);
+				for (String o : overrides) {
+					final int eq = o.indexOf(MainPNML2NUPN.EQ);
+					final String name = eq < 0 ? o : o.substring(0, eq);
+					final String value = eq < 0 ? "" : o.substring(eq + 1);
+					if (BOOL_OPTIONS.contains(name)) {
+						bo.put(name, Boolean.parseBoolean(value));
+					} else if (LONG_OPTIONS.contains(name)) {
+						try {
+							lo.put(name, Long.parseLong(value));
+						} catch (NumberFormatException e) {
+							throw new IllegalArgumentException("Option " + name + " must be an integer: " + value);
+						}
+					} else {
+						throw new IllegalArgumentException("Unknown option: " + name);
+					}
+				}
+				pe = PNML2NUPNFactory.instance().createExporter(
+						new ConversionOptions(bo, lo, (int) lo.getLong(MainPNML2NUPN.UNSAFE_PLACES_NB_REPORT)));
+				exporters.put(key, pe);
+			}
+			return pe;
+		}
+	}
+
+	private static void respond(BufferedWriter out, Reply reply) throws IOException {
+		respond(out, reply.status, reply.msg, reply.tail);
+	}
+
+	private static void respond(BufferedWriter out, String status, String msg, List<String> tail)
+			throws IOException {
+		out.write(STATUS + SEP + status + SEP + msg.replace('\n', ' '));
+		out.newLine();
+		if (tail != null) {
+			for (String line : tail) {
+				out.write(LOG + SEP + line.replace('\n', ' '));
+				out.newLine();
+			}
+		}
+		out.write(END);
+		out.newLine();
+		out.flush();
+	}
+
+	/**
+	 * Returns the names of the options a <code>CONVERT</code> request may
+	 * override.
+	 */
+	public static List<String> getOverridableOptions() {
+		final List<String> res = new ArrayList<>(BOOL_OPTIONS);
+		res.addAll(LONG_OPTIONS);
+		return res;
+	}
+
+	/**
+	 * Reply to a request: its status, message and journal tail.
+	 */
+	private static final class Reply {
+		private final String status, msg;
+		private final List<String> tail;
+
+		private Reply(String status, String msg, List<String> tail) {
+			this.status = status;
+			this.msg = msg;
+			this.tail = tail;
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.daemon;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.helpers.MarkerIgnoringBase;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Journal of a daemon job: forwards everything to the daemon logger, and keeps
+ * the last messages so that they can be sent back to the client.
+ */
+final class JobLogger extends MarkerIgnoringBase {
+
+	private static final long serialVersionUID = 1L;
+	private static final String TRACE = "TRACE", DEBUG = "DEBUG", INFO = "INFO", WARN = "WARN", ERROR = "ERROR";
+
+	private final transient Logger delegate;
+	private final int tailSize;
+	private final ArrayDeque<String> tail;
+
+	JobLogger(Logger delegate, int tailSize) {
+		this.delegate = delegate;
+		this.name = delegate.getName();
+		this.tailSize = tailSize;
+		this.tail = new ArrayDeque<>(tailSize);
+	}
+
+	/**
+	 * Returns the last messages, oldest first, each one prefixed by its level.
+	 */
+	synchronized List<String> getTail() {
+		return new ArrayList<>(tail);
+	}
+
+	synchronized void record(String level, String msg) {
+		if (tail.size() == tailSize) {
+			tail.removeFirst();
+		}
+		tail.addLast(level + ' ' + msg);
+	}
+
+	private void record(String level, String format, Object... args) {
+		record(level, MessageFormatter.arrayFormat(format, args).getMessage());
+	}
+
+	private void record(String level, String msg, Throwable t) {
+		record(level, t == null ? msg : msg + ": " + t);
+	}
+
+	@Override
+	public boolean isTraceEnabled() {
+		return delegate.isTraceEnabled();
+	}
+
+	@Override
+	public void trace(String msg) {
+		delegate.trace(msg);
+	}
+
+	@Override
+	public void trace(String format, Object arg) {
+		delegate.trace(format, arg);
+	}
+
+	@Override
+	public void trace(String format, Object arg1, Object arg2) {
+		delegate.trace(format, arg1, arg2);
+	}
+
+	@Override
+	public void trace(String format, Object... arguments) {
+		delegate.trace(format, arguments);
+	}
+
+	@Override
+	public void trace(String msg, Throwable t) {
+		delegate.trace(msg, t);
+	}
+
+	@Override
+	public boolean isDebugEnabled() {
+		return delegate.isDebugEnabled();
+	}
+
+	@Override
+	public void debug(String msg) {
+		delegate.debug(msg);
+	}
+
+	@Override
+	public void debug(String format, Object arg) {
+		delegate.debug(format, arg);
+	}
+
+	@Override
+	public void debug(String format, Object arg1, Object arg2) {
+		delegate.debug(format, arg1, arg2);
+	}
+
+	@Override
+	public void debug(String format, Object... arguments) {
+		delegate.debug(format, arguments);
+	}
+
+	@Override
+	public void debug(String msg, Throwable t) {
+		delegate.debug(msg, t);
+	}
+
+	@Override
+	public boolean isInfoEnabled() {
+		return delegate.isInfoEnabled();
+	}
+
+	@Override
+	public void info(String msg) {
+		delegate.info(msg);
+		record(INFO, msg);
+	}
+
+	@Override
+	public void info(String format, Object arg) {
+		delegate.info(format, arg);
+		record(INFO, format, arg);
+	}
+
+	@Override
+	public void info(String format, Object arg1, Object arg2) {
+		delegate.info(format, arg1, arg2);
+		record(INFO, format, arg1, arg2);
+	}
+
+	@Override
+	public void info(String format, Object... arguments) {
+		delegate.info(format, arguments);
+		record(INFO, format, arguments);
+	}
+
+	@Override
+	public void info(String msg, Throwable t) {
+		delegate.info(msg, t);
+		record(INFO, msg, t);
+	}
+
+	@Override
+	public boolean isWarnEnabled() {
+		return delegate.isWarnEnabled();
+	}
+
+	@Override
+	public void warn(String msg) {
+		delegate.warn(msg);
+		record(WARN, msg);
+	}
+
+	@Override
+	public void warn(String format, Object arg) {
+		delegate.warn(format, arg);
+		record(WARN, format, arg);
+	}
+
+	@Override
+	public void warn(String format, Object arg1, Object arg2) {
+		delegate.warn(format, arg1, arg2);
+		record(WARN, format, arg1, arg2);
+	}
+
+	@Override
+	public void warn(String format, Object... arguments) {
+		delegate.warn(format, arguments);
+		record(WARN, format, arguments);
+	}
+
+	@Override
+	public void warn(String msg, Throwable t) {
+		delegate.warn(msg, t);
+		record(WARN, msg, t);
+	}
+
+	@Override
+	public boolean isErrorEnabled() {
+		return delegate.isErrorEnabled();
+	}
+
+	@Override
+	public void error(String msg) {
+		delegate.error(msg);
+		record(ERROR, msg);
+	}
+
+	@Override
+	public void error(String format, Object arg) {
+		delegate.error(format, arg);
+		record(ERROR, format, arg);
+	}
+
+	@Override
+	public void error(String format, Object arg1, Object arg2) {
+		delegate.error(format, arg1, arg2);
+		record(ERROR, format, arg1, arg2);
+	}
+
+	@Override
+	public void error(String format, Object... arguments) {
+		delegate.error(format, arguments);
+		record(ERROR, format, arguments);
+	}
+
+	@Override
+	public void error(String msg, Throwable t) {
+		delegate.error(msg, t);
+		record(ERROR, msg, t);
+	}
+}
@@ -0,0 +1,270 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *  					CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.lip6.move.pnml2nupn.jfr.PhaseEvent;
+
+/**
+ * Wall time, CPU time, allocated bytes and element count of each phase of a
+ * conversion, in the order the phases ran. CPU time and allocated bytes are
+ * those of the converting thread; they are -1 when the JVM cannot measure
+ * them. Each phase is also recorded as a {@link PhaseEvent} when Flight
+ * Recorder is on. The backpressure of the queue to the NUPN writer is
+ * reported apart, since it overlaps the phases.
+ */
+public final class ConversionMetrics {
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final com.sun.management.ThreadMXBean SUN_THREADS = THREADS instanceof com.sun.management.ThreadMXBean
+			? (com.sun.management.ThreadMXBean) THREADS
+			: null;
+
+	private final List<Phase> phases;
+	private volatile String source;
+	private volatile long nbPlaces, nbTransitions, nbArcs;
+	private volatile long queueCapacity, producerBlockedNanos, nbProducerBlocks, writerIdleNanos;
+
+	public ConversionMetrics() {
+		this.phases = new ArrayList<>();
+		this.source = "";
+	}
+
+	/**
+	 * Sets the path of the converted file.
+	 */
+	public void setSource(String source) {
+		this.source = source;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Sets the size of the converted net, once it is known.
+	 */
+	public void setNetSize(long nbPlaces, long nbTransitions, long nbArcs) {
+		this.nbPlaces = nbPlaces;
+		this.nbTransitions = nbTransitions;
+		this.nbArcs = nbArcs;
+	}
+
+	public long getNbPlaces() {
+		return nbPlaces;
+	}
+
+	public long getNbTransitions() {
+		return nbTransitions;
+	}
+
+	public long getNbArcs() {
+		return nbArcs;
+	}
+
+	/**
+	 * Sets the backpressure of the queue to the NUPN writer, once the writer
+	 * has ended.
+	 *
+	 * @param capacity
+	 *            the number of bytes the queue holds at most
+	 * @param producerBlockedNanos
+	 *            the time the conversion waited for the writer, because the
+	 *            queue was full
+	 * @param nbProducerBlocks
+	 *            how many times the conversion found the queue full
+	 * @param writerIdleNanos
+	 *            the time the writer waited for contents
+	 */
+	public void setQueueStats(long capacity, long producerBlockedNanos, long nbProducerBlocks, long writerIdleNanos) {
+		this.queueCapacity = capacity;
+		this.producerBlockedNanos = producerBlockedNanos;
+		this.nbProducerBlocks = nbProducerBlocks;
+		this.writerIdleNanos = writerIdleNanos;
+	}
+
+	public long getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public long getProducerBlockedNanos() {
+		return producerBlockedNanos;
+	}
+
+	public long getNbProducerBlocks() {
+		return nbProducerBlocks;
+	}
+
+	public long getWriterIdleNanos() {
+		return writerIdleNanos;
+	}
+
+	/**
+	 * Starts measuring a phase, on the current thread.
+	 */
+	public Span start(String phase) {
+		return new Span(phase);
+	}
+
+	public synchronized List<Phase> getPhases() {
+		return Collections.unmodifiableList(new ArrayList<>(phases));
+	}
+
+	private synchronized void add(Phase phase) {
+		phases.add(phase);
+	}
+
+	/**
+	 * Writes the net size and the phases as a JSON document.
+	 */
+	public String toJson() {
+		final StringBuilder json = new StringBuilder();
+		long wall = 0L, cpu = 0L, allocated = 0L;
+		json.append("{\n  \"source\": \"").append(escape(source)).append("\",\n  \"places\": ").append(nbPlaces)
+				.append(",\n  \"transitions\": ").append(nbTransitions).append(",\n  \"arcs\": ").append(nbArcs)
+				.append(",\n  \"queue\": {\"capacityBytes\": ").append(queueCapacity)
+				.append(", \"producerBlockedNanos\": ").append(producerBlockedNanos).append(", \"producerBlocks\": ")
+				.append(nbProducerBlocks).append(", \"writerIdleNanos\": ").append(writerIdleNanos)
+				.append("},\n  \"phases\": [");
+		final List<Phase> all = getPhases();
+		for (int i = 0; i < all.size(); i++) {
+			final Phase p = all.get(i);
+			json.append(i == 0 ? "\n" : ",\n").append("    ");
+			p.toJson(json);
+			wall += p.wallNanos;
+			cpu = cpu < 0L || p.cpuNanos < 0L ? -1L : cpu + p.cpuNanos;
+			allocated = allocated < 0L || p.allocatedBytes < 0L ? -1L : allocated + p.allocatedBytes;
+		}
+		json.append("\n  ],\n  \"total\": ");
+		new Phase("total", wall, cpu, allocated, -1L).toJson(json);
+		json.append("\n}\n");
+		return json.toString();
+	}
+
+	private static String escape(String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()
+				? THREADS.getCurrentThreadCpuTime()
+				: -1L;
+	}
+
+	private static long allocatedBytes() {
+		return SUN_THREADS != null && SUN_THREADS.isThreadAllocatedMemorySupported()
+				&& SUN_THREADS.isThreadAllocatedMemoryEnabled()
+						? SUN_THREADS.getThreadAllocatedBytes(Thread.currentThread().getId())
+						: -1L;
+	}
+
+	/**
+	 * A phase being measured. It is recorded when it ends, on the thread that
+	 * started it.
+	 */
+	public final class Span {
+		private final String name;
+		private final long wallStart, cpuStart, allocatedStart;
+		private final PhaseEvent event;
+
+		private Span(String name) {
+			this.name = name;
+			this.event = new PhaseEvent();
+			this.event.begin();
+			this.wallStart = System.nanoTime();
+			this.cpuStart = cpuTime();
+			this.allocatedStart = allocatedBytes();
+		}
+
+		/**
+		 * Ends this phase.
+		 *
+		 * @param count
+		 *            the number of elements the phase went through, -1 if it
+		 *            does not apply
+		 */
+		public void end(long count) {
+			final long cpu = cpuTime(), allocated = allocatedBytes();
+			add(new Phase(name, System.nanoTime() - wallStart, cpuStart < 0L || cpu < 0L ? -1L : cpu - cpuStart,
+					allocatedStart < 0L || allocated < 0L ? -1L : allocated - allocatedStart, count));
+			event.end();
+			if (event.shouldCommit()) {
+				event.file = source;
+				event.places = nbPlaces;
+				event.transitions = nbTransitions;
+				event.arcs = nbArcs;
+				event.phase = name;
+				event.count = count;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * A measured phase.
+	 */
+	public static final class Phase {
+		private final String name;
+		private final long wallNanos, cpuNanos, allocatedBytes, count;
+
+		public Phase(String name, long wallNanos, long cpuNanos, long allocatedBytes, long count) {
+			this.name = name;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.count = count;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		private void toJson(StringBuilder json) {
+			json.append("{\"name\": \"").append(escape(name)).append("\", \"wallNanos\": ").append(wallNanos)
+					.append(", \"cpuNanos\": ").append(cpuNanos).append(", \"allocatedBytes\": ").append(allocatedBytes)
+					.append(", \"count\": ").append(count).append('}');
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export;
+
+import fr.lip6.move.pnml2nupn.MainPNML2NUPN;
+import fr.lip6.move.pnml2nupn.utils.Compression;
+import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
+import it.unimi.dsi.fastutil.objects.Object2BooleanMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+
+/**
+ * Options of a conversion. Immutable, so that a single instance can be shared
+ * by conversions running concurrently.
+ */
+public final class ConversionOptions {
+
+	/* The greatest parallelism of a fork/join pool */
+	private static final long MAX_ARC_WORKERS = 0x7fff;
+
+	private final boolean forceNUPNGen;
+	private final boolean unitSafenessChecking;
+	private final boolean unitSafenessCheckingOnly;
+	private final boolean hasUnsafeArcs;
+	private final boolean preserveNupnMix;
+	private final boolean preserveNupnNative;
+	private final boolean usePlaceNames;
+	private final boolean useTransitionNames;
+	private final long firstPlaceNumber;
+	private final long firstTransitionNumber;
+	private final boolean metricsReport;
+	private final int nbUnsafePlacesToReport;
+	private final long hugeParserThreshold;
+	private final long indexCacheSize;
+	private final long queueCapacity;
+	private final int arcWorkers;
+	private final Compression nupnCompression;
+	private final boolean nupnStdout;
+
+	/**
+	 * Builds options from command line option maps, keyed by the option names
+	 * defined in {@link MainPNML2NUPN}. Missing options are false, or 0.
+	 *
+	 * @param boolOptions
+	 *            the boolean options
+	 * @param longOptions
+	 *            the numerical options
+	 * @param nbUnsafePlacesToReport
+	 *            number of unsafe places to report when a net is not 1-safe, -1
+	 *            meaning all of them
+	 */
+	public ConversionOptions(Object2BooleanMap<String> boolOptions, Object2LongMap<String> longOptions,
+			int nbUnsafePlacesToReport) {
+		this.forceNUPNGen = boolOptions.getOrDefault(MainPNML2NUPN.FORCE_NUPN_GENERATION, false);
+		this.unitSafenessChecking = boolOptions.getOrDefault(MainPNML2NUPN.UNIT_SAFENESS_CHECKING, false);
+		this.unitSafenessCheckingOnly = boolOptions.getOrDefault(MainPNML2NUPN.UNIT_SAFENESS_CHECKING_ONLY, false);
+		this.hasUnsafeArcs = boolOptions.getOrDefault(MainPNML2NUPN.HAS_UNSAFE_ARCS, false);
+		this.preserveNupnMix = boolOptions.getOrDefault(MainPNML2NUPN.PRESERVE_NUPN_MIX, false);
+		this.preserveNupnNative = boolOptions.getOrDefault(MainPNML2NUPN.PRESERVE_NUPN_NATIVE, false);
+		this.usePlaceNames = boolOptions.getOrDefault(MainPNML2NUPN.USE_PLACE_NAMES, false);
+		this.useTransitionNames = boolOptions.getOrDefault(MainPNML2NUPN.USE_TRANSITION_NAMES, false);
+		this.firstPlaceNumber = longOptions.getOrDefault(MainPNML2NUPN.FIRST_PLACE_NUMBER, 0L);
+		this.firstTransitionNumber = longOptions.getOrDefault(MainPNML2NUPN.FIRST_TRANSITION_NUMBER, 0L);
+		this.metricsReport = boolOptions.getOrDefault(MainPNML2NUPN.METRICS_REPORT, false);
+		this.nbUnsafePlacesToReport = nbUnsafePlacesToReport;
+		final long hugeParserMb = longOptions.getOrDefault(MainPNML2NUPN.HUGE_PARSER_THRESHOLD_MB, 0L);
+		this.hugeParserThreshold = hugeParserMb == 0L ? PNML2NUPNUtils.DEFAULT_HUGE_PARSER_THRESHOLD
+				: Math.max(0L, Math.min(hugeParserMb, PNML2NUPNUtils.STANDARD_PARSER_MAX_SIZE >> 20)) << 20;
+		this.nupnCompression = boolOptions.getOrDefault(MainPNML2NUPN.NUPN_ZSTD, false) ? Compression.ZSTD
+				: boolOptions.getOrDefault(MainPNML2NUPN.NUPN_GZIP, false) ? Compression.GZIP : Compression.NONE;
+		this.nupnStdout = boolOptions.getOrDefault(MainPNML2NUPN.NUPN_STDOUT, false);
+		this.indexCacheSize = Math.max(0L, Math.min(longOptions.getOrDefault(MainPNML2NUPN.INDEX_CACHE_MB, 0L),
+				Long.MAX_VALUE >> 20)) << 20;
+		final long queueKb = longOptions.getOrDefault(MainPNML2NUPN.QUEUE_CAPACITY_KB, 0L);
+		this.queueCapacity = queueKb <= 0L ? PNML2NUPNUtils.DEFAULT_QUEUE_CAPACITY
+				: Math.min(queueKb, Long.MAX_VALUE >> 10) << 10;
+		this.arcWorkers = (int) Math.max(0L,
+				Math.min(longOptions.getOrDefault(MainPNML2NUPN.ARC_WORKERS, 0L), MAX_ARC_WORKERS));
+	}
+
+	/**
+	 * Returns true if NUPN generation is forced, even if the net is not 1-safe.
+	 */
+	public boolean isForceNUPNGen() {
+		return forceNUPNGen;
+	}
+
+	public boolean isUnitSafenessChecking() {
+		return unitSafenessChecking;
+	}
+
+	/**
+	 * Returns true if the conversion stops after unit safeness checking.
+	 */
+	public boolean isUnitSafenessCheckingOnly() {
+		return unitSafenessCheckingOnly;
+	}
+
+	/**
+	 * Returns true if only the unsafe arcs are looked for, instead of a
+	 * conversion.
+	 */
+	public boolean isHasUnsafeArcs() {
+		return hasUnsafeArcs;
+	}
+
+	public boolean isPreserveNupnMix() {
+		return preserveNupnMix;
+	}
+
+	public boolean isPreserveNupnNative() {
+		return preserveNupnNative;
+	}
+
+	public boolean isUsePlaceNames() {
+		return usePlaceNames;
+	}
+
+	public boolean isUseTransitionNames() {
+		return useTransitionNames;
+	}
+
+	public long getFirstPlaceNumber() {
+		return firstPlaceNumber;
+	}
+
+	public long getFirstTransitionNumber() {
+		return firstTransitionNumber;
+	}
+
+	/**
+	 * Returns true if the metrics of each conversion are written next to its
+	 * NUPN file.
+	 */
+	public boolean isMetricsReport() {
+		return metricsReport;
+	}
+
+	/**
+	 * Returns the number of unsafe places to report, -1 meaning all of them.
+	 */
+	public int getNbUnsafePlacesToReport() {
+		return nbUnsafePlacesToReport;
+	}
+
+	/**
+	 * Returns the size in bytes from which a PNML document is parsed with the
+	 * extended VTD engine, 0 meaning always.
+	 */
+	public long getHugeParserThreshold() {
+		return hugeParserThreshold;
+	}
+
+	/**
+	 * Returns the size bound in bytes of the VTD index cache, 0 meaning that
+	 * documents are always parsed.
+	 */
+	public long getIndexCacheSize() {
+		return indexCacheSize;
+	}
+
+	/**
+	 * Returns the number of bytes the queue to the NUPN writer holds at most.
+	 */
+	public long getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Returns the number of workers reading the arcs of a large net, 0 meaning
+	 * as many as available processors, and 1 a sequential read. The workers of
+	 * all the conversions are taken from a single pool, as large as the number
+	 * of available processors.
+	 */
+	public int getArcWorkers() {
+		return arcWorkers;
+	}
+
+	/**
+	 * Returns the compression format of the NUPN file.
+	 */
+	public Compression getNupnCompression() {
+		return nupnCompression;
+	}
+
+	/**
+	 * Returns true if the NUPN contents are written into the standard output
+	 * instead of the NUPN file.
+	 */
+	public boolean isNupnStdout() {
+		return nupnStdout;
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export;
+
+/**
+ * What a conversion reports to its caller, besides its output files.
+ */
+public final class ConversionReport {
+
+	private final String signatureMesg;
+	private final ConversionMetrics metrics;
+
+	public ConversionReport(String signatureMesg, ConversionMetrics metrics) {
+		this.signatureMesg = signatureMesg;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the lines this conversion appends to the signature message, each
+	 * one starting with a new line.
+	 */
+	public String getSignatureMesg() {
+		return signatureMesg;
+	}
+
+	/**
+	 * Returns the time and memory spent in each phase of this conversion.
+	 */
+	public ConversionMetrics getMetrics() {
+		return metrics;
+	}
+}
@@ -27,20 +27,23 @@ import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
  * <p>
  * Interface to implement for exporting PNML into other formats.
  * </p>
- * 
+ * Implementations must be reentrant: a single exporter, configured once with
+ * its {@link ConversionOptions}, may run several conversions at once.
  * 
  */
 public interface PNML2NUPNExporter {
-	void export2NUPN(URI inFile, URI outFile, Logger journal)
+	ConversionReport export2NUPN(URI inFile, URI outFile, Logger journal)
 			throws PNMLImportExportException, InterruptedException, IOException;
 
-	void export2NUPN(File inFile, File outFile, Logger journal)
+	ConversionReport export2NUPN(File inFile, File outFile, Logger journal)
 			throws PNMLImportExportException, InterruptedException, IOException, EarlyStopException;
 
-	void export2NUPN(String inFile, String outFile, Logger journal)
+	ConversionReport export2NUPN(String inFile, String outFile, Logger journal)
 			throws PNMLImportExportException, InterruptedException, IOException, EarlyStopException;
 
-	void hasUnsafeArcs(String inFile, String outFile, Logger journal)
+	ConversionReport hasUnsafeArcs(String inFile, String outFile, Logger journal)
 			throws InvalidPNMLTypeException, IOException,
 			PNMLImportExportException;
+
+	ConversionOptions getOptions();
 }
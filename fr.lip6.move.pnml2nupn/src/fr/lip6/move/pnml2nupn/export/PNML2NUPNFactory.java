@@ -48,8 +48,8 @@ public final class PNML2NUPNFactory {
 		return PNML2NUPNFactoryHelper.INSTANCE;
 	}
 
-	public PNML2NUPNExporter createExporter() {
-		return new PNML2NUPNExporterImpl();
+	public PNML2NUPNExporter createExporter(ConversionOptions options) {
+		return new PNML2NUPNExporterImpl(options);
 	}
 
 }
@@ -0,0 +1,305 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single producer / single consumer ring of pre-encoded byte slabs, between
+ * an exporter and its {@link NUPNWriter}.
+ * <p>
+ * The producer encodes its contents in UTF-8 directly into the slab it
+ * currently owns, and publishes that slab once it is full. The consumer takes
+ * all the published slabs at once, so that they can be written with a single
+ * gathering write. Slabs are handed over through two counters only, the number
+ * of published slabs and the number of consumed ones: no lock is taken. When
+ * all the slabs are published and not yet consumed, the producer waits for the
+ * consumer (backpressure): the ring never holds more than its capacity in
+ * bytes, however slow the output device is. The time the producer spends
+ * blocked, and the time the consumer spends waiting for contents, are
+ * measured.
+ * </p>
+ * {@link #stop()} and {@link #cancel()} publish the last, partially filled,
+ * slab and tell the consumer that nothing else will come. Both must be called
+ * by the producer. A consumer that cannot write records its failure with
+ * {@link #fail(IOException)}, for the producer to check once the consumer has
+ * ended.
+ */
+public final class ByteRingBuffer extends SlabOutput {
+
+	private static final int RUNNING = 0;
+	private static final int STOPPED = 1;
+	private static final int CANCELLED = 2;
+	/* Upper bound of a single wait, in case a wake up is missed */
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+	private final ByteBuffer[] slabs;
+	private final int nbSlabs;
+
+	private volatile long published;
+	private volatile long consumed;
+	private volatile int state;
+	private volatile Thread waitingProducer;
+	private volatile Thread waitingConsumer;
+	private volatile IOException failure;
+
+	/* Slab the producer is currently filling, null if it has not acquired one */
+	private ByteBuffer current;
+	/* Updated by the producer only */
+	private long producerBlockedNanos, nbProducerBlocks;
+	/* Updated by the consumer only, read once it has ended */
+	private long consumerIdleNanos;
+
+	/**
+	 * @param nbSlabs
+	 *            number of slabs of the ring
+	 * @param slabSize
+	 *            size of each slab, in bytes
+	 */
+	public ByteRingBuffer(int nbSlabs, int slabSize) {
+		this.nbSlabs = nbSlabs;
+		this.slabs = new ByteBuffer[nbSlabs];
+		for (int i = 0; i < nbSlabs; i++) {
+			slabs[i] = ByteBuffer.allocateDirect(slabSize);
+		}
+		state = RUNNING;
+	}
+
+	/**
+	 * Returns the slab owned by the producer, with at least
+	 * <code>nbBytes</code> bytes remaining, so that the caller can encode
+	 * directly into it. The current slab is published first if it is too full.
+	 *
+	 * @param nbBytes
+	 *            the number of bytes the caller is about to write, at most the
+	 *            size of a slab
+	 * @return the slab to write into
+	 * @throws InterruptedException
+	 *             if the producer is interrupted while waiting
+	 */
+	@Override
+	ByteBuffer reserve(int nbBytes) throws InterruptedException {
+		ByteBuffer slab = acquire();
+		if (slab.remaining() < nbBytes) {
+			publish();
+			slab = acquire();
+		}
+		return slab;
+	}
+
+	/**
+	 * Normal stop: whatever was put before is written, then the consumer ends.
+	 */
+	public void stop() {
+		close(STOPPED);
+	}
+
+	/**
+	 * Emergency stop: the consumer ends after writing what was put before, as
+	 * on a normal stop; the output is expected to be deleted by the caller.
+	 */
+	public void cancel() {
+		close(CANCELLED);
+	}
+
+	public boolean isCancelled() {
+		return state == CANCELLED;
+	}
+
+	private void close(int newState) {
+		if (state != RUNNING) {
+			return;
+		}
+		if (current != null && current.position() > 0) {
+			publish();
+		}
+		current = null;
+		state = newState;
+		wakeUp(waitingConsumer);
+	}
+
+	/**
+	 * Returns the slab owned by the producer, acquiring the next free one if
+	 * needed.
+	 */
+	private ByteBuffer acquire() throws InterruptedException {
+		if (current == null) {
+			final long next = published;
+			if (next - consumed >= nbSlabs) {
+				final long start = System.nanoTime();
+				nbProducerBlocks++;
+				try {
+					while (next - consumed >= nbSlabs) {
+						waitingProducer = Thread.currentThread();
+						if (next - consumed >= nbSlabs) {
+							LockSupport.parkNanos(this, PARK_NANOS);
+						}
+						waitingProducer = null;
+						if (Thread.interrupted()) {
+							throw new InterruptedException();
+						}
+					}
+				} finally {
+					producerBlockedNanos += System.nanoTime() - start;
+				}
+			}
+			current = slabs[(int) (next % nbSlabs)];
+			current.clear();
+		}
+		return current;
+	}
+
+	private void publish() {
+		current.flip();
+		current = null;
+		published = published + 1L;
+		wakeUp(waitingConsumer);
+	}
+
+	/**
+	 * Waits until at least one slab is published, or the ring is closed. Called
+	 * by the consumer only.
+	 *
+	 * @param batch
+	 *            array receiving the published slabs, in order; its length must
+	 *            be at least the number of slabs of the ring
+	 * @return the number of slabs put into <code>batch</code>, -1 if the ring is
+	 *         closed and fully consumed
+	 * @throws InterruptedException
+	 *             if the consumer is interrupted while waiting
+	 */
+	public int take(ByteBuffer[] batch) throws InterruptedException {
+		final long from = consumed;
+		long to = published;
+		if (to == from) {
+			final long start = System.nanoTime();
+			try {
+				to = await(from);
+			} finally {
+				consumerIdleNanos += System.nanoTime() - start;
+			}
+		}
+		if (to < 0L) {
+			return -1;
+		}
+		int n = 0;
+		for (long s = from; s < to; s++) {
+			batch[n++] = slabs[(int) (s % nbSlabs)];
+		}
+		return n;
+	}
+
+	/**
+	 * Waits until slabs are published after <code>from</code>, and returns the
+	 * number of published slabs, or -1 if the ring is closed and fully
+	 * consumed.
+	 */
+	private long await(long from) throws InterruptedException {
+		long to = from;
+		while (to == from) {
+			if (state != RUNNING) {
+				// the last slab is published before the state changes
+				to = published;
+				return to == from ? -1L : to;
+			}
+			waitingConsumer = Thread.currentThread();
+			if (published == from && state == RUNNING) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			waitingConsumer = null;
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			to = published;
+		}
+		return to;
+	}
+
+	/**
+	 * Gives back the slabs returned by the last call to {@link #take(ByteBuffer[])}.
+	 * Called by the consumer only.
+	 *
+	 * @param n
+	 *            the number of slabs returned by this call
+	 */
+	public void release(int n) {
+		consumed = consumed + n;
+		wakeUp(waitingProducer);
+	}
+
+	/**
+	 * Records that the consumer could not write the slabs it took. The consumer
+	 * keeps releasing the slabs it takes, so that the producer is never blocked.
+	 * Called by the consumer only.
+	 *
+	 * @param e
+	 *            the cause of the failure, only the first one is kept
+	 */
+	public void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Returns the failure recorded by the consumer, null if it wrote all the
+	 * slabs it took so far.
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	public int getNbSlabs() {
+		return nbSlabs;
+	}
+
+	/**
+	 * Returns the number of bytes the ring holds at most.
+	 */
+	public long getCapacity() {
+		return (long) nbSlabs * slabs[0].capacity();
+	}
+
+	/**
+	 * Returns the time the producer spent waiting for free slabs, in
+	 * nanoseconds. Called by the producer only.
+	 */
+	public long getProducerBlockedNanos() {
+		return producerBlockedNanos;
+	}
+
+	/**
+	 * Returns how many times the producer found the ring full. Called by the
+	 * producer only.
+	 */
+	public long getNbProducerBlocks() {
+		return nbProducerBlocks;
+	}
+
+	/**
+	 * Returns the time the consumer spent waiting for published slabs, in
+	 * nanoseconds. Must be called once the consumer has ended.
+	 */
+	public long getConsumerIdleNanos() {
+		return consumerIdleNanos;
+	}
+
+	private static void wakeUp(Thread t) {
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+}
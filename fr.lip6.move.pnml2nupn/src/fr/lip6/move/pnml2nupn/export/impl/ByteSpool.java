@@ -0,0 +1,92 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * In-memory section of a NUPN file which can only be written after other
+ * sections, such as the place and transition labels. Contents are encoded
+ * once into a growing list of slabs, which are later written as they are into
+ * the output channel with gathering writes.
+ */
+public final class ByteSpool extends SlabOutput {
+
+	private final int slabSize;
+	private final ObjectArrayList<ByteBuffer> slabs;
+	private ByteBuffer current;
+
+	/**
+	 * @param slabSize
+	 *            size of each slab, in bytes
+	 */
+	public ByteSpool(int slabSize) {
+		this.slabSize = slabSize;
+		this.slabs = new ObjectArrayList<>();
+	}
+
+	@Override
+	ByteBuffer reserve(int nbBytes) {
+		if (current == null || current.remaining() < nbBytes) {
+			current = ByteBuffer.allocateDirect(slabSize);
+			slabs.add(current);
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the number of bytes held by this spool.
+	 */
+	public long size() {
+		long size = 0L;
+		for (ByteBuffer b : slabs) {
+			size += b.position();
+		}
+		return size;
+	}
+
+	/**
+	 * Writes the contents of this spool at the current position of a channel,
+	 * then releases them.
+	 *
+	 * @param fc
+	 *            the destination channel
+	 * @throws IOException
+	 */
+	public void writeTo(GatheringByteChannel fc) throws IOException {
+		final ByteBuffer[] batch = slabs.toArray(new ByteBuffer[slabs.size()]);
+		for (ByteBuffer b : batch) {
+			b.flip();
+		}
+		int first = 0;
+		while (first < batch.length) {
+			fc.write(batch, first, batch.length - first);
+			while (first < batch.length && !batch[first].hasRemaining()) {
+				first++;
+			}
+		}
+		clear();
+	}
+
+	/**
+	 * Releases the contents of this spool.
+	 */
+	public void clear() {
+		slabs.clear();
+		current = null;
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Channel writing into a compressing stream, so that the NUPN writer thread
+ * compresses the slabs it drains while the conversion goes on producing new
+ * ones. Closing the channel finishes the compressed stream.
+ */
+public final class CompressingChannel implements GatheringByteChannel {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private final OutputStream out;
+	private final byte[] chunk;
+	private boolean open;
+
+	public CompressingChannel(OutputStream out) {
+		this.out = out;
+		this.chunk = new byte[CHUNK_SIZE];
+		this.open = true;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		final int n = src.remaining();
+		if (src.hasArray()) {
+			out.write(src.array(), src.arrayOffset() + src.position(), n);
+			src.position(src.limit());
+		} else {
+			while (src.hasRemaining()) {
+				final int k = Math.min(chunk.length, src.remaining());
+				src.get(chunk, 0, k);
+				out.write(chunk, 0, k);
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		long n = 0L;
+		for (int i = offset; i < offset + length; i++) {
+			n += write(srcs[i]);
+		}
+		return n;
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs) throws IOException {
+		return write(srcs, 0, srcs.length);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (open) {
+			open = false;
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,1581 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *  					CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.bind.ValidationException;
+
+import org.slf4j.Logger;
+
+import com.ximpleware.extended.NavExceptionHuge;
+
+import fr.lip6.move.pnml2nupn.MainPNML2NUPN;
+import fr.lip6.move.pnml2nupn.exceptions.EarlyStopException;
+import fr.lip6.move.pnml2nupn.exceptions.InternalException;
+import fr.lip6.move.pnml2nupn.exceptions.InvalidNetException;
+import fr.lip6.move.pnml2nupn.exceptions.InvalidPNMLTypeException;
+import fr.lip6.move.pnml2nupn.exceptions.InvalidSafeNetException;
+import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.export.ConversionMetrics;
+import fr.lip6.move.pnml2nupn.export.ConversionOptions;
+import fr.lip6.move.pnml2nupn.export.ConversionReport;
+import fr.lip6.move.pnml2nupn.utils.Compression;
+import fr.lip6.move.pnml2nupn.utils.NavPlan;
+import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
+import fr.lip6.move.pnml2nupn.utils.SafePNChecker;
+import fr.lip6.move.pnml2nupn.utils.XMLNav;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntBigArrayBigList;
+import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongBigArrayBigList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+/**
+ * A single conversion: its options, and all the state it builds while
+ * translating one PNML document. A new context is created for each call to
+ * {@link PNML2NUPNExporterImpl}, so that conversions never share mutable
+ * state.
+ */
+final class ConversionContext {
+
+	private static final String METRICS_EXT = ".metrics.json";
+	/* Number of arcs read by a worker at once, when arcs are read in parallel */
+	private static final int ARC_RANGE_SIZE = 1 << 16;
+	/* Arcs a worker reads between two checks that no other worker gave up */
+	private static final long CANCEL_CHECK_MASK = (1L << 10) - 1L;
+
+	private final ConversionOptions options;
+	/* Lines appended to the signature message by this conversion */
+	private final StringBuilder signatureMesg;
+	/* Time and memory spent in each phase of this conversion */
+	private final ConversionMetrics metrics;
+	private Logger logger;
+
+	/* Places, transitions and arcs of the net, as nodes of its id dictionary */
+	private PNMLScanner scanner;
+	/* By node: NUPN id of the place or transition, -1 for none */
+	private long[] placesNode2NupnMap;
+	private long[] trNode2NupnMap;
+	/* By NUPN place id, from the first one: node of the place */
+	private int[] placeNodesByRank;
+	/* Number of distinct place and transition ids */
+	private int nbPlaceIds, nbTrIds;
+	/* Input and output places of transitions */
+	private NetGraph netGraph;
+	/*
+	 * By transition node, when there are unsafe arcs: number of input arcs, of
+	 * input arcs with inscription 1, and sum of their inscriptions. Same for
+	 * output arcs.
+	 */
+	private long[] trNbInArcs, trNbSafeInArcs, trInSum;
+	private long[] trNbOutArcs, trNbSafeOutArcs, trOutSum;
+	private Int2ObjectLinkedOpenHashMap<LongBigArrayBigList> tr2InUnsafeArcsMap;
+	private Int2ObjectLinkedOpenHashMap<LongBigArrayBigList> tr2OutUnsafeArcsMap;
+	/* Nodes connected by unsafe arcs */
+	private BitSet unsafeNodes;
+
+	private File currentInputFile;
+	private SafePNChecker spnc;
+	private long nbUnsafeArcs, nbUnsafePlaces, nbUnsafeTrans;
+	private long nbTransIn, nbTransOut, nbTransInOut;
+	// For places and transitions id count
+	private long placeIDGen;
+	private long transitionIDGen;
+	private boolean unsafePlaces, unsafeTrans;
+	/* For the NuPN file */
+	private ByteRingBuffer nupnQueue;
+	private NUPNLineEncoder nupnEnc;
+	/* For Transitions mapping NuPN - PNML, appended to the NuPN file at the end */
+	private ByteSpool tsQueue;
+	private NUPNLineEncoder tsEnc;
+	/* For Places mapping NuPN - PNML, appended to the NuPN file at the end */
+	private ByteSpool psQueue;
+	private NUPNLineEncoder psEnc;
+	/* For unsafe arcs */
+	private ByteRingBuffer uaQueue;
+	private OutChannelBean ocbNupn;
+	private OutChannelBean ocbUA;
+	private File outUAFile;
+	/* Navigation in the XML */
+	private XMLNav vn;
+	/* NUPN tool specific section in the PNML? */
+	private boolean hasNUPNToolspecific;
+	/* For greatest label length - since v-3.0.0. */
+	private int labelLength;
+
+	ConversionContext(ConversionOptions options) {
+		this.options = options;
+		this.signatureMesg = new StringBuilder();
+		this.metrics = new ConversionMetrics();
+		spnc = new SafePNChecker();
+	}
+
+	ConversionOptions getOptions() {
+		return options;
+	}
+
+	ConversionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Appends a line to the signature message of this conversion.
+	 */
+	void appendMesgLineToSignature(String msg) {
+		signatureMesg.append(MainPNML2NUPN.NL).append(MainPNML2NUPN.COLWS).append(msg);
+	}
+
+	ConversionReport getReport() {
+		return new ConversionReport(signatureMesg.toString(), metrics);
+	}
+
+	void checkHasUnsafeArcs(File inFile, File outFile, Logger journal)
+			throws InvalidPNMLTypeException, IOException, PNMLImportExportException {
+		long nbUnsArcs = 0L;
+		initLog(journal);
+		try {
+			XMLNav vn = parseXML(inFile);
+			logger.info("Checking it is a PT Net.");
+			if (!ExportUtils.isPTNet(vn, logger)) {
+				throw new InvalidPNMLTypeException(
+						"The contained Petri net(s) in the following file is not a P/T Net. Only P/T Nets are supported: "
+								+ inFile.getCanonicalPath());
+			}
+			outUAFile = new File(PNML2NUPNUtils.extractBaseName(outFile.getCanonicalPath()) + NUPNConstants.UNSAFE_ARC);
+			ocbUA = PNML2NUPNUtils.openOutChannel(outUAFile);
+			uaQueue = PNML2NUPNUtils.initQueue();
+			Thread uaWriter = PNML2NUPNUtils.startWriter(ocbUA, uaQueue);
+
+			// Check inscriptions > 1
+			NavPlan.Cursor cursor = PNMLPaths.UNSAFE_ARCS.cursor(vn);
+			StringBuilder unsafeArcsId = new StringBuilder();
+			long val;
+			String id, src, trg;
+			while (cursor.next() != -1) {
+				vn.push();
+				vn.toElement(XMLNav.FIRST_CHILD);
+				while (!vn.matchElement(NUPNConstants.TEXT)) {
+					vn.toElement(XMLNav.NEXT_SIBLING);
+				}
+				val = vn.parseLong(vn.getText());
+				vn.toElement(XMLNav.PARENT);
+				vn.toElement(XMLNav.PARENT);
+				id = vn.toString(vn.getAttrVal(PNMLPaths.ID_ATTR));
+				if (id != null) {
+					src = vn.toString(vn.getAttrVal(PNMLPaths.SRC_ATTR));
+					trg = vn.toString(vn.getAttrVal(PNMLPaths.TRG_ATTR));
+					unsafeArcsId.append(src + NUPNConstants.WS + id + NUPNConstants.WS + trg + NUPNConstants.WS
+							+ NUPNConstants.HK + val + NUPNConstants.NL);
+					uaQueue.put(unsafeArcsId.toString());
+					nbUnsArcs++;
+				}
+				vn.pop();
+				unsafeArcsId.delete(0, unsafeArcsId.length());
+			}
+			if (nbUnsArcs > 0) {
+				journal.warn("There are {} unsafe arcs in this net.", nbUnsArcs);
+			} else {
+				logger.info("There are no unsafe arcs in this net.");
+			}
+			PNML2NUPNUtils.stopWriter(uaQueue);
+			PNML2NUPNUtils.joinWriter(uaWriter, uaQueue);
+			PNML2NUPNUtils.closeChannel(ocbUA);
+			if (nbUnsArcs > 0) {
+				logger.info("See unsafe arcs files: {}", outUAFile.getCanonicalPath());
+			} else {
+				outUAFile.delete();
+			}
+		} catch (NavExceptionHuge | InterruptedException e) {
+			try {
+				emergencyStop(OutputTarget.toFile(outFile));
+			} catch (InterruptedException e1) {
+				e1.printStackTrace();
+			}
+			throw new PNMLImportExportException(e);
+		} catch (PNMLImportExportException e) {
+			try {
+				emergencyStop(OutputTarget.toFile(outFile));
+			} catch (InterruptedException e1) {
+				e1.printStackTrace();
+			}
+			throw e;
+		}
+	}
+
+	void export(File inFile, OutputTarget target, Logger journal)
+			throws PNMLImportExportException, InterruptedException, IOException, EarlyStopException {
+		initLog(journal);
+		try {
+			this.currentInputFile = inFile;
+			journal.info("Checking preconditions on input file format: {} ", inFile.getCanonicalPath());
+			PNML2NUPNUtils.checkIsPnmlFile(inFile);
+			logger.info("Exporting into NUPN: {}", inFile.getCanonicalPath());
+			metrics.setSource(inFile.getCanonicalPath());
+			ConversionMetrics.Span span = metrics.start("parse");
+			openXMLStream(inFile);
+			span.end(inFile.length());
+			span = metrics.start("toolspecific.detect");
+			boolean hasNupnToolInfo = hasNUPNToolSpecificSection(inFile);
+			span.end(-1L);
+
+			if (options.isPreserveNupnNative() && hasNupnToolInfo) {
+				journal.info("NUPN extraction in native mode requested, and there is a NUPN tool specific section.");
+				journal.info("NUPN extraction in native mode supersedes NUPN extraction in mixed mode.");
+				NativeNUPNExtractor nupnExtractor = new NativeNUPNExtractor(inFile, target, journal, this);
+				nupnExtractor.extractNUPN(vn);
+			} else {
+				translateIntoNUPN(inFile, target, journal);
+			}
+			if (options.isMetricsReport()) {
+				writeMetrics(target.getFile());
+			}
+		} catch (ValidationException | fr.lip6.move.pnml2nupn.exceptions.InvalidFileTypeException
+				| fr.lip6.move.pnml2nupn.exceptions.InvalidFileException | InternalException
+				| InvalidPNMLTypeException e) {
+			throw new PNMLImportExportException(e);
+		} catch (IOException e) {
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the metrics of this conversion into <code>&lt;base&gt;.metrics.json</code>,
+	 * next to the NUPN file.
+	 */
+	private void writeMetrics(File outFile) throws IOException {
+		String base = Compression.strip(outFile.getName());
+		final int dot = base.lastIndexOf(MainPNML2NUPN.DOT);
+		if (dot > 0) {
+			base = base.substring(0, dot);
+		}
+		final File metricsFile = new File(outFile.getAbsoluteFile().getParentFile(), base + METRICS_EXT);
+		Files.write(metricsFile.toPath(), metrics.toJson().getBytes(StandardCharsets.UTF_8));
+		logger.info("See metrics file: {}", metricsFile.getCanonicalPath());
+	}
+
+	void openXMLStream(File inFile) throws PNMLImportExportException {
+		vn = parseXML(inFile);
+	}
+
+	/**
+	 * Parses a PNML document with the VTD engine its size calls for, or loads
+	 * its index from the index cache if enabled.
+	 */
+	XMLNav parseXML(File inFile) throws PNMLImportExportException {
+		final XMLNav nav = PNML2NUPNUtils.openXMLStream(inFile, options.getHugeParserThreshold(),
+				options.getIndexCacheSize());
+		if (nav.isIndexLoaded()) {
+			logger.info("Loaded the VTD index from the index cache.");
+		} else {
+			logger.info("Parsed with the {} VTD engine.", nav.isHuge() ? "extended" : "standard");
+		}
+		return nav;
+	}
+
+	/**
+	 * Checks the presence of NUPN tool specific section in the PNML.
+	 * 
+	 * @param inFile
+	 * @return
+	 * @throws PNMLImportExportException
+	 */
+	boolean hasNUPNToolSpecificSection(File inFile) throws PNMLImportExportException {
+		boolean hasNUPNToolspecific = false;
+		try {
+			logger.info("Checking for the presence of a NUPN tool specific section.");
+			NavPlan.Cursor cursor = PNMLPaths.NUPN_TOOL_SPECIFIC.cursor(vn);
+			String version;
+			while (cursor.next() != -1) {
+				vn.push();
+				version = vn.toString(vn.getAttrVal(PNMLPaths.VERSION_ATTR));
+				if (NUPNConstants.NUPN_SUPPORTED_VERSION.equals(version)) {
+					hasNUPNToolspecific = true;
+					logger.info("NUPN toolspecific section detected in the PNML, version: {}", version);
+					vn.pop();
+					break;
+				} else {
+					logger.warn("NUPN toolspecific section detected in the PNML, but version not supported: {}",
+							version);
+					logger.warn("I support NUPN toolspecific version {}", NUPNConstants.NUPN_SUPPORTED_VERSION);
+				}
+				vn.pop();
+			}
+		} catch (NavExceptionHuge e) {
+			throw new PNMLImportExportException(e);
+		}
+		this.hasNUPNToolspecific = hasNUPNToolspecific;
+		if (!hasNUPNToolspecific) {
+			logger.info("No NUPN tool specific section in this PNML file.");
+		}
+		return hasNUPNToolspecific;
+	}
+
+	private void translateIntoNUPN(File inFile, OutputTarget target, Logger journal) throws InvalidPNMLTypeException,
+			InterruptedException, PNMLImportExportException, IOException, EarlyStopException {
+
+		boolean isSafe = false;
+		try {
+			logger.info("Checking it is a PT Net.");
+			if (!ExportUtils.isPTNet(vn, logger)) {
+				throw new InvalidPNMLTypeException(
+						"The net in the document is not a P/T Net. Only P/T Nets are supported: "
+								+ this.currentInputFile.getCanonicalPath());
+			}
+			ConversionMetrics.Span span = metrics.start("scan");
+			PNMLScanner scanner = scan();
+			metrics.setNetSize(scanner.getNbPlaces(), scanner.getNbTransitions(), scanner.getNbArcs());
+			span.end(scanner.getNbPlaces() + scanner.getNbTransitions() + scanner.getNbArcs());
+			// The net must be 1-safe, if bounds checking is enabled.
+			if (options.isUnitSafenessChecking()) {
+				logger.info("Checking if this net is 1-Safe.");
+				span = metrics.start("safeness.check");
+				isSafe = ExportUtils.isNet1Safe(spnc, scanner, options.getNbUnsafePlacesToReport(),
+						metrics.getSource());
+				span.end(scanner.getNbPlaces());
+				if (!isSafe) {
+					if (spnc.isBoundsVerdictInconclusive()) {
+						journal.warn(
+								"This net cannot be proven 1-safe or unsafe (some place bounds could not be computed using structural analysis): "
+										+ this.currentInputFile.getCanonicalPath());
+					} else {
+						journal.error(
+								"This net is not 1-safe (proven by structural analysis of place bounds): "
+										+ this.currentInputFile.getCanonicalPath());
+						journal.error("\nUNSAFE PLACES: {}", generateUnsafePlacesReport());
+					}
+
+					if (options.isForceNUPNGen() && !options.isUnitSafenessCheckingOnly()) {
+						journal.warn("Forced NUPN generation is set => Continuing NUPN generation.");
+					} else {
+						if (!options.isUnitSafenessCheckingOnly()) {
+							if (spnc.isBoundsVerdictInconclusive()) {
+								journal.warn(
+										"Potentially unsafe net (inconclusive verdict by structural analysis) => Continuing NUPN generation.");
+							} else {
+								throw new InvalidSafeNetException(
+										"Unsafe net in " + this.currentInputFile.getCanonicalPath());
+							}
+						}
+					}
+				} else {
+					logger.info(
+							"This net is 1-safe (proven by structural analysis of place bounds): {}",
+							this.currentInputFile.getCanonicalPath());
+				}
+				if (options.isUnitSafenessCheckingOnly()) {
+					journal.info("Unit safeness checking only requested. Will stop here.");
+					throw new EarlyStopException(
+							"Unit safeness checking only requested on " + this.currentInputFile.getCanonicalPath());
+				}
+			} else {
+				logger.warn("Unit safeness checking is disabled. I don't know if this net is 1-Safe.");
+			}
+			// Open NUPN file channel, and init write queue
+			ocbNupn = target.open();
+			initQueues(PNML2NUPNUtils.initQueue(options.getQueueCapacity()));
+
+			// Start writer
+			Thread nupnWriter = PNML2NUPNUtils.startWriter(ocbNupn, nupnQueue);
+
+			// Insert creator pragma (since 1.3.0)
+			PNML2NUPNUtils.insertCreatorPragma(nupnQueue);
+			// Insert unit_safe pragma if necessary (since 1.4.1)
+			if (options.isUnitSafenessChecking() && isSafe) {
+				ExportUtils.insertUnitSafePragma(nupnQueue, MainPNML2NUPN.PRAGMA_UNIT_SAFE_BY_CREATOR);
+			}
+
+			// export places
+			logger.info("Exporting places.");
+			exportPlacesIntoUnits(scanner, nupnQueue, psQueue);
+
+			// export transitions
+			logger.info("Exporting transitions.");
+			span = metrics.start("transitions.write");
+			exportTransitions130(nupnEnc);
+			span.end(nbTrIds);
+
+			// write labels line
+			ExportUtils.setLabelsLine(nupnEnc, labelLength, nbTrIds == 0);
+
+			// stop NUPN writer
+			span = metrics.start("writer.drain");
+			PNML2NUPNUtils.stopWriters(nupnQueue);
+			PNML2NUPNUtils.joinWriter(nupnWriter, nupnQueue);
+			span.end(ocbNupn.getWritten());
+			ExportUtils.reportQueueStats(nupnQueue, metrics, logger);
+
+			// append place and transition Ids-labels mappings to NUPN file, and release related resources
+			span = metrics.start("labels.append");
+			final long nbLabelBytes = psQueue.size() + tsQueue.size();
+			logger.info("Appending place Ids-labels mappings to NUPN file");
+			psQueue.writeTo(ocbNupn.getChannel());
+			logger.info("Appending transition Ids-labels mappings to NUPN file");
+			tsQueue.writeTo(ocbNupn.getChannel());
+			span.end(nbLabelBytes);
+			PNML2NUPNUtils.closeChannels(ocbNupn);
+
+			// clear maps
+			clearAllCollections();
+			logger.info("See NUPN file: {}", target);
+		} catch (EarlyStopException e) {
+			normalStop(target);
+			throw e;
+		} catch (NavExceptionHuge | InvalidSafeNetException | InternalException | InvalidNetException e) {
+			emergencyStop(target);
+			throw new PNMLImportExportException(e);
+		} catch (PNMLImportExportException e) {
+			emergencyStop(target);
+			throw e;
+		} catch (InterruptedException e) {
+			emergencyStop(target);
+			throw e;
+		} catch (IOException e) {
+			emergencyStop(target);
+			throw e;
+		}
+	}
+
+	/**
+	 * Inits the data structures for places and transitions, then collects
+	 * places, markings, transitions and arcs in a single pass.
+	 */
+	PNMLScanner scan() throws NavExceptionHuge, InvalidNetException {
+		initPlacesMap();
+		initUnsafeArcsMap();
+		initTransitionsMaps();
+		initUnsafeTransMaps();
+		scanner = new PNMLScanner(vn);
+		scanner.scan(options.isUsePlaceNames(), options.isUseTransitionNames());
+		return scanner;
+	}
+
+	/**
+	 * Inits the NUPN write queue, and the in-memory sections for transitions and
+	 * places id mapping.
+	 */
+	void initQueues(ByteRingBuffer queue) {
+		nupnQueue = queue;
+		nupnEnc = new NUPNLineEncoder(nupnQueue);
+		tsQueue = PNML2NUPNUtils.initSpool();
+		tsEnc = new NUPNLineEncoder(tsQueue);
+		psQueue = PNML2NUPNUtils.initSpool();
+		psEnc = new NUPNLineEncoder(psQueue);
+	}
+
+	ByteRingBuffer getNupnQueue() {
+		return nupnQueue;
+	}
+
+	ByteSpool getPsQueue() {
+		return psQueue;
+	}
+
+	/**
+	 * Exports transitions into NUPN (since 1.3.0)
+	 * 
+	 * @param enc
+	 *            the encoder to the NUPN file
+	 * @throws InterruptedException
+	 */
+	private void exportTransitions130(NUPNLineEncoder enc) throws InterruptedException {
+		long nb = nbTrIds;
+		enc.token(NUPNConstants.TRANSITIONS).space().count(nb).space()
+				.range(options.getFirstTransitionNumber(), nb - 1L + options.getFirstTransitionNumber())
+				.newLine();
+
+		final int nbTr = netGraph.getNbTransitions();
+		for (int tr = 0; tr < nbTr; tr++) {
+			enc.token(NUPNConstants.T).number(transitionIDGen + tr);
+			buildConnectedPlaces2Transition(enc, tr, true);
+			buildConnectedPlaces2Transition(enc, tr, false);
+			enc.newLine();
+		}
+	}
+
+	/**
+	 * Builds the description of a transition in NUPN
+	 * 
+	 * @param enc
+	 * @param tr
+	 *            the transition index in the net graph
+	 * @param input
+	 *            true for the input places, false for the output places
+	 * @throws InterruptedException
+	 */
+	private void buildConnectedPlaces2Transition(NUPNLineEncoder enc, int tr, boolean input)
+			throws InterruptedException {
+		long plsSize = input ? netGraph.getNbInputPlaces(tr) : netGraph.getNbOutputPlaces(tr);
+		enc.space().count(plsSize);
+		for (long k = 0L; k < plsSize; k++) {
+			enc.space().number(input ? netGraph.getInputPlace(tr, k) : netGraph.getOutputPlace(tr, k));
+		}
+	}
+
+	/**
+	 * Accounts for an arc in the unsafe arcs and the arc counts of its
+	 * transition.
+	 * 
+	 * @param input
+	 *            true if the transition is the target of the arc
+	 */
+	private void mapArcToTransition(int src, int trg, long arcInsc, boolean input) {
+		if (input) {
+			if (trg != -1) {
+				// Unsafe node ?
+				if (arcInsc > 1L && unsafeNodes.get(trg)) {
+					mapUnsafeArcToTransition(tr2InUnsafeArcsMap, trg, arcInsc);
+				}
+				// map the transition to all input arcs
+				mapInputArcToTransition(trg, arcInsc);
+			}
+		} else {
+			if (arcInsc > 1L && unsafeNodes.get(src)) {
+				mapUnsafeArcToTransition(tr2OutUnsafeArcsMap, src, arcInsc);
+			}
+			// map the transition to all output arcs
+			mapOutputArcToTransition(src, arcInsc);
+		}
+	}
+
+	/**
+	 * Reads the arcs into the net graph on the fork/join pool shared by all the
+	 * conversions (see {@link ArcPool}), if the net is large enough and option
+	 * {@link MainPNML2NUPN#ARC_WORKERS} allows it. The arcs are split into
+	 * ranges, each read by a worker into its own lists, and the lists are then
+	 * appended to the net graph in the order of the ranges: the graph is the
+	 * same as when the arcs are read one after the other. With a number of
+	 * workers set by the option, the ranges are split into as many groups of
+	 * consecutive ranges, so that this conversion occupies at most as many
+	 * threads of the pool.
+	 * <p>
+	 * Nothing is read if an arc connects two nodes that are not transitions:
+	 * its target then becomes a new transition, which only a sequential read
+	 * numbers as expected. The first worker finding such an arc stops all the
+	 * others.
+	 * </p>
+	 * 
+	 * @return true if the arcs were read, false if they are left to a
+	 *         sequential read
+	 */
+	private boolean readArcsInParallel(PNMLScanner scanner) {
+		final int nbWorkers = options.getArcWorkers();
+		final long nbArcs = scanner.getNbArcs();
+		if (nbWorkers == 1 || nbArcs < 2L * ARC_RANGE_SIZE) {
+			return false;
+		}
+		final ArcRange[] ranges = new ArcRange[(int) ((nbArcs + ARC_RANGE_SIZE - 1) / ARC_RANGE_SIZE)];
+		for (int k = 0; k < ranges.length; k++) {
+			ranges[k] = new ArcRange(k * (long) ARC_RANGE_SIZE, Math.min(nbArcs, (k + 1) * (long) ARC_RANGE_SIZE));
+		}
+		final int nbTasks = nbWorkers == 0 ? ranges.length : Math.min(nbWorkers, ranges.length);
+		final AtomicBoolean newTransitions = new AtomicBoolean();
+		ArcPool.POOL.invoke(new ArcTask(scanner, ranges, 0, ranges.length, nbTasks, newTransitions));
+		if (newTransitions.get()) {
+			logger.debug("Some arcs reference undeclared transitions: reading the arcs sequentially.");
+			return false;
+		}
+		for (ArcRange range : ranges) {
+			netGraph.addInputs(range.inTrs, range.inPls);
+			netGraph.addOutputs(range.outTrs, range.outPls);
+		}
+		logger.debug("Read {} arcs in {} ranges, with up to {} workers of the shared pool.", nbArcs, ranges.length,
+				Math.min(nbTasks, ArcPool.POOL.getParallelism()));
+		return true;
+	}
+
+	/**
+	 * Reads a range of arcs into its lists, the way
+	 * {@link #buildTransitions(PNMLScanner)} reads each arc. Stops as soon as
+	 * some worker finds an arc whose ends are not transitions.
+	 */
+	private void readArcs(PNMLScanner scanner, ArcRange range, AtomicBoolean newTransitions) {
+		final IntBigArrayBigList arcSources = scanner.getArcSources();
+		final IntBigArrayBigList arcTargets = scanner.getArcTargets();
+		int src, trg;
+		long tId;
+		for (long i = range.from; i < range.to; i++) {
+			if ((i & CANCEL_CHECK_MASK) == 0L && newTransitions.get()) {
+				return;
+			}
+			src = arcSources.getInt(i);
+			trg = arcTargets.getInt(i);
+			tId = getNupnId(trNode2NupnMap, src);
+			if (tId == -1L) { // transition is the target
+				tId = getNupnId(trNode2NupnMap, trg);
+				if (tId == -1L) {
+					newTransitions.set(true);
+					return;
+				}
+				range.inTrs.add((int) (tId - transitionIDGen));
+				range.inPls.add(getNupnId(placesNode2NupnMap, src));
+			} else {// transition is the source
+				range.outTrs.add((int) (tId - transitionIDGen));
+				range.outPls.add(getNupnId(placesNode2NupnMap, trg));
+			}
+		}
+	}
+
+	/**
+	 * A range of arcs, and the input and output places of transitions read
+	 * from it.
+	 */
+	private static final class ArcRange {
+		private final long from, to;
+		private final IntArrayList inTrs, outTrs;
+		private final LongArrayList inPls, outPls;
+
+		ArcRange(long from, long to) {
+			this.from = from;
+			this.to = to;
+			inTrs = new IntArrayList();
+			outTrs = new IntArrayList();
+			inPls = new LongArrayList();
+			outPls = new LongArrayList();
+		}
+	}
+
+	/**
+	 * Reads ranges of arcs, splitting them between workers.
+	 */
+	private final class ArcTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final transient PNMLScanner scanner;
+		private final transient ArcRange[] ranges;
+		private final int first, last;
+		/* Number of groups of ranges read concurrently, each one sequentially */
+		private final int nbTasks;
+		/* Set by the first worker finding an arc whose ends are not transitions */
+		private final AtomicBoolean newTransitions;
+
+		ArcTask(PNMLScanner scanner, ArcRange[] ranges, int first, int last, int nbTasks,
+				AtomicBoolean newTransitions) {
+			this.scanner = scanner;
+			this.ranges = ranges;
+			this.first = first;
+			this.last = last;
+			this.nbTasks = nbTasks;
+			this.newTransitions = newTransitions;
+		}
+
+		@Override
+		protected void compute() {
+			if (nbTasks <= 1 || last - first == 1) {
+				for (int k = first; k < last && !newTransitions.get(); k++) {
+					readArcs(scanner, ranges[k], newTransitions);
+				}
+			} else {
+				final int half = nbTasks >>> 1;
+				final int middle = Math.max(first + 1,
+						Math.min(last - 1, first + (int) ((long) (last - first) * half / nbTasks)));
+				invokeAll(new ArcTask(scanner, ranges, first, middle, half, newTransitions),
+						new ArcTask(scanner, ranges, middle, last, nbTasks - half, newTransitions));
+			}
+		}
+	}
+
+	/**
+	 * Holds the pool reading the arcs of large nets, created on the first
+	 * parallel read. It is shared by all the conversions of the process, so
+	 * that conversions run concurrently (option
+	 * {@link MainPNML2NUPN#PARALLEL_JOBS}, or the daemon) never run more
+	 * workers than available processors altogether. Its threads are daemon
+	 * threads: it is never shut down.
+	 */
+	private static final class ArcPool {
+		static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	private void mapInputArcToTransition(int targetTr, long inscription) {
+		trNbInArcs[targetTr]++;
+		if (inscription == 1L) {
+			trNbSafeInArcs[targetTr]++;
+		}
+		trInSum[targetTr] += inscription;
+	}
+
+	private void mapOutputArcToTransition(int sourceTr, long inscription) {
+		trNbOutArcs[sourceTr]++;
+		if (inscription == 1L) {
+			trNbSafeOutArcs[sourceTr]++;
+		}
+		trOutSum[sourceTr] += inscription;
+	}
+
+	private static void mapUnsafeArcToTransition(Int2ObjectLinkedOpenHashMap<LongBigArrayBigList> tr2UnsafeArcsMap,
+			int tr, long inscription) {
+		LongBigArrayBigList arcVals = tr2UnsafeArcsMap.get(tr);
+		if (arcVals == null) {
+			arcVals = new LongBigArrayBigList();
+			tr2UnsafeArcsMap.put(tr, arcVals);
+		}
+		arcVals.add(inscription);
+	}
+
+	/**
+	 * Returns the NUPN id of a node, -1 if it has none.
+	 */
+	private static long getNupnId(long[] node2NupnMap, int node) {
+		return node == -1 ? -1L : node2NupnMap[node];
+	}
+
+	private static long[] newNode2NupnMap(int nbNodes) {
+		final long[] map = new long[nbNodes];
+		Arrays.fill(map, -1L);
+		return map;
+	}
+
+	/**
+	 * Builds transitions collections, collecting unsafe arcs and corresponding
+	 * transitions.
+	 * 
+	 * @param scanner
+	 *            the places, transitions and arcs collected from the PNML
+	 */
+	void buildTransitions(PNMLScanner scanner) throws InterruptedException, NavExceptionHuge {
+		int src, trg;
+		long count = transitionIDGen;
+		long tId, pId;
+		long arcInsc = 0;
+		final int nbNodes = scanner.getNbNodes();
+
+		trNode2NupnMap = newNode2NupnMap(nbNodes);
+		nbTrIds = 0;
+		if (unsafeTrans) {
+			trNbInArcs = new long[nbNodes];
+			trNbSafeInArcs = new long[nbNodes];
+			trInSum = new long[nbNodes];
+			trNbOutArcs = new long[nbNodes];
+			trNbSafeOutArcs = new long[nbNodes];
+			trOutSum = new long[nbNodes];
+		}
+		IntBigArrayBigList trNodes = scanner.getTransitionNodes();
+		for (long i = 0L; i < trNodes.size64(); i++) {
+			trg = trNodes.getInt(i);
+			tId = count++;
+			mapTransition(trg, tId);
+			putTransitionLabel(tId, trg);
+		}
+
+		IntBigArrayBigList arcSources = scanner.getArcSources();
+		IntBigArrayBigList arcTargets = scanner.getArcTargets();
+		LongBigArrayBigList inscriptions = scanner.getInscriptions();
+		long nbArcs = scanner.getNbArcs();
+		if (readArcsInParallel(scanner)) {
+			if (unsafeTrans) {
+				for (long i = 0L; i < nbArcs; i++) {
+					src = arcSources.getInt(i);
+					mapArcToTransition(src, arcTargets.getInt(i), inscriptions.getLong(i),
+							getNupnId(trNode2NupnMap, src) == -1L);
+				}
+			}
+			netGraph.build((int) (count - transitionIDGen));
+			return;
+		}
+		for (long i = 0L; i < nbArcs; i++) {
+			src = arcSources.getInt(i);
+			trg = arcTargets.getInt(i);
+			arcInsc = inscriptions.getLong(i);
+
+			tId = getNupnId(trNode2NupnMap, src);
+			if (tId == -1L) { // transition is the target
+				tId = getNupnId(trNode2NupnMap, trg);
+				if (tId == -1L) {
+					tId = count++;
+					mapTransition(trg, tId);
+					putTransitionLabel(tId, trg);
+				}
+				// associate the input place
+				pId = getNupnId(placesNode2NupnMap, src);
+				netGraph.addInput((int) (tId - transitionIDGen), pId);
+				if (unsafeTrans) {
+					mapArcToTransition(src, trg, arcInsc, true);
+				}
+			} else {// transition is the source
+				pId = getNupnId(placesNode2NupnMap, trg);
+				netGraph.addOutput((int) (tId - transitionIDGen), pId);
+				if (unsafeTrans) {
+					mapArcToTransition(src, trg, arcInsc, false);
+				}
+			}
+		}
+		netGraph.build((int) (count - transitionIDGen));
+	}
+
+	/**
+	 * Gives its NUPN id to a transition node. A transition declared several
+	 * times keeps the id of its last declaration.
+	 */
+	private void mapTransition(int node, long tId) {
+		if (node != -1) {
+			if (trNode2NupnMap[node] == -1L) {
+				nbTrIds++;
+			}
+			trNode2NupnMap[node] = tId;
+		}
+	}
+
+	/**
+	 * Builds unsafe arcs pragma
+	 * 
+	 * @param nupnQueue
+	 * @throws InterruptedException
+	 */
+	void buildUnsafeArcsPragma(ByteRingBuffer nupnQueue) throws InterruptedException, NavExceptionHuge {
+		LongBigArrayBigList arcVals = null;
+		LongArrayList minValIn = new LongArrayList(2);
+		LongArrayList minValOut = new LongArrayList(2);
+		LongArrayList maxValIn = new LongArrayList(2);
+		LongArrayList maxValOut = new LongArrayList(2);
+
+		LongArrayList minAllDiff = new LongArrayList(2);
+		LongArrayList maxAllDiff = new LongArrayList(2);
+		// long minDiff = 0L, maxDiff = 0L;
+		long diff = 0L;
+		long inValT = 0L, outValT = 0L;
+		long arcValsSafe;
+		String s;
+		int t;
+
+		nbUnsafeTrans = 0L;
+		if (unsafeTrans) {
+			StringBuilder warnMsg = new StringBuilder();
+			/* Transitions whose arcs were accounted for with the unsafe ones */
+			final BitSet accounted = new BitSet();
+			for (Int2ObjectMap.Entry<LongBigArrayBigList> e : tr2InUnsafeArcsMap.int2ObjectEntrySet()) {
+				t = e.getIntKey();
+				s = scanner.getId(t);
+				arcVals = e.getValue();
+				inValT = 0L;
+				outValT = 0L;
+				warnMsg.append("Transition ").append(s).append(" is unsafe because it has ").append(arcVals.size64())
+						.append(" unsafe incoming arc(s) with respective valuation(s):");
+				for (long v : arcVals) {
+					warnMsg.append(NUPNConstants.WS).append(v);
+					PNML2NUPNUtils.setMin(v, minValIn);
+					PNML2NUPNUtils.setMax(v, maxValIn);
+					/*
+					 * minValIn = Math.min(minValIn, v); maxValIn = Math.max(maxValIn, v);
+					 */
+					inValT += v;
+				}
+				// they could also have incoming arcs with valuation = 1...
+				arcValsSafe = trNbSafeInArcs[t];
+				if (arcValsSafe > 0L) {
+					inValT += arcValsSafe;
+					warnMsg.append(", safe incoming arc(s) with respective valuation(s):");
+					appendSafeArcs(warnMsg, arcValsSafe);
+				}
+
+				arcVals = tr2OutUnsafeArcsMap.remove(t);
+				if (arcVals != null) {
+					nbTransInOut++;
+					warnMsg.append(", ").append(arcVals.size64())
+							.append(" unsafe outgoing arc(s) with respective valuation(s):");
+					for (long v : arcVals) {
+						warnMsg.append(NUPNConstants.WS).append(v);
+						PNML2NUPNUtils.setMin(v, minValOut);
+						PNML2NUPNUtils.setMax(v, maxValOut);
+						/*
+						 * minValOut = Math.min(minValOut, v); maxValOut = Math.max(maxValOut, v);
+						 */
+						outValT += v;
+					}
+				} else {
+					nbTransIn++;
+				}
+
+				// they could also have outgoing arcs with valuation = 1...
+				arcValsSafe = trNbSafeOutArcs[t];
+				if (arcValsSafe > 0L) {
+					outValT += arcValsSafe;
+					warnMsg.append(", and safe outgoing arc(s) with respective valuation(s):");
+					appendSafeArcs(warnMsg, arcValsSafe);
+				}
+				accounted.set(t);
+
+				nbUnsafeTrans++;
+
+				diff = outValT - inValT;
+				PNML2NUPNUtils.setMin(diff, minAllDiff);
+				PNML2NUPNUtils.setMax(diff, maxAllDiff);
+
+				if (diff == 0) {
+					int replacementStartIndex = 12 + s.length();
+					warnMsg.replace(replacementStartIndex, replacementStartIndex + 3, "might be ");
+					PNML2NUPNUtils.debug(warnMsg.toString(), logger);
+				} else {
+					logger.warn(warnMsg.toString());
+				}
+
+				warnMsg.delete(0, warnMsg.length());
+				PNML2NUPNUtils.debug("Diff for transition {}: outVal({}) - inVal({}) = {}", logger, s, s, s, diff);
+			}
+
+			tr2InUnsafeArcsMap.clear();
+
+			for (Int2ObjectMap.Entry<LongBigArrayBigList> e : tr2OutUnsafeArcsMap.int2ObjectEntrySet()) {
+				t = e.getIntKey();
+				s = scanner.getId(t);
+				arcVals = e.getValue();
+				inValT = 0L;
+				outValT = 0L;
+				warnMsg.append("Transition ").append(s).append(" is unsafe because it has ").append(arcVals.size64())
+						.append(" unsafe outgoing arc(s) with respective valuation(s):");
+				nbTransOut++;
+				for (long v : arcVals) {
+					warnMsg.append(NUPNConstants.WS).append(v);
+					PNML2NUPNUtils.setMin(v, minValOut);
+					PNML2NUPNUtils.setMax(v, maxValOut);
+					outValT += v;
+				}
+				// they could also have outgoing arcs with valuation = 1...
+				arcValsSafe = trNbSafeOutArcs[t];
+				if (arcValsSafe > 0L) {
+					outValT += arcValsSafe;
+					warnMsg.append(", safe outgoing arc(s) with respective valuation(s):");
+					appendSafeArcs(warnMsg, arcValsSafe);
+				}
+				// they could also have incoming arcs with valuation = 1...
+				if (trNbInArcs[t] > 0L) {
+					warnMsg.append(", and ").append(trNbInArcs[t])
+							.append(" safe incoming arc(s) with respective valuation(s):");
+					arcValsSafe = trNbSafeInArcs[t];
+					if (arcValsSafe > 0L) {
+						inValT += arcValsSafe;
+						appendSafeArcs(warnMsg, arcValsSafe);
+					}
+				}
+				accounted.set(t);
+				nbUnsafeTrans++;
+
+				diff = outValT - inValT;
+				PNML2NUPNUtils.setMin(diff, minAllDiff);
+				PNML2NUPNUtils.setMax(diff, maxAllDiff);
+
+				if (diff == 0) {
+					int replacementStartIndex = 12 + s.length();
+					warnMsg.replace(replacementStartIndex, replacementStartIndex + 3, "might be ");
+					PNML2NUPNUtils.debug(warnMsg.toString(), logger);
+				} else {
+					logger.warn(warnMsg.toString());
+				}
+				warnMsg.delete(0, warnMsg.length());
+				PNML2NUPNUtils.debug("Diff for transition {}: outVal({}) - inVal({}) = {}", logger, s, s, s, diff);
+			}
+
+			tr2OutUnsafeArcsMap.clear();
+
+			// process the rest of the transitions (safe ones) to compute min-diff and
+			// max-diff
+			for (t = 0; t < trNbInArcs.length; t++) {
+				if (accounted.get(t) || trNbInArcs[t] == 0L && trNbOutArcs[t] == 0L) {
+					continue;
+				}
+				diff = trOutSum[t] - trInSum[t];
+				PNML2NUPNUtils.setMin(diff, minAllDiff);
+				PNML2NUPNUtils.setMax(diff, maxAllDiff);
+				if (MainPNML2NUPN.isDebug()) {
+					s = scanner.getId(t);
+					PNML2NUPNUtils.debug("Diff for transition {}: outVal({}) - inVal({}) = {}", logger, s, s, s, diff);
+				}
+			}
+
+			// Write pragma
+			StringBuffer multArcsPrama = new StringBuffer();
+			multArcsPrama.append(MainPNML2NUPN.PRAGMA_MULTIPLE_ARCS).append(NUPNConstants.HK + nbTransIn)
+					.append(NUPNConstants.WS).append(NUPNConstants.HK + nbTransOut).append(NUPNConstants.WS)
+					.append(NUPNConstants.HK + nbTransInOut);
+
+			if (nbTransIn == 0L && nbTransInOut == 0L) {
+				multArcsPrama.append(NUPNConstants.WS).append(NUPNConstants.ONE).append(NUPNConstants.DOTS)
+						.append(NUPNConstants.ZERO);
+			} else {
+				multArcsPrama.append(NUPNConstants.WS).append(minValIn.getLong(0)).append(NUPNConstants.DOTS)
+						.append(maxValIn.getLong(0));
+			}
+
+			if (nbTransOut == 0L && nbTransInOut == 0L) {
+				multArcsPrama.append(NUPNConstants.WS).append(NUPNConstants.ONE).append(NUPNConstants.DOTS)
+						.append(NUPNConstants.ZERO);
+			} else {
+				multArcsPrama.append(NUPNConstants.WS).append(minValOut.getLong(0)).append(NUPNConstants.DOTS)
+						.append(maxValOut.getLong(0));
+			}
+			// multArcsPrama.append(NUPNConstants.WS).append(minDiff).append(NUPNConstants.DOTS).append(maxDiff);
+			multArcsPrama.append(NUPNConstants.WS).append(minAllDiff.getLong(0)).append(NUPNConstants.DOTS)
+					.append(maxAllDiff.getLong(0));
+			multArcsPrama.append(NUPNConstants.NL);
+			nupnQueue.put(multArcsPrama.toString());
+
+			// Write unsafe arcs and transitions info in signature message
+			appendMesgLineToSignature("There are " + nbUnsafeArcs + " unsafe arcs with inscriptions > 1");
+			appendMesgLineToSignature(
+					"There are " + nbUnsafeTrans + " transitions connected to the unsafe arcs");
+		}
+	}
+
+	/**
+	 * Appends the valuations of the given number of safe arcs to a message.
+	 */
+	private static void appendSafeArcs(StringBuilder warnMsg, long nbSafeArcs) {
+		for (long k = 0L; k < nbSafeArcs; k++) {
+			warnMsg.append(NUPNConstants.WS).append(1L);
+		}
+	}
+
+	void exportPlacesIntoUnits(PNMLScanner scanner, ByteRingBuffer nupnQueue, ByteSpool psQueue)
+			throws NavExceptionHuge, InvalidSafeNetException, InternalException, InterruptedException,
+			InvalidNetException, IOException {
+		long nbMarkedPlaces = 0L;
+		long minMarking = 0, maxMarking = 0, mkg, totalMkg = 0;
+		unsafePlaces = false;
+		nbUnsafePlaces = 0L;
+		int node;
+		ConversionMetrics.Span span = metrics.start("places.index");
+		nbMarkedPlaces = scanner.getNbMarkedPlaces();
+
+		// Exit point if there is no initial place in the net
+		if (nbMarkedPlaces == 0L) {
+			throw new InvalidNetException("Error: there is no initial place in this net!");
+		}
+		// Check initial markings > 1. No more exit point since 1.3.0
+		// (generate.unsafe property must be removed)
+		IntBigArrayBigList markedPlaceNodes = scanner.getMarkedPlaceNodes();
+		LongBigArrayBigList markings = scanner.getMarkings();
+		StringBuilder unsafePlacesId = new StringBuilder();
+		for (long i = 0L; i < nbMarkedPlaces; i++) {
+			mkg = markings.getLong(i);
+			if (mkg <= 1L) {
+				continue;
+			}
+			if (minMarking == 0 && mkg > maxMarking && mkg > minMarking) {
+				minMarking = mkg;
+				maxMarking = mkg;
+			} else if (mkg < minMarking) {
+				minMarking = mkg;
+			} else if (mkg > maxMarking) {
+				maxMarking = mkg;
+			}
+			unsafePlacesId.append(scanner.getId(markedPlaceNodes.getInt(i)) + NUPNConstants.COMMAWS);
+			nbUnsafePlaces++;
+		}
+
+		indexUnsafeArcsAndPlaces(scanner);
+
+		// select initial places
+		long pId;
+		List<Long> initPlaces = new ArrayList<>();
+		StringBuilder initPlacesId = new StringBuilder();
+		for (long i = 0L; i < nbMarkedPlaces; i++) {
+			totalMkg += markings.getLong(i);
+			node = markedPlaceNodes.getInt(i);
+			pId = getNupnId(placesNode2NupnMap, node);
+			initPlaces.add(pId);
+			initPlacesId.append(scanner.getId(node) + NUPNConstants.COMMAWS);
+		}
+
+		if (nbUnsafePlaces > 0) {
+			unsafePlaces = true;
+			nupnQueue.put(MainPNML2NUPN.PRAGMA_MULTIPLE_INIT_TOKEN + NUPNConstants.HK + totalMkg + NUPNConstants.WS
+					+ NUPNConstants.HK + nbUnsafePlaces + NUPNConstants.WS + minMarking + NUPNConstants.DOTS
+					+ maxMarking + NUPNConstants.NL);
+			logger.warn("There are {} unsafe initial places in this net.", nbUnsafePlaces);
+			unsafePlacesId.delete(unsafePlacesId.length() - 2, unsafePlacesId.length());
+			logger.warn("Unsafe initial places: {}", unsafePlacesId.toString());
+		}
+
+		// Several initial places are now accepted (since 1.1.10)
+		if (nbMarkedPlaces > 1) {
+			logger.info("There are {} initial places in this net.", nbMarkedPlaces);
+		}
+		// Remove trailing comma and space, then display initial places
+		initPlacesId.delete(initPlacesId.length() - 2, initPlacesId.length());
+		logger.info("Initial place(s): {}", initPlacesId.toString());
+
+		if (nbUnsafePlaces > 0) {
+			logger.info("Checking invariant 'total nb of tokens > nb initial places': {}", totalMkg > nbMarkedPlaces);
+			logger.info("Checking invariant 'nb unsafe initial places <= nb initial places': {}",
+					nbUnsafePlaces <= nbMarkedPlaces);
+			logger.info(
+					"Checking invariant '(nb_init - nb_places) + (nb_places * min) <= nb_tokens <= (nb_init - nb_places) + (nb_places * max)': {}",
+					(nbMarkedPlaces - nbUnsafePlaces) + (nbUnsafePlaces * minMarking) <= totalMkg
+							&& totalMkg <= (nbMarkedPlaces - nbUnsafePlaces) + (nbUnsafePlaces * maxMarking));
+		}
+
+		if (unsafePlaces) {
+			appendMesgLineToSignature("decreased to one the marking of " + nbUnsafePlaces + " initial places");
+		}
+
+		span.end(scanner.getNbPlaces());
+
+		// build transitions, to be able to write unsafe arcs pragma
+		span = metrics.start("transitions.build");
+		buildTransitions(scanner);
+		span.end(scanner.getNbArcs());
+		span = metrics.start("unsafe.arcs.pragma");
+		buildUnsafeArcsPragma(nupnQueue);
+		span.end(nbUnsafeArcs);
+
+		// count all places
+		long nbPl = scanner.getNbPlaces();
+		scanner.clear();
+		span = metrics.start("units.write");
+		final StringBuilder nupnsb = new StringBuilder();
+		// Write Number of places
+		nupnsb.append(NUPNConstants.PLACES).append(NUPNConstants.WS).append(NUPNConstants.HK).append(nbPl)
+				.append(NUPNConstants.WS)
+				.append(options.getFirstPlaceNumber()).append(NUPNConstants.DOTS).append(nbPl - 1L + options.getFirstPlaceNumber())
+				.append(NUPNConstants.NL);
+		// Output initial places
+		if (initPlaces.size() > 1) {
+			nupnsb.append(NUPNConstants.INIT_PLACES).append(NUPNConstants.WS).append(NUPNConstants.HK)
+					.append(initPlaces.size());
+			for (Long l : initPlaces) {
+				nupnsb.append(NUPNConstants.WS).append(l);
+			}
+		} else {
+			nupnsb.append(NUPNConstants.INIT_PLACE).append(NUPNConstants.WS).append(initPlaces.get(0));
+		}
+		nupnsb.append(NUPNConstants.NL);
+
+		// If there is nupn toolspecific, use that info to build units
+		if (hasNUPNToolspecific && options.isPreserveNupnMix()) {
+			logger.info("NUPN tool specific section detected in the PNML.");
+			logger.info(
+					"Mixed generation strategy requested. Will use the NUPN structure provided in that section to build units.");
+			logger.info("In this mode, options {} and {} are ignored.", MainPNML2NUPN.USE_PLACE_NAMES,
+					MainPNML2NUPN.USE_TRANSITION_NAMES);
+			String rootUn;
+			Object2LongOpenHashMap<String> unitsIdMap = new Object2LongOpenHashMap<>();
+			unitsIdMap.defaultReturnValue(-1L);
+			long unitIDGen = 0L;
+			NavPlan.Cursor cursor = PNMLPaths.NUPN_STRUCTURE.cursor(vn);
+
+			while (cursor.next() != -1) {
+				vn.push();
+				// write number of units
+				int nbUn = Integer.valueOf(vn.toString(vn.getAttrVal(PNMLPaths.UNITS_ATTR))).intValue();
+				nupnsb.append(NUPNConstants.UNITS).append(NUPNConstants.WS).append(NUPNConstants.HK).append(nbUn)
+						.append(NUPNConstants.WS).append(NUPNConstants.ZERO).append(NUPNConstants.DOTS).append(nbUn - 1)
+						.append(NUPNConstants.NL);
+				// write root unit
+				rootUn = vn.toString(vn.getAttrVal(PNMLPaths.ROOT_ATTR));
+				long rootUnNb = unitIDGen++;
+				unitsIdMap.put(rootUn, rootUnNb);
+				nupnsb.append(NUPNConstants.ROOT_UNIT).append(NUPNConstants.WS).append(rootUnNb)
+						.append(NUPNConstants.NL);
+				nupnQueue.put(nupnsb.toString());
+				nupnsb.delete(0, nupnsb.length());
+				vn.pop();
+			}
+			// write each unit
+			cursor = PNMLPaths.NUPN_UNIT.cursor(vn);
+			String places = "", subunits = "";
+			String[] elemId;
+			String unitSId;
+			long unitLId;
+			long plId;
+			LongList placesIntId = new LongArrayList();
+			LongSortedSet faultyIds = new LongAVLTreeSet();
+			boolean doubleCheck;
+			while (cursor.next() != -1) {
+				vn.push();
+				unitSId = vn.toString(vn.getAttrVal(PNMLPaths.ID_ATTR));
+				unitLId = unitsIdMap.getLong(unitSId);
+				if (unitLId == -1L) {
+					unitLId = unitIDGen++;
+					unitsIdMap.put(unitSId, unitLId);
+				}
+				nupnsb.append(NUPNConstants.U).append(unitLId);
+				// places
+				vn.toElement(XMLNav.FIRST_CHILD);
+				if (vn.getText() != -1) {
+					places = vn.toString(vn.getText()).trim();
+				}
+				if (!places.isEmpty()) {
+					elemId = places.split(NUPNConstants.WS);
+					for (String s : elemId) {
+						node = scanner.getNodes().find(s);
+						plId = getNupnId(placesNode2NupnMap, node);
+						if (plId != -1L) {
+							placesIntId.add(plId);
+							putPlaceLabel(plId, node);
+						}
+					}
+					nupnsb.append(NUPNConstants.WS).append(NUPNConstants.HK).append(placesIntId.size());
+					if (placesIntId.size() > 1) {
+						// calculate arithmetic progression of the nupn Ids to check if they are
+						// incremental in the unit
+						placesIntId.sort(null);
+						long sumArrProg = PNML2NUPNUtils.arithmeticProgression(placesIntId);
+						PNML2NUPNUtils.debug("Assumed arithmetic progression of places Ids in unit {} ({}): {}", logger,
+								unitSId, unitLId, sumArrProg);
+						long sumCheck = PNML2NUPNUtils.sum(placesIntId);
+						PNML2NUPNUtils.debug("Manual sum of the places Ids in unit {} ({}): {} ", logger, unitSId,
+								unitLId, sumCheck);
+						if (sumArrProg != sumCheck) {
+							// double check
+							doubleCheck = PNML2NUPNUtils.isArithmeticProgressionOnNUPNIds(placesIntId, faultyIds);
+							logger.error(
+									"The arithmetic progression of places Ids in unit {} ({}) is not satisfied! Double check result is (false -> no arithmetic progression): {}",
+									unitSId, unitLId, doubleCheck);
+							logger.error(
+									"List of consecutive places IDs not being in arithmetic progression in unit {} ({}): {}",
+									unitSId, unitLId, faultyIds.toString());
+							logger.error("Consequently, the NUPN output for units will not be syntax-compliant.");
+							placesIntId.stream().forEach(i -> nupnsb.append(NUPNConstants.WS).append(i));
+							faultyIds.clear();
+						} else {
+							nupnsb.append(NUPNConstants.WS).append(placesIntId.getLong(0)).append(NUPNConstants.DOTS)
+									.append(placesIntId.getLong(placesIntId.size() - 1));
+						}
+					} else {
+						nupnsb.append(NUPNConstants.WS).append(placesIntId.getLong(0)).append(NUPNConstants.DOTS)
+								.append(placesIntId.getLong(0));
+					}
+				} else {
+					nupnsb.append(NUPNConstants.WS).append(NUPNConstants.HK).append(NUPNConstants.ZERO)
+							.append(NUPNConstants.WS).append(NUPNConstants.ONE).append(NUPNConstants.DOTS)
+							.append(NUPNConstants.ZERO);
+				}
+				// subunits
+				vn.toElement(XMLNav.NEXT_SIBLING);
+				if (vn.getText() != -1) {
+					subunits = vn.toString(vn.getText()).trim();
+				}
+				if (!subunits.isEmpty()) {
+					elemId = subunits.split(NUPNConstants.WS);
+					nupnsb.append(NUPNConstants.WS).append(NUPNConstants.HK).append(elemId.length);
+					for (String s : elemId) {
+						unitLId = unitsIdMap.getLong(s);
+						if (unitLId == -1L) {
+							unitLId = unitIDGen++;
+							unitsIdMap.put(s, unitLId);
+						}
+						nupnsb.append(NUPNConstants.WS).append(unitLId);
+					}
+				} else {
+					nupnsb.append(NUPNConstants.WS).append(NUPNConstants.HK).append(NUPNConstants.ZERO);
+				}
+				nupnsb.append(NUPNConstants.NL);
+				nupnQueue.put(nupnsb.toString());
+				nupnsb.delete(0, nupnsb.length());
+				placesIntId.clear();
+				subunits = "";
+				places = "";
+				vn.toElement(XMLNav.PARENT);
+				vn.pop();
+			}
+		} else {
+			if (hasNUPNToolspecific) {
+				logger.info("NUPN tool specific section was detected in the PNML.");
+				logger.info(
+						"However, no mixed generation strategy requested. Therefore the NUPN structure in that section will not be used.");
+				logger.info("Will continue with the default, naive generation strategy.");
+			}
+			// Write the number of Units. Check case there is just one place.
+			if (nbPl > 1) {
+				nupnsb.append(NUPNConstants.UNITS).append(NUPNConstants.WS).append(NUPNConstants.HK).append(nbPl + 1)
+						.append(NUPNConstants.WS).append(NUPNConstants.ZERO).append(NUPNConstants.DOTS).append(nbPl)
+						.append(NUPNConstants.NL);
+			} else {
+				nupnsb.append(NUPNConstants.UNITS).append(NUPNConstants.WS).append(NUPNConstants.HK).append(nbPl)
+						.append(NUPNConstants.WS).append(NUPNConstants.ZERO).append(NUPNConstants.DOTS).append(nbPl - 1)
+						.append(NUPNConstants.NL);
+			}
+
+			// Root unit declaration - id is N - 1. Check case there is just one
+			// place.
+			if (nbPl > 1) {
+				nupnsb.append(NUPNConstants.ROOT_UNIT).append(NUPNConstants.WS).append(nbPl).append(NUPNConstants.NL);
+			} else {
+				nupnsb.append(NUPNConstants.ROOT_UNIT).append(NUPNConstants.WS).append(nbPl - 1)
+						.append(NUPNConstants.NL);
+			}
+			nupnQueue.put(nupnsb.toString());
+			nupnsb.delete(0, nupnsb.length());
+
+			// One place per unit, keep track of their PNML id in ts file
+			// First the initial places
+			long count = 0L;
+			for (Long l : initPlaces) {
+				writeSinglePlaceUnit(count, l);
+				count++;
+			}
+
+			// Then the rest
+			final LongOpenHashSet initPlacesSet = new LongOpenHashSet(initPlaces);
+			for (int r = 0; r < placeNodesByRank.length; r++) {
+				if (isPlaceRank(r) && !initPlacesSet.contains(placeIDGen + r)) {
+					writeSinglePlaceUnit(count, placeIDGen + r);
+					count++;
+				}
+			}
+
+			// / Root Unit N and its subunits. Check case there is just one
+			// place.
+			if (nbPl > 1) {
+				nupnEnc.token(NUPNConstants.U).number(nbPl).space().count(0L).space().range(1L, 0L).space()
+						.count(nbPl);
+				for (count = 0L; count < nbPl; count++) {
+					nupnEnc.space().number(count);
+				}
+			} else if (nbPl == 1) {
+				// DO NOTHING, already handled above.
+				logger.warn("I encountered the case where there is just one place in the net.");
+			} else { // FIXME This case should not happen.
+				nupnsb.append(NUPNConstants.U).append(nbPl).append(NUPNConstants.WS).append(NUPNConstants.HK)
+						.append(NUPNConstants.ZERO).append(NUPNConstants.WS).append(NUPNConstants.ONE)
+						.append(NUPNConstants.DOTS).append(NUPNConstants.ZERO).append(NUPNConstants.WS)
+						.append(NUPNConstants.HK).append(NUPNConstants.ZERO);
+				logger.error("I encountered the case where there is no place at all in the net.");
+				logger.error(
+						"This violates the rules stating that root unit must have at least 2 sub-units, if it does not contain any place.");
+				throw new InvalidNetException("No place in the net! See error messages above.");
+			}
+			nupnEnc.newLine();
+		}
+		vn.toElement(XMLNav.ROOT);
+		span.end(nbPl);
+
+		// one-shot writing of place id-label mappings in 2 cases
+		// - no nupn in the pnml file
+		// - nupn in the pnml file but no mixed (or native) generation strategy enabled
+		if (!hasNUPNToolspecific || (hasNUPNToolspecific && !options.isPreserveNupnMix())) {
+			span = metrics.start("place.labels");
+			for (int r = 0; r < placeNodesByRank.length; r++) {
+				if (isPlaceRank(r)) {
+					putPlaceLabel(placeIDGen + r, placeNodesByRank[r]);
+				}
+			}
+			span.end(nbPlaceIds);
+		}
+	}
+
+	/**
+	 * Appends the mapping between a NUPN place id and the label of its PNML
+	 * node to the places section, copied from the document.
+	 */
+	private void putPlaceLabel(long nupnId, int node) throws InterruptedException, NavExceptionHuge {
+		if (logger.isTraceEnabled()) {
+			logger.trace("Outputing mapping between nupn place id {} and its label {}", nupnId,
+					scanner.getPlaceLabel(node));
+		}
+		psEnc.token(NUPNConstants.P_PREFX).number(nupnId).space();
+		labelLength = ExportUtils.updateLabelLength(scanner.putPlaceLabel(psQueue, node), labelLength);
+		psEnc.newLine();
+	}
+
+	/**
+	 * Appends the mapping between a NUPN transition id and the label of its PNML
+	 * node to the transitions section, copied from the document.
+	 */
+	private void putTransitionLabel(long nupnId, int node) throws InterruptedException, NavExceptionHuge {
+		tsEnc.token(NUPNConstants.T_PREFX).number(nupnId).space();
+		labelLength = ExportUtils.updateLabelLength(scanner.putTransitionLabel(tsQueue, node), labelLength);
+		tsEnc.newLine();
+	}
+
+	/**
+	 * Collects the unsafe arcs and the nodes they connect, then numbers all the
+	 * places, to have ordered ids according to order of appearance in the PNML
+	 * file.
+	 */
+	void indexUnsafeArcsAndPlaces(PNMLScanner scanner) throws NavExceptionHuge {
+		// Check inscriptions > 1
+		IntBigArrayBigList unsafeArcIds = scanner.getUnsafeArcIds();
+		LongBigArrayBigList unsafeArcIndexes = scanner.getUnsafeArcIndexes();
+		long val, arcIndex;
+		int src, trg;
+		nbUnsafeArcs = 0L;
+		for (long i = 0L; i < unsafeArcIds.size64(); i++) {
+			arcIndex = unsafeArcIndexes.getLong(i);
+			val = scanner.getInscriptions().getLong(arcIndex);
+			src = scanner.getArcSources().getInt(arcIndex);
+			trg = scanner.getArcTargets().getInt(arcIndex);
+			if (src != -1) {
+				unsafeNodes.set(src);
+			}
+			if (trg != -1) {
+				unsafeNodes.set(trg);
+			}
+			logger.warn("Unsafe arc: {}", scanner.getId(src) + NUPNConstants.WS + vn.toString(unsafeArcIds.getInt(i))
+					+ NUPNConstants.WS + scanner.getId(trg) + NUPNConstants.WS + NUPNConstants.HK + val);
+			nbUnsafeArcs++;
+		}
+		if (nbUnsafeArcs > 0) {
+			unsafeTrans = true;
+			logger.warn("There are {} unsafe arcs in this net.", nbUnsafeArcs);
+		}
+
+		// Number all the places
+		IntBigArrayBigList placeNodes = scanner.getPlaceNodes();
+		placesNode2NupnMap = newNode2NupnMap(scanner.getNbNodes());
+		placeNodesByRank = new int[(int) placeNodes.size64()];
+		nbPlaceIds = 0;
+		int node;
+		for (int r = 0; r < placeNodesByRank.length; r++) {
+			node = placeNodes.getInt(r);
+			placeNodesByRank[r] = node;
+			if (node != -1) {
+				if (placesNode2NupnMap[node] == -1L) {
+					nbPlaceIds++;
+				}
+				placesNode2NupnMap[node] = placeIDGen + r;
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the place numbered <code>placeIDGen + rank</code> holds its
+	 * NUPN id. A place declared several times keeps the id of its last
+	 * declaration.
+	 */
+	private boolean isPlaceRank(int rank) {
+		final int node = placeNodesByRank[rank];
+		return node != -1 && placesNode2NupnMap[node] == placeIDGen + rank;
+	}
+
+	/**
+	 * Writes the unit holding a single place: <code>U&lt;unit&gt; #1 p...p #0</code>.
+	 */
+	private void writeSinglePlaceUnit(long unit, long place) throws InterruptedException {
+		nupnEnc.token(NUPNConstants.U).number(unit).space().count(1L).space().range(place, place).space()
+				.count(0L).newLine();
+	}
+
+	private String generateUnsafePlacesReport() {
+		return spnc.getExplanation();
+	}
+
+	/**
+	 * Inits the log.
+	 * 
+	 * @param journal
+	 */
+	void initLog(Logger journal) {
+		this.logger = journal;
+	}
+
+	/**
+	 * Initializes internal data structures for transitions.
+	 */
+	private void initTransitionsMaps() {
+		transitionIDGen = options.getFirstTransitionNumber();
+		netGraph = new NetGraph();
+	}
+
+	/**
+	 * Initializes the data structure for unsafe transitions.
+	 */
+	private void initUnsafeTransMaps() {
+		if (tr2InUnsafeArcsMap == null) {
+			tr2InUnsafeArcsMap = new Int2ObjectLinkedOpenHashMap<LongBigArrayBigList>();
+		}
+		if (tr2OutUnsafeArcsMap == null) {
+			tr2OutUnsafeArcsMap = new Int2ObjectLinkedOpenHashMap<LongBigArrayBigList>();
+		}
+	}
+
+	/**
+	 * Initializes internal data structures for places.
+	 */
+	private void initPlacesMap() {
+		placeIDGen = options.getFirstPlaceNumber();
+	}
+
+	/**
+	 * Initializes internal data structures for arcs.
+	 */
+	private void initUnsafeArcsMap() {
+		if (unsafeNodes == null) {
+			unsafeNodes = new BitSet();
+		}
+	}
+
+	/**
+	 * Emergency stop.
+	 * 
+	 * @param target
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	private void emergencyStop(OutputTarget target) throws InterruptedException, IOException {
+		stop(target);
+		logger.error("Emergency stop. Cancelled the translation and released opened resources.");
+		if (target.isStream() && ocbNupn != null) {
+			logger.error("The NUPN contents written into {} are incomplete.", target);
+		}
+	}
+
+	/**
+	 * Normal stop.
+	 * 
+	 * @param target
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	private void normalStop(OutputTarget target) throws InterruptedException, IOException {
+		stop(target);
+	}
+
+	/**
+	 * Stops NUPN writers and releases resources
+	 * 
+	 * @param target
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	private void stop(OutputTarget target) throws InterruptedException, IOException {
+		PNML2NUPNUtils.cancelWriters(nupnQueue);
+		PNML2NUPNUtils.cancelWriter(uaQueue);
+		PNML2NUPNUtils.clearSpools(tsQueue, psQueue);
+		PNML2NUPNUtils.closeChannels(ocbNupn);
+		PNML2NUPNUtils.closeChannel(ocbUA);
+		target.discard();
+		PNML2NUPNUtils.deleteOutputFile(outUAFile);
+	}
+
+	/**
+	 * Clears all internal data structures for places and transitions.
+	 */
+	private void clearAllCollections() {
+		scanner = null;
+		placesNode2NupnMap = null;
+		placeNodesByRank = null;
+		trNode2NupnMap = null;
+		netGraph = null;
+		tr2InUnsafeArcsMap.clear();
+		tr2OutUnsafeArcsMap.clear();
+		trNbInArcs = trNbSafeInArcs = trInSum = null;
+		trNbOutArcs = trNbSafeOutArcs = trOutSum = null;
+		unsafeNodes.clear();
+	}
+}
@@ -1,23 +1,18 @@
 package fr.lip6.move.pnml2nupn.export.impl;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.concurrent.BlockingQueue;
 
 import org.slf4j.Logger;
 
-import com.ximpleware.extended.AutoPilotHuge;
 import com.ximpleware.extended.NavExceptionHuge;
-import com.ximpleware.extended.VTDNavHuge;
-import com.ximpleware.extended.XPathEvalExceptionHuge;
-import com.ximpleware.extended.XPathParseExceptionHuge;
 
 import fr.lip6.move.pnml2nupn.MainPNML2NUPN;
-import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.export.ConversionMetrics;
+import fr.lip6.move.pnml2nupn.utils.NavPlan;
 import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
 import fr.lip6.move.pnml2nupn.utils.SafePNChecker;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import fr.lip6.move.pnml2nupn.utils.XMLNav;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 /**
  * Utility methods for exporters.
@@ -31,19 +26,15 @@ public final class ExportUtils {
 	/**
 	 * Returns true if the considered net is a PT net, false otherwise.
 	 * 
-	 * @param ap
 	 * @param vn
 	 * @param logger
 	 * @return
-	 * @throws XPathParseExceptionHuge
-	 * @throws XPathEvalExceptionHuge
 	 * @throws NavExceptionHuge
 	 */
-	public static boolean isPTNet(AutoPilotHuge ap, VTDNavHuge vn, Logger logger)
-			throws XPathParseExceptionHuge, XPathEvalExceptionHuge, NavExceptionHuge {
+	public static boolean isPTNet(XMLNav vn, Logger logger) throws NavExceptionHuge {
 		boolean result = true;
-		ap.selectXPath(PNMLPaths.NETS_PATH);
-		while ((ap.evalXPath()) != -1) {
+		NavPlan.Cursor cursor = PNMLPaths.NETS_PATH.cursor(vn);
+		while (cursor.next() != -1) {
 			vn.push();
 			String netType = vn.toString(vn.getAttrVal(PNMLPaths.TYPE_ATTR));
 			logger.info("Discovered net type: {}", netType);
@@ -53,22 +44,26 @@ public final class ExportUtils {
 			}
 			vn.pop();
 		}
-		ap.resetXPath();
-		vn.toElement(VTDNavHuge.ROOT);
+		vn.toElement(XMLNav.ROOT);
 		return result;
 	}
 
 	/**
 	 * Checks that the currently analyzed net is 1-safe
 	 * 
+	 * @param spnc
+	 * @param scanner
+	 *            the scanner, after it scanned the net
+	 * @param nbUnsafePlacesToReport
+	 *            number of unsafe places to report, -1 meaning all of them
+	 * @param file
+	 *            the path of the PNML file
 	 * @return true if the net is 1-safe
-	 * @throws IOException
-	 * @throws PNMLImportExportException
+	 * @throws NavExceptionHuge
 	 */
-	public static boolean isNet1Safe(SafePNChecker spnc, File inputFile) throws IOException, PNMLImportExportException {
-		spnc.setPnmlDocPath(inputFile.getCanonicalPath());
-		boolean res = spnc.isNet1Safe();
-		return res;
+	public static boolean isNet1Safe(SafePNChecker spnc, PNMLScanner scanner, int nbUnsafePlacesToReport,
+			String file) throws NavExceptionHuge {
+		return spnc.isNet1Safe(scanner, nbUnsafePlacesToReport, file);
 	}
 
 	/**
@@ -79,7 +74,7 @@ public final class ExportUtils {
 	 * 
 	 * @throws InterruptedException
 	 */
-	public static void insertUnitSafePragma(BlockingQueue<String> nupnQueue, String toolName) throws InterruptedException {
+	public static void insertUnitSafePragma(ByteRingBuffer nupnQueue, String toolName) throws InterruptedException {
 		if (toolName != null) {
 			PNML2NUPNUtils.insertPragma(toolName + NUPNConstants.NL, nupnQueue);
 		} else {
@@ -90,10 +85,10 @@ public final class ExportUtils {
 	/**
 	 * Updates current label length only if new label length is strictly greater.
 	 * 
-	 * @param newLabel
+	 * @param newLength
+	 *            the length of a label that has been written
 	 */
-	public static int updateLabelLength(String newLabel, int currentLength) {
-		int newLength = newLabel.length();
+	public static int updateLabelLength(int newLength, int currentLength) {
 		if (newLength > currentLength)
 			return newLength;
 		return currentLength;
@@ -102,8 +97,8 @@ public final class ExportUtils {
 	/**
 	 * Sets the labels line (i.e., header) in the NUPN.
 	 * 
-	 * @param nupnQueue
-	 *            output queue
+	 * @param nupnEnc
+	 *            encoder to the output queue
 	 * @param labelLength
 	 *            the greatest label length
 	 * @param thereExistTransitions
@@ -111,98 +106,111 @@ public final class ExportUtils {
 	 * @throws InterruptedException
 	 * @throws IOException
 	 */
-	public static void setLabelsLine(BlockingQueue<String> nupnQueue, int labelLength, boolean thereExistTransitions)
+	public static void setLabelsLine(NUPNLineEncoder nupnEnc, int labelLength, boolean thereExistTransitions)
 			throws InterruptedException, IOException {
-		String endOfLabel = NUPNConstants.WS + labelLength + NUPNConstants.NL;
 		if (!thereExistTransitions) {
-			nupnQueue.put(NUPNConstants.LABELS_1_1_0 + endOfLabel);
+			nupnEnc.token(NUPNConstants.LABELS_1_1_0);
 		} else {
-			nupnQueue.put(NUPNConstants.LABELS_1_0_0 + endOfLabel);
+			nupnEnc.token(NUPNConstants.LABELS_1_0_0);
 		}
+		nupnEnc.space().number(labelLength).newLine();
 	}
 
 	/**
-	 * Append the content of a given file to a NUPN file
+	 * Records the backpressure of the queue to a NUPN writer that has ended,
+	 * and logs it when the conversion had to wait for the writer.
 	 * 
-	 * @param outPlacesFile
-	 *            the file whose content is to be appended
 	 * @param nupnQueue
-	 *            the writing queue to the NUPN file
+	 *            the queue
+	 * @param metrics
+	 *            the metrics of the conversion
 	 * @param logger
-	 * @throws IOException
+	 *            the journal of the conversion
 	 */
-	public static void appendFileContentToNUPN(File outPlacesFile, BlockingQueue<String> nupnQueue, Logger logger)
-			throws IOException {
-		Files.lines(outPlacesFile.toPath()).forEach(l -> {
-			try {
-				nupnQueue.put(l + NUPNConstants.NL);
-			} catch (InterruptedException e) {
-				logger.error("Error while appending content of external file {} to NUPN file: {}",
-						outPlacesFile.getAbsolutePath(), e.getMessage());
-				PNML2NUPNUtils.printStackTrace(e);
-			}
-		});
+	public static void reportQueueStats(ByteRingBuffer nupnQueue, ConversionMetrics metrics, Logger logger) {
+		metrics.setQueueStats(nupnQueue.getCapacity(), nupnQueue.getProducerBlockedNanos(),
+				nupnQueue.getNbProducerBlocks(), nupnQueue.getConsumerIdleNanos());
+		if (nupnQueue.getNbProducerBlocks() > 0L) {
+			logger.info("Waited {} ms for the NUPN writer, {} times, with a queue of {} KB.",
+					nupnQueue.getProducerBlockedNanos() / 1000000L, nupnQueue.getNbProducerBlocks(),
+					nupnQueue.getCapacity() >> 10);
+		}
 	}
 
 	/**
-	 * Looks up and returns the PNML node id. 
-	 * It maps the node id to its name before returning the id.
+	 * Returns the text token of the name of the current PNML node, without
+	 * moving from it.
+	 *
 	 * @param vn
-	 * @param useNodeName
-	 * @param id2NameMap
-	 * @return the PNML node id
+	 * @return the text token of the name, -1 if the node has no name
 	 * @throws NavExceptionHuge
 	 */
-	public static String getPNMLNodeId(VTDNavHuge vn, boolean useNodeName,
-			Object2ObjectOpenHashMap<String, String> id2NameMap) throws NavExceptionHuge {
-		String id = vn.toString(vn.getAttrVal(PNMLPaths.ID_ATTR));
-		if (useNodeName) {
-			vn.toElement(VTDNavHuge.FIRST_CHILD);
-			while (!vn.matchElement(PNMLPaths.NAME_ELEMENT)) {
-				vn.toElement(VTDNavHuge.NEXT_SIBLING);
-			}
-			if (vn.matchElement(PNMLPaths.NAME_ELEMENT)) {
-				vn.toElement(VTDNavHuge.FIRST_CHILD);
-				while (!vn.matchElement(PNMLPaths.TEXT_ELEMENT)) {
-					vn.toElement(VTDNavHuge.NEXT_SIBLING);
-				}
-				String name = vn.toString(vn.getText()).trim();
-				if (!id2NameMap.containsKey(id)) {
-					id2NameMap.put(id, name);
-				}
-				vn.toElement(VTDNavHuge.PARENT);
-				vn.toElement(VTDNavHuge.PARENT);
-			} else {
-				id2NameMap.put(id, NUPNConstants.NO_NAME_PREFIX);
-				vn.toElement(VTDNavHuge.PARENT);
+	public static int getPNMLNodeNameText(XMLNav vn) throws NavExceptionHuge {
+		int text = -1;
+		if (vn.toElement(XMLNav.FIRST_CHILD, PNMLPaths.NAME_ELEMENT)) {
+			if (vn.toElement(XMLNav.FIRST_CHILD, PNMLPaths.TEXT_ELEMENT)) {
+				text = vn.getText();
+				vn.toElement(XMLNav.PARENT);
 			}
+			vn.toElement(XMLNav.PARENT);
 		}
-		return id;
+		return text;
 	}
 
 	/**
-	 * Returns a PNML node Id or name according to the option
-	 * {@link MainPNML2NUPN#USE_PLACE_NAMES} or
-	 * {@link MainPNML2NUPN#USE_TRANSITION_NAMES}. If the option is set, returns the
-	 * name from the map (or {@link NUPNConstants#NO_NAME_PREFIX} if empty name).
+	 * Keeps the text token of the name of the current PNML node, unless a
+	 * previous declaration of the same node already gave one.
 	 * 
-	 * @param id
-	 * @param useNodeName
-	 * @param id2NameMap
-	 * @return
+	 * @param vn
+	 * @param names
+	 *            text tokens of names by node, -1 for none
+	 * @param node
+	 *            the node index in its id dictionary
+	 * @throws NavExceptionHuge
 	 */
-	public static String getPNMLNodeIdOrName(String id, boolean useNodeName,
-			Object2ObjectOpenHashMap<String, String> id2NameMap) {
-		String name;
-		if (useNodeName) {
-			name = id2NameMap.get(id);
-			if (name.isEmpty()) {
-				name = NUPNConstants.NO_NAME_PREFIX;
-			}
-		} else {
-			name = id;
+	public static void collectPNMLNodeName(XMLNav vn, IntArrayList names, int node) throws NavExceptionHuge {
+		if (node == -1) {
+			return;
+		}
+		while (names.size() <= node) {
+			names.add(-1);
 		}
-		return name;
+		if (names.getInt(node) == -1) {
+			names.set(node, getPNMLNodeNameText(vn));
+		}
+	}
+
+	/**
+	 * Returns the text token of the name of a PNML node, as collected by
+	 * {@link #collectPNMLNodeName(XMLNav, IntArrayList, int)}.
+	 * 
+	 * @param names
+	 *            text tokens of names by node, -1 for none
+	 * @param node
+	 *            the node index in its id dictionary
+	 * @return the text token of the name, -1 if the node has none
+	 */
+	public static int getPNMLNodeNameToken(IntArrayList names, int node) {
+		return node >= 0 && node < names.size() ? names.getInt(node) : -1;
+	}
+
+	/**
+	 * Returns the name of a PNML node, as collected by
+	 * {@link #collectPNMLNodeName(XMLNav, IntArrayList, int)}, or
+	 * {@link NUPNConstants#NO_NAME_PREFIX} if it has none or an empty one.
+	 * 
+	 * @param vn
+	 * @param names
+	 *            text tokens of names by node, -1 for none
+	 * @param node
+	 *            the node index in its id dictionary
+	 * @return the name, trimmed
+	 * @throws NavExceptionHuge
+	 */
+	public static String getPNMLNodeName(XMLNav vn, IntArrayList names, int node) throws NavExceptionHuge {
+		final int text = getPNMLNodeNameToken(names, node);
+		final String name = text == -1 ? "" : vn.toString(text).trim();
+		return name.isEmpty() ? NUPNConstants.NO_NAME_PREFIX : name;
 	}
 
 }
@@ -0,0 +1,473 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.ximpleware.extended.NavExceptionHuge;
+
+import fr.lip6.move.pnml2nupn.utils.XMLNav;
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+
+/**
+ * Dictionary of the ids of a PNML document, giving each distinct id a dense
+ * index, from 0 to {@link #size()} - 1, in order of first appearance.
+ * <p>
+ * Ids are looked up by their VTD token, i.e. by their bytes in the document:
+ * no String is created per lookup. An id is only turned into a String when it
+ * is written, with {@link #toString(int)}; {@link #put(SlabOutput, int)}
+ * rather copies its bytes to the output.
+ * </p>
+ * <p>
+ * Generated ids are mostly a short prefix followed by a number, like
+ * <code>p123</code> or <code>t_45</code>. Such ids are kept as a table of
+ * prefixes, and by prefix an array of indexes by number: looking them up is an
+ * array read. Other ids, and numbers too sparse for an array, go to an open
+ * addressing hash table.
+ * </p>
+ * Ids holding entity references, and all the ids of a document not encoded in
+ * UTF-8, are looked up on their decoded UTF-8 bytes, so that
+ * <code>p&amp;#49;</code> and <code>p1</code> remain the same id. This class
+ * is not thread-safe.
+ */
+public final class IdDictionary {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MAX_PREFIXES = 64;
+	private static final int MAX_PREFIX_LENGTH = 64;
+	/* Most digits of a number, so that it fits in an int */
+	private static final int MAX_DIGITS = 9;
+	private static final byte AMP = '&';
+	private static final byte ZERO = '0';
+	private static final byte NINE = '9';
+
+	private final XMLNav vn;
+	/* The document bytes, if held in a single array */
+	private final byte[] doc;
+	/* Ids are read from their bytes in the document, unless they hold entity references */
+	private final boolean raw;
+	private final LabelWriter labels;
+
+	/*
+	 * By index: token of the first occurrence of the id, or if < -1, offset - 2
+	 * in the pool of its decoded bytes
+	 */
+	private int[] keys;
+	/* Decoded bytes of ids, each ended by 0 */
+	private final ByteArrayList pool;
+	private int size;
+
+	/* Ids made of a prefix and a number: the prefixes, and by prefix the index + 1 of each number */
+	private final byte[][] prefixes;
+	private final int[][] numbers;
+	private int nbPrefixes;
+	private int lastPrefix;
+
+	/* Other ids: index + 1 of the id in each slot, 0 for a free slot, and its hash */
+	private int[] table;
+	private int[] tableHashes;
+	private int mask;
+	private int maxFill;
+	private int nbHashed;
+
+	/* The id being looked up: decoded bytes, or null for bytes in the document, and their bounds */
+	private byte[] key;
+	private long from;
+	private int length;
+	/* Set by parse: the id holds an entity reference; start of its trailing digits, -1 for none */
+	private boolean escaped;
+	private int digits;
+
+	public IdDictionary(XMLNav vn) {
+		this.vn = vn;
+		this.doc = vn.getDocument();
+		this.raw = vn.isUTF8();
+		this.labels = new LabelWriter(vn);
+		keys = new int[INITIAL_CAPACITY];
+		pool = new ByteArrayList();
+		prefixes = new byte[MAX_PREFIXES][];
+		numbers = new int[MAX_PREFIXES][];
+		final int n = HashCommon.arraySize(INITIAL_CAPACITY, Hash.DEFAULT_LOAD_FACTOR);
+		table = new int[n];
+		tableHashes = new int[n];
+		mask = n - 1;
+		maxFill = HashCommon.maxFill(n, Hash.DEFAULT_LOAD_FACTOR);
+	}
+
+	/**
+	 * Returns the index of the id held by a token, adding the id if it is new.
+	 * 
+	 * @param token
+	 *            an attribute value or text token, -1 for none
+	 * @return the index of the id, -1 if <code>token</code> is -1
+	 */
+	public int add(int token) throws NavExceptionHuge {
+		return lookup(token, true);
+	}
+
+	/**
+	 * Returns the index of an id read apart from its token, e.g. from a list of
+	 * ids in a text, adding the id if it is new.
+	 */
+	public int add(String id) {
+		setKey(id);
+		return lookupKey(-1, true);
+	}
+
+	/**
+	 * Returns the index of the id held by a token, or -1 if it is unknown.
+	 */
+	public int find(int token) throws NavExceptionHuge {
+		return lookup(token, false);
+	}
+
+	/**
+	 * Returns the index of an id read apart from its token, or -1 if it is
+	 * unknown.
+	 */
+	public int find(String id) {
+		setKey(id);
+		return lookupKey(-1, false);
+	}
+
+	/**
+	 * Returns the number of distinct ids.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of distinct ids kept in the hash table, rather than by
+	 * prefix and number.
+	 */
+	public int getNbHashed() {
+		return nbHashed;
+	}
+
+	/**
+	 * Returns an id as a String.
+	 */
+	public String toString(int index) throws NavExceptionHuge {
+		final int k = keys[index];
+		if (k >= 0) {
+			return vn.toString(k);
+		}
+		final byte[] bytes = pool.elements();
+		final int offset = -2 - k;
+		final int end = poolEnd(offset);
+		return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes an id, as its UTF-8 bytes.
+	 *
+	 * @return the length of the id, in chars
+	 */
+	public int put(SlabOutput out, int index) throws InterruptedException, NavExceptionHuge {
+		final int k = keys[index];
+		if (k >= 0) {
+			return labels.putText(out, k);
+		}
+		final byte[] bytes = pool.elements();
+		final int offset = -2 - k;
+		final int end = poolEnd(offset);
+		return LabelWriter.putUTF8(out, bytes, offset, end);
+	}
+
+	/**
+	 * Releases all the ids.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		Arrays.fill(prefixes, null);
+		Arrays.fill(numbers, null);
+		pool.clear();
+		nbPrefixes = 0;
+		lastPrefix = 0;
+		nbHashed = 0;
+		size = 0;
+	}
+
+	private int poolEnd(int offset) {
+		final byte[] bytes = pool.elements();
+		int end = offset;
+		while (bytes[end] != 0) {
+			end++;
+		}
+		return end;
+	}
+
+	private void setKey(String id) {
+		key = id.getBytes(StandardCharsets.UTF_8);
+		from = 0L;
+		length = key.length;
+		parse();
+	}
+
+	private int lookup(int token, boolean add) throws NavExceptionHuge {
+		if (token == -1) {
+			return -1;
+		}
+		if (raw) {
+			key = null;
+			from = vn.getTokenOffset(token);
+			length = vn.getTokenLength(token);
+			parse();
+			if (!escaped) {
+				return lookupKey(token, add);
+			}
+		}
+		setKey(vn.toString(token));
+		return lookupKey(token, add);
+	}
+
+	/**
+	 * Looks the current id up, first by prefix and number, then in the hash
+	 * table.
+	 */
+	private int lookupKey(int token, boolean add) {
+		final int number = getNumber();
+		int p = -1;
+		int i;
+		if (number >= 0) {
+			p = findPrefix();
+			if (p >= 0 && number < numbers[p].length && (i = numbers[p][number] - 1) >= 0) {
+				key = null;
+				return i;
+			}
+		}
+		int h = 0;
+		int pos = -1;
+		if (nbHashed > 0 || number < 0) {
+			h = hash();
+			pos = HashCommon.mix(h) & mask;
+			while ((i = table[pos] - 1) >= 0) {
+				if (tableHashes[pos] == h && equals(i)) {
+					key = null;
+					return i;
+				}
+				pos = (pos + 1) & mask;
+			}
+		}
+		if (!add) {
+			key = null;
+			return -1;
+		}
+		if (number >= 0 && p < 0) {
+			p = addPrefix();
+		}
+		if (number >= 0 && p >= 0 && fits(p, number)) {
+			i = newIndex(token, true);
+			numbers[p][number] = i + 1;
+		} else {
+			i = newIndex(token, false);
+			if (pos < 0) {
+				h = hash();
+				pos = HashCommon.mix(h) & mask;
+				while (table[pos] != 0) {
+					pos = (pos + 1) & mask;
+				}
+			}
+			table[pos] = i + 1;
+			tableHashes[pos] = h;
+			if (++nbHashed >= maxFill) {
+				rehash();
+			}
+		}
+		key = null;
+		return i;
+	}
+
+	/**
+	 * Gives an index to the current id. Its decoded bytes are kept if it has no
+	 * token, or if they are needed to compare it with other hashed ids.
+	 */
+	private int newIndex(int token, boolean numbered) {
+		final int i = size++;
+		if (i == keys.length) {
+			keys = Arrays.copyOf(keys, 2 * i);
+		}
+		if (key != null && (token == -1 || !numbered)) {
+			keys[i] = -2 - pool.size();
+			pool.addElements(pool.size(), key, 0, length);
+			pool.add((byte) 0);
+		} else {
+			keys[i] = token;
+		}
+		return i;
+	}
+
+	/**
+	 * Tells whether the array of a prefix can hold a number, growing it if
+	 * needed. Numbers far above the number of ids are left to the hash table.
+	 */
+	private boolean fits(int p, int number) {
+		final int[] indexes = numbers[p];
+		if (number < indexes.length) {
+			return true;
+		}
+		if (number >= 2 * (size + INITIAL_CAPACITY)) {
+			return false;
+		}
+		numbers[p] = Arrays.copyOf(indexes, Math.max(2 * indexes.length, number + 1));
+		return true;
+	}
+
+	/**
+	 * Reads the current id once, telling whether it holds an entity reference,
+	 * and where its trailing digits start.
+	 */
+	private void parse() {
+		escaped = false;
+		digits = -1;
+		byte b;
+		for (int j = 0; j < length; j++) {
+			b = at(key, from + j);
+			if (b >= ZERO && b <= NINE) {
+				if (digits < 0) {
+					digits = j;
+				}
+			} else {
+				escaped |= b == AMP;
+				digits = -1;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number ending the current id, -1 if it does not end with a
+	 * number, or with a number written with leading zeros or too many digits.
+	 */
+	private int getNumber() {
+		if (digits < 0 || length - digits > MAX_DIGITS
+				|| (length - digits > 1 && at(key, from + digits) == ZERO)) {
+			return -1;
+		}
+		int n = 0;
+		for (int j = digits; j < length; j++) {
+			n = 10 * n + at(key, from + j) - ZERO;
+		}
+		return n;
+	}
+
+	private int findPrefix() {
+		if (lastPrefix < nbPrefixes && isPrefix(lastPrefix)) {
+			return lastPrefix;
+		}
+		for (int p = 0; p < nbPrefixes; p++) {
+			if (isPrefix(p)) {
+				lastPrefix = p;
+				return p;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isPrefix(int p) {
+		final byte[] prefix = prefixes[p];
+		if (prefix.length != digits) {
+			return false;
+		}
+		for (int j = 0; j < digits; j++) {
+			if (prefix[j] != at(key, from + j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int addPrefix() {
+		if (nbPrefixes == MAX_PREFIXES || digits > MAX_PREFIX_LENGTH) {
+			return -1;
+		}
+		final byte[] prefix = new byte[digits];
+		for (int j = 0; j < digits; j++) {
+			prefix[j] = at(key, from + j);
+		}
+		prefixes[nbPrefixes] = prefix;
+		numbers[nbPrefixes] = new int[INITIAL_CAPACITY];
+		return lastPrefix = nbPrefixes++;
+	}
+
+	/**
+	 * Compares the current id with a hashed one.
+	 */
+	private boolean equals(int i) {
+		final int k = keys[i];
+		if (k >= 0) {
+			final long o = vn.getTokenOffset(k);
+			if (vn.getTokenLength(k) != length) {
+				return false;
+			}
+			if (key == null && doc != null) {
+				return Arrays.equals(doc, (int) o, (int) o + length, doc, (int) from, (int) from + length);
+			}
+			for (int j = 0; j < length; j++) {
+				if (at(null, o + j) != at(key, from + j)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		final byte[] bytes = pool.elements();
+		final int o = -2 - k;
+		for (int j = 0; j < length; j++) {
+			if (bytes[o + j] != at(key, from + j)) {
+				return false;
+			}
+		}
+		return bytes[o + length] == 0;
+	}
+
+	private void rehash() {
+		final int n = HashCommon.arraySize(nbHashed + 1, Hash.DEFAULT_LOAD_FACTOR);
+		final int[] t = new int[n];
+		final int[] th = new int[n];
+		final int m = n - 1;
+		int pos;
+		for (int s = 0; s < table.length; s++) {
+			if (table[s] != 0) {
+				pos = HashCommon.mix(tableHashes[s]) & m;
+				while (t[pos] != 0) {
+					pos = (pos + 1) & m;
+				}
+				t[pos] = table[s];
+				th[pos] = tableHashes[s];
+			}
+		}
+		table = t;
+		tableHashes = th;
+		mask = m;
+		maxFill = HashCommon.maxFill(n, Hash.DEFAULT_LOAD_FACTOR);
+	}
+
+	private int hash() {
+		int h = 0;
+		for (int j = 0; j < length; j++) {
+			h = 31 * h + at(key, from + j);
+		}
+		return h;
+	}
+
+	/**
+	 * Returns a byte of the decoded bytes <code>src</code>, or of the document
+	 * if <code>src</code> is null.
+	 */
+	private byte at(byte[] src, long offset) {
+		return src != null ? src[(int) offset] : doc != null ? doc[(int) offset] : vn.byteAt(offset);
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import com.ximpleware.extended.NavExceptionHuge;
+
+import fr.lip6.move.pnml2nupn.utils.XMLNav;
+
+/**
+ * Writes labels, i.e. ids and names of PNML nodes, into the slabs of a
+ * {@link SlabOutput}, straight from the bytes of their VTD token in the
+ * document. Only the labels holding entity references, or read from a document
+ * not encoded in UTF-8, are turned into a String first, to be decoded.
+ * <p>
+ * Label lengths are returned in chars, like {@link String#length()}.
+ * </p>
+ */
+final class LabelWriter {
+
+	private static final int CHUNK_SIZE = 256;
+	private static final byte AMP = '&';
+	private static final int SPACE = 0x20;
+
+	private final XMLNav vn;
+	/* The document bytes, if held in a single array */
+	private final byte[] doc;
+	private final boolean raw;
+	/* Bytes of the document being copied, when it is not held in a single array */
+	private byte[] chunk;
+
+	LabelWriter(XMLNav vn) {
+		this.vn = vn;
+		this.doc = vn.getDocument();
+		this.raw = vn.isUTF8();
+	}
+
+	/**
+	 * Writes the text of a token as it is, e.g. a node id.
+	 *
+	 * @return the length of the text
+	 */
+	int putText(SlabOutput out, int token) throws InterruptedException, NavExceptionHuge {
+		return put(out, token, false);
+	}
+
+	/**
+	 * Writes the text of a name, trimmed, or {@link NUPNConstants#NO_NAME_PREFIX}
+	 * if there is no name or if it is empty.
+	 *
+	 * @param token
+	 *            the text token of the name, -1 for none
+	 * @return the length of the name
+	 */
+	int putName(SlabOutput out, int token) throws InterruptedException, NavExceptionHuge {
+		final int length = token == -1 ? 0 : put(out, token, true);
+		if (length > 0) {
+			return length;
+		}
+		out.put(NUPNConstants.NO_NAME_PREFIX);
+		return NUPNConstants.NO_NAME_PREFIX.length();
+	}
+
+	private int put(SlabOutput out, int token, boolean trim) throws InterruptedException, NavExceptionHuge {
+		if (raw) {
+			long start = vn.getTokenOffset(token);
+			long end = start + vn.getTokenLength(token);
+			if (trim) {
+				while (start < end && (at(start) & 0xFF) <= SPACE) {
+					start++;
+				}
+				while (end > start && (at(end - 1) & 0xFF) <= SPACE) {
+					end--;
+				}
+			}
+			if (!isEscaped(start, end)) {
+				return copy(out, start, end);
+			}
+		}
+		String text = vn.toString(token);
+		if (trim) {
+			text = text.trim();
+		}
+		out.put(text);
+		return text.length();
+	}
+
+	private boolean isEscaped(long start, long end) {
+		for (long j = start; j < end; j++) {
+			if (at(j) == AMP) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int copy(SlabOutput out, long start, long end) throws InterruptedException {
+		if (doc != null) {
+			return putUTF8(out, doc, (int) start, (int) end);
+		}
+		if (chunk == null) {
+			chunk = new byte[CHUNK_SIZE];
+		}
+		int length = 0;
+		int n;
+		for (long j = start; j < end; j += n) {
+			n = (int) Math.min(CHUNK_SIZE, end - j);
+			for (int k = 0; k < n; k++) {
+				chunk[k] = vn.byteAt(j + k);
+			}
+			length += putUTF8(out, chunk, 0, n);
+		}
+		return length;
+	}
+
+	private byte at(long offset) {
+		return doc != null ? doc[(int) offset] : vn.byteAt(offset);
+	}
+
+	/**
+	 * Writes UTF-8 bytes as they are.
+	 *
+	 * @return their length in chars
+	 */
+	static int putUTF8(SlabOutput out, byte[] src, int from, int to) throws InterruptedException {
+		out.put(src, from, to - from);
+		int length = 0;
+		int b;
+		for (int j = from; j < to; j++) {
+			b = src[j] & 0xFF;
+			// Continuation bytes add no char, and 4-byte sequences need a surrogate pair
+			if ((b & 0xC0) != 0x80) {
+				length += b >= 0xF0 ? 2 : 1;
+			}
+		}
+		return length;
+	}
+}
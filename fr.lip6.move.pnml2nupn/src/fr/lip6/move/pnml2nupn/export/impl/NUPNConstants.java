@@ -5,8 +5,6 @@ public final class NUPNConstants {
 	public static final String NUPN_SUPPORTED_VERSION = "1.1";
 	public static final String TEXT = "text";
 	public static final String INSCRIPTION = "inscription";
-	public static final String TRANS_EXT = ".trans";
-	public static final String STATES_EXT = ".places";
 	public static final String UNSAFE_ARC = ".unsafe.arcs";
 	public static final String STOP = "STOP";
 	public static final String CANCEL = "CANCEL";
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes NUPN lines (numbers, counts, ranges and the fixed ASCII tokens of
+ * {@link NUPNConstants}) directly into the slabs of a {@link SlabOutput},
+ * without building any intermediate String. Calls can be chained, e.g. for a
+ * transition line:
+ *
+ * <pre>
+ * enc.token(NUPNConstants.T).number(id).space().count(n)...newLine();
+ * </pre>
+ *
+ * Tokens must be ASCII. Labels, which may not be, go through
+ * {@link SlabOutput#put(CharSequence)}.
+ */
+public final class NUPNLineEncoder {
+
+	/* Length of Long.MIN_VALUE in decimal, sign included */
+	private static final int MAX_LONG_CHARS = 20;
+	private static final byte WS = ' ';
+	private static final byte HK = '#';
+	private static final byte DOT = '.';
+	private static final byte NL = '\n';
+
+	private final SlabOutput queue;
+
+	public NUPNLineEncoder(SlabOutput queue) {
+		this.queue = queue;
+	}
+
+	/**
+	 * Appends a fixed ASCII token.
+	 */
+	public NUPNLineEncoder token(String ascii) throws InterruptedException {
+		final int len = ascii.length();
+		final ByteBuffer bb = queue.reserve(len);
+		for (int i = 0; i < len; i++) {
+			bb.put((byte) ascii.charAt(i));
+		}
+		return this;
+	}
+
+	/**
+	 * Appends the decimal representation of a number.
+	 */
+	public NUPNLineEncoder number(long value) throws InterruptedException {
+		putLong(queue.reserve(MAX_LONG_CHARS), value);
+		return this;
+	}
+
+	public NUPNLineEncoder space() throws InterruptedException {
+		queue.reserve(1).put(WS);
+		return this;
+	}
+
+	/**
+	 * Appends a count: <code>#n</code>.
+	 */
+	public NUPNLineEncoder count(long n) throws InterruptedException {
+		final ByteBuffer bb = queue.reserve(MAX_LONG_CHARS + 1);
+		bb.put(HK);
+		putLong(bb, n);
+		return this;
+	}
+
+	/**
+	 * Appends a range: <code>first...last</code>.
+	 */
+	public NUPNLineEncoder range(long first, long last) throws InterruptedException {
+		final ByteBuffer bb = queue.reserve(2 * MAX_LONG_CHARS + 3);
+		putLong(bb, first);
+		bb.put(DOT).put(DOT).put(DOT);
+		putLong(bb, last);
+		return this;
+	}
+
+	public NUPNLineEncoder newLine() throws InterruptedException {
+		queue.reserve(1).put(NL);
+		return this;
+	}
+
+	/**
+	 * Writes the decimal representation of a number at the current position of
+	 * a buffer, which must have at least 20 bytes remaining.
+	 *
+	 * @param bb
+	 *            the destination buffer
+	 * @param value
+	 *            the number to write
+	 */
+	public static void putLong(ByteBuffer bb, long value) {
+		// Work on the negative value so that Long.MIN_VALUE needs no special case
+		long v = value < 0L ? value : -value;
+		int nbDigits = 1;
+		for (long p = v / 10L; p != 0L; p /= 10L) {
+			nbDigits++;
+		}
+		int pos = bb.position();
+		if (value < 0L) {
+			bb.put(pos++, (byte) '-');
+		}
+		final int end = pos + nbDigits;
+		for (int i = end - 1; i >= pos; i--) {
+			bb.put(i, (byte) ('0' - (v % 10L)));
+			v /= 10L;
+		}
+		bb.position(end);
+	}
+}
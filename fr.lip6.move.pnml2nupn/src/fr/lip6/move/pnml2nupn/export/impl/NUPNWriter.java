@@ -19,28 +19,30 @@
 package fr.lip6.move.pnml2nupn.export.impl;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.nio.channels.GatheringByteChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import fr.lip6.move.pnml2nupn.jfr.WriterBatchEvent;
 import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
 
 /**
- * Thread task to write contents read from a queue into a channel.
+ * Thread task to write contents read from a ring of byte slabs into a channel.
+ * All the slabs available at once are written with a single gathering write,
+ * recorded as a {@link WriterBatchEvent} when Flight Recorder is on. A failed
+ * write is recorded in the ring (see {@link ByteRingBuffer#fail(IOException)}),
+ * and checked by {@link PNML2NUPNUtils#joinWriter(Thread, ByteRingBuffer)}.
  */
 public final class NUPNWriter implements Runnable {
 
-	private static final String STOP = "STOP";
-	private static final String CANCEL = "CANCEL";
 	private OutChannelBean ocb;
-	private BlockingQueue<String> queue;
+	private ByteRingBuffer queue;
 	private Logger log;
 
-	public NUPNWriter(OutChannelBean ocb, BlockingQueue<String> queue) {
+	public NUPNWriter(OutChannelBean ocb, ByteRingBuffer queue) {
 		this.ocb = ocb;
 		this.queue = queue;
 	}
@@ -49,21 +51,60 @@ public final class NUPNWriter implements Runnable {
 	public void run() {
 		log = LoggerFactory.getLogger(NUPNWriter.class
 				.getCanonicalName() + "#" + Thread.currentThread().getId());
-		ByteBuffer bytebuf = ByteBuffer
-				.allocateDirect(PNML2NUPNUtils.BUFFERSIZE);
-		List<byte[]> contents = new ArrayList<byte[]>();
-		String msg;
+		final GatheringByteChannel fc = ocb.getChannel();
+		final ByteBuffer[] batch = new ByteBuffer[queue.getNbSlabs()];
+		int n;
 		try {
-			msg = queue.take();
-			while (!STOP.equalsIgnoreCase(msg) && !CANCEL.equalsIgnoreCase(msg)) {
-				PNML2NUPNUtils.writeToChannel(ocb, msg, bytebuf, contents);
-				contents.clear();
-				msg = queue.take();
+			n = queue.take(batch);
+			while (n != -1) {
+				if (queue.getFailure() == null) {
+					final WriterBatchEvent event = new WriterBatchEvent();
+					event.begin();
+					try {
+						ocb.addWritten(writeBatch(fc, batch, n));
+						event.end();
+						if (event.shouldCommit()) {
+							commit(event, batch, n);
+						}
+					} catch (IOException e) {
+						// keep draining so that the producer is never blocked
+						queue.fail(e);
+						log.error(e.getMessage());
+						PNML2NUPNUtils.printStackTrace(e);
+					}
+				}
+				queue.release(n);
+				n = queue.take(batch);
 			}
-		} catch (InterruptedException | IOException e) {
+		} catch (InterruptedException e) {
+			queue.fail(new InterruptedIOException("Writer interrupted."));
 			log.error(e.getMessage());
 			PNML2NUPNUtils.printStackTrace(e);
-		} 
+		}
+	}
+
+	private void commit(WriterBatchEvent event, ByteBuffer[] batch, int n) {
+		long bytes = 0L;
+		for (int i = 0; i < n; i++) {
+			bytes += batch[i].limit();
+		}
+		event.file = ocb.getFile() == null ? null : ocb.getFile().getPath();
+		event.bytes = bytes;
+		event.queueDepth = n;
+		event.queueCapacity = batch.length;
+		event.commit();
+	}
+
+	private static long writeBatch(GatheringByteChannel fc, ByteBuffer[] batch, int n) throws IOException {
+		long written = 0L;
+		int first = 0;
+		while (first < n) {
+			written += fc.write(batch, first, n - first);
+			while (first < n && !batch[first].hasRemaining()) {
+				first++;
+			}
+		}
+		return written;
 	}
 
 }
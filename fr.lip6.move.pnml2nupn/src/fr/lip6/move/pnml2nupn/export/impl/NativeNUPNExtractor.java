@@ -2,71 +2,75 @@ package fr.lip6.move.pnml2nupn.export.impl;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 
-import com.ximpleware.extended.AutoPilotHuge;
 import com.ximpleware.extended.NavExceptionHuge;
-import com.ximpleware.extended.VTDNavHuge;
-import com.ximpleware.extended.XPathEvalExceptionHuge;
-import com.ximpleware.extended.XPathParseExceptionHuge;
 
 import fr.lip6.move.pnml2nupn.MainPNML2NUPN;
 import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.export.ConversionMetrics;
+import fr.lip6.move.pnml2nupn.export.ConversionOptions;
+import fr.lip6.move.pnml2nupn.utils.NavPlan;
 import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import fr.lip6.move.pnml2nupn.utils.XMLNav;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongBigArrayBigList;
-import it.unimi.dsi.fastutil.longs.LongCollection;
 import it.unimi.dsi.fastutil.longs.LongList;
-import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
-import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectBigArrayBigList;
 
 public final class NativeNUPNExtractor {
 
-	private File inFile, outFile;
-	private File outTSFile, outPSFile;
+	private File inFile;
+	private OutputTarget target;
 	private Logger logger;
-	private OutChannelBean ocbNupn, ocbTs, ocbPs;
-	private BlockingQueue<String> nupnQueue, tsQueue, psQueue;
-	private Thread nupnWriter, tsWriter, psWriter;
-	private VTDNavHuge vn;
-	private AutoPilotHuge ap;
+	private final ConversionContext context;
+	private final ConversionOptions options;
+	private final ConversionMetrics metrics;
+	private OutChannelBean ocbNupn;
+	private ByteRingBuffer nupnQueue;
+	/* Place and transition labels, appended to the NUPN file at the end */
+	private ByteSpool tsQueue, psQueue;
+	private NUPNLineEncoder nupnEnc, tsEnc, psEnc;
+	private Thread nupnWriter;
+	private XMLNav vn;
 	private long nbUnits, nbTrans, nbPlaces, nbArcs;
 	private String rootUnitId;
 	private boolean isSafe;
 	private ObjectBigArrayBigList<String> markedPlaces;
-	private Object2LongOpenHashMap<String> plId2nupnMap;
-	private Object2ObjectOpenHashMap<String, String> plId2NameMap;
-	private Object2LongOpenHashMap<String> trId2nupnMap;
-	private Object2ObjectOpenHashMap<String, String> trId2NameMap;
-	private Long2ObjectOpenHashMap<LongBigArrayBigList> tr2OutPlacesMap;
-	private Long2ObjectOpenHashMap<LongBigArrayBigList> tr2InPlacesMap;
+	/* Places ids, numbered in order of appearance in units: their NUPN id is the first place number + their index */
+	private IdDictionary plIds;
+	private IntArrayList plNames;
+	private IdDictionary trIds;
+	private IntArrayList trNames;
+	/* Copies names from the document into the label sections */
+	private LabelWriter labels;
+	/* NUPN id of transitions, by index in their id dictionary */
+	private LongArrayList trNupnIds;
+	/* Input and output places of transitions */
+	private NetGraph netGraph;
 	private Object2LongOpenHashMap<String> unitsIdMap;
 	private LongBigArrayBigList markedPlacesNupnId;
 	private ObjectBigArrayBigList<String> nupnLines;
-	private long nupnPlIdGen, nupnUnitIdGen;
+	private long nupnUnitIdGen;
 	private final StringBuilder nupnsb;
 	/* For greatest label length. Since v-3.0.0 */
 	private int labelLength;
 
-	public NativeNUPNExtractor(File input, File output, Logger journal) {
+	public NativeNUPNExtractor(File input, OutputTarget output, Logger journal, ConversionContext context) {
 		this.inFile = input;
-		this.outFile = output;
+		this.target = output;
 		this.logger = journal;
+		this.context = context;
+		this.options = context.getOptions();
+		this.metrics = context.getMetrics();
 		nupnsb = new StringBuilder();
 	}
 
-	public void extractNUPN(VTDNavHuge vn, AutoPilotHuge ap)
-			throws PNMLImportExportException, InterruptedException, IOException {
+	public void extractNUPN(XMLNav vn) throws PNMLImportExportException, InterruptedException, IOException {
 		this.vn = vn;
-		this.ap = ap;
 		extractNUPN();
 	}
 
@@ -76,7 +80,7 @@ public final class NativeNUPNExtractor {
 				MainPNML2NUPN.USE_TRANSITION_NAMES);
 
 		try {
-			checkAndSetNavAutopilot();
+			checkAndSetNav();
 			initDataStructures();
 			openIOChannels();
 			startWriters();
@@ -84,50 +88,59 @@ public final class NativeNUPNExtractor {
 			// Insert creator pragma
 			PNML2NUPNUtils.insertCreatorPragma(nupnQueue);
 
+			ConversionMetrics.Span span = metrics.start("units.extract");
 			extractSizes();
+			metrics.setNetSize(nbPlaces, nbTrans, nbArcs);
 			extractStructure();
 			extractUnits();
+			span.end(nbUnits);
+			span = metrics.start("places.collect");
 			collectInitialPlaces();
 			collectNonInitialPlacesNames();
+			span.end(plIds.size());
 
+			span = metrics.start("units.write");
 			writeNUPNPlaces();
 			writeInitialPlaces();
 			writeUnits();
+			span.end(nbUnits);
 			
+			span = metrics.start("place.labels");
 			writePlaceLabels();
+			span.end(plIds.size());
 
+			span = metrics.start("transitions.collect");
 			collectTransitions();
+			span.end(trIds.size());
+			span = metrics.start("transitions.write");
 			writeTransitions();
+			span.end(netGraph.getNbTransitions());
 
 			// write labels line
-			ExportUtils.setLabelsLine(nupnQueue, labelLength, trId2nupnMap.isEmpty());
+			ExportUtils.setLabelsLine(nupnEnc, labelLength, trIds.size() == 0);
 
-			// Stop place and transition writers, and release related resources
-			PNML2NUPNUtils.stopWriters(tsQueue, psQueue);
-			tsWriter.join();
-			psWriter.join();
-			PNML2NUPNUtils.closeChannels(ocbTs, ocbPs);
+			// Stop NUPN writer
+			span = metrics.start("writer.drain");
+			PNML2NUPNUtils.stopWriters(nupnQueue);
+			PNML2NUPNUtils.joinWriter(nupnWriter, nupnQueue);
+			span.end(ocbNupn.getWritten());
+			ExportUtils.reportQueueStats(nupnQueue, metrics, logger);
 
-			// append contents of place and transition files to NUPN file
+			// append place and transition labels to NUPN file, and release related resources
+			span = metrics.start("labels.append");
+			final long nbLabelBytes = psQueue.size() + tsQueue.size();
 			logger.info("Appending place Ids-labels mappings to NUPN file");
-			ExportUtils.appendFileContentToNUPN(outPSFile, nupnQueue, logger);
+			psQueue.writeTo(ocbNupn.getChannel());
 			logger.info("Appending transition Ids-labels mappings to NUPN file");
-			ExportUtils.appendFileContentToNUPN(outTSFile, nupnQueue, logger);
-
-			// Stop NUPN writer, and release related resources
-			PNML2NUPNUtils.stopWriters(nupnQueue);
-			nupnWriter.join();
+			tsQueue.writeTo(ocbNupn.getChannel());
+			span.end(nbLabelBytes);
 			PNML2NUPNUtils.closeChannels(ocbNupn);
 
-			// Delete place and transition files
-			logger.info("Deleting place and transition Ids-labels mappings files");
-			PNML2NUPNUtils.deleteOutputFiles(outPSFile, outTSFile);
-
 			clearDataStructures();
-			logger.info("See NUPN file: {}", outFile.getCanonicalPath());
+			logger.info("See NUPN file: {}", target);
 
 		} catch (InterruptedException | PNMLImportExportException | IOException e) {
-			emergencyStop(outFile);
+			emergencyStop();
 			throw new PNMLImportExportException(e);
 		}
 	}
@@ -135,6 +148,7 @@ public final class NativeNUPNExtractor {
 	private void collectInitialPlaces() throws PNMLImportExportException {
 		logger.info("Collecting initially marked places.");
 		String placeId;
+		int placeToken, pl;
 		long plNupnId;
 		long mkg, totalMkg = 0L;
 		ObjectBigArrayBigList<String> unsafePlaces = new ObjectBigArrayBigList<>();
@@ -142,20 +156,24 @@ public final class NativeNUPNExtractor {
 		LongArrayList minMarking = new LongArrayList(2);
 		LongArrayList maxMarking = new LongArrayList(2);
 		try {
-			vn.toElement(VTDNavHuge.ROOT);
-			ap.selectXPath(PNMLPaths.MARKED_PLACES);
-			while ((ap.evalXPath()) != -1) {
+			NavPlan.Cursor cursor = PNMLPaths.MARKED_PLACES.cursor(vn);
+			while (cursor.next() != -1) {
 				vn.push();
-				vn.toElement(VTDNavHuge.FIRST_CHILD);
+				vn.toElement(XMLNav.FIRST_CHILD);
 				while (!vn.matchElement(NUPNConstants.TEXT)) {
-					vn.toElement(VTDNavHuge.NEXT_SIBLING);
+					vn.toElement(XMLNav.NEXT_SIBLING);
 				}
-				totalMkg += mkg = Long.parseLong(vn.toString(vn.getText()).trim());
-
-				vn.toElement(VTDNavHuge.PARENT);
-				vn.toElement(VTDNavHuge.PARENT);
-				placeId = ExportUtils.getPNMLNodeId(vn, MainPNML2NUPN.isUsePlaceNames(), plId2NameMap);
-				plNupnId = plId2nupnMap.getLong(placeId);
+				totalMkg += mkg = vn.parseLong(vn.getText());
+
+				vn.toElement(XMLNav.PARENT);
+				vn.toElement(XMLNav.PARENT);
+				placeToken = vn.getAttrVal(PNMLPaths.ID_ATTR);
+				placeId = vn.toString(placeToken);
+				pl = plIds.find(placeToken);
+				if (options.isUsePlaceNames()) {
+					ExportUtils.collectPNMLNodeName(vn, plNames, pl);
+				}
+				plNupnId = getPlaceNupnId(pl);
 				if (plNupnId == -1L) {
 					logger.error("Marked place {} was not reported in the NUPN toolspecific section!", placeId);
 				}
@@ -191,103 +209,118 @@ public final class NativeNUPNExtractor {
 						(nbMarkedPlaces - nbUnsafePlaces) + (nbUnsafePlaces * minMarking.getLong(0)) <= totalMkg
 								&& totalMkg <= (nbMarkedPlaces - nbUnsafePlaces)
 										+ (nbUnsafePlaces * maxMarking.getLong(0)));
-				MainPNML2NUPN.appendMesgLineToSignature(
+				context.appendMesgLineToSignature(
 						"decreased to one the marking of " + nbUnsafePlaces + " initial places");
 			}
-		} catch (NavExceptionHuge | XPathParseExceptionHuge | XPathEvalExceptionHuge | InterruptedException e) {
+		} catch (NavExceptionHuge | InterruptedException e) {
 			throw new PNMLImportExportException(e);
 		}
-		ap.resetXPath();
 	}
 
 	private void collectNonInitialPlacesNames() throws PNMLImportExportException {
-		@SuppressWarnings("unused")
-		String pnmlId;
-		if (MainPNML2NUPN.isUsePlaceNames()) {
+		if (options.isUsePlaceNames()) {
 			try {
-				vn.toElement(VTDNavHuge.ROOT);
-				ap.selectXPath(PNMLPaths.PLACES_PATH_EXCEPT_MKG);
-				while ((ap.evalXPath()) != -1) {
+				NavPlan.Cursor cursor = PNMLPaths.PLACES_PATH_EXCEPT_MKG.cursor(vn);
+				while (cursor.next() != -1) {
 					vn.push();
-					pnmlId = ExportUtils.getPNMLNodeId(vn, true, plId2NameMap);
+					ExportUtils.collectPNMLNodeName(vn, plNames, plIds.find(vn.getAttrVal(PNMLPaths.ID_ATTR)));
 					vn.pop();
 				}
-				ap.resetXPath();
-			} catch (NavExceptionHuge | XPathParseExceptionHuge | XPathEvalExceptionHuge e) {
+			} catch (NavExceptionHuge e) {
 				throw new PNMLImportExportException(e);
 			}
 		}
 	}
 
 	private void collectTransitions() throws PNMLImportExportException {
-		String arc, src, trg, id;
-		long count = MainPNML2NUPN.getFirstTransitionNumber();
+		int arc, src, trg, id, tr;
+		final long firstTr = options.getFirstTransitionNumber();
+		long count = firstTr;
 		long tId, pId;
-		LongBigArrayBigList pls = null;
 		String trLabel;
+		int length;
 		try {
 			logger.info("Collecting transitions.");
-			vn.toElement(VTDNavHuge.ROOT);
-			ap.selectXPath(PNMLPaths.TRANSITIONS_PATH);
-			while ((ap.evalXPath()) != -1) {
+			NavPlan.Cursor cursor = PNMLPaths.TRANSITIONS_PATH.cursor(vn);
+			while (cursor.next() != -1) {
 				vn.push();
-				id = ExportUtils.getPNMLNodeId(vn, MainPNML2NUPN.isUseTransitionNames(), trId2NameMap);
+				id = vn.getAttrVal(PNMLPaths.ID_ATTR);
+				tr = trIds.add(id);
 				tId = count++;
-				trId2nupnMap.put(id, tId);
-				trLabel = ExportUtils.getPNMLNodeIdOrName(id, MainPNML2NUPN.isUseTransitionNames(), trId2NameMap);
-				tsQueue.put(NUPNConstants.T_PREFX + tId + NUPNConstants.WS + trLabel + NUPNConstants.NL);
-				labelLength = ExportUtils.updateLabelLength(trLabel, labelLength);
+				setTransitionNupnId(tr, tId);
+				tsEnc.token(NUPNConstants.T_PREFX).number(tId).space();
+				if (options.isUseTransitionNames()) {
+					ExportUtils.collectPNMLNodeName(vn, trNames, tr);
+					length = labels.putName(tsQueue, ExportUtils.getPNMLNodeNameToken(trNames, tr));
+				} else {
+					length = labels.putText(tsQueue, id);
+				}
+				tsEnc.newLine();
+				labelLength = ExportUtils.updateLabelLength(length, labelLength);
 				vn.pop();
 			}
 
-			ap.resetXPath();
-			vn.toElement(VTDNavHuge.ROOT);
-			ap.selectXPath(PNMLPaths.ARCS_PATH);
-			while ((ap.evalXPath()) != -1) {
+			cursor = PNMLPaths.ARCS_PATH.cursor(vn);
+			while (cursor.next() != -1) {
 				vn.push();
-				pls = null;
-				arc = vn.toString(vn.getAttrVal(PNMLPaths.ID_ATTR));
-				src = vn.toString(vn.getAttrVal(PNMLPaths.SRC_ATTR));
-				trg = vn.toString(vn.getAttrVal(PNMLPaths.TRG_ATTR));
+				src = vn.getAttrVal(PNMLPaths.SRC_ATTR);
+				trg = vn.getAttrVal(PNMLPaths.TRG_ATTR);
 
-				tId = trId2nupnMap.getLong(src);
+				tId = getTransitionNupnId(trIds.find(src));
 				if (tId == -1L) { // transition is the target
-					tId = trId2nupnMap.getLong(trg);
+					tId = getTransitionNupnId(trIds.find(trg));
 					if (tId == -1L) {
+						arc = vn.getAttrVal(PNMLPaths.ID_ATTR);
+						trLabel = vn.toString(trg);
 						logger.warn(
 								"New transition {} referenced by arc {}, that I did not find earlier while parsing all transitions.",
-								trg, arc);
+								trLabel, vn.toString(arc));
 						tId = count++;
-						trId2nupnMap.put(trg, tId);
-						tsQueue.put(NUPNConstants.T_PREFX + tId + NUPNConstants.WS + trg + NUPNConstants.NL);
-						labelLength = ExportUtils.updateLabelLength(trg, labelLength);
-						logger.warn("Added new transition {} referenced by arc {}.", trg, arc);
-					}
-					pls = tr2InPlacesMap.get(tId);
-					if (pls == null) {
-						pls = new LongBigArrayBigList();
-						tr2InPlacesMap.put(tId, pls);
+						setTransitionNupnId(trIds.add(trg), tId);
+						tsEnc.token(NUPNConstants.T_PREFX).number(tId).space();
+						labelLength = ExportUtils.updateLabelLength(labels.putText(tsQueue, trg), labelLength);
+						tsEnc.newLine();
+						logger.warn("Added new transition {} referenced by arc {}.", trLabel, vn.toString(arc));
 					}
 					// associate the input place
-					pId = plId2nupnMap.getLong(src);
-					pls.add(pId);
+					pId = getPlaceNupnId(plIds.find(src));
+					netGraph.addInput((int) (tId - firstTr), pId);
 
 				} else {// transition is the source
-					pls = tr2OutPlacesMap.get(tId);
-					if (pls == null) {
-						pls = new LongBigArrayBigList();
-						tr2OutPlacesMap.put(tId, pls);
-					}
 					// associate the output place
-					pId = plId2nupnMap.getLong(trg);
-					pls.add(pId);
+					pId = getPlaceNupnId(plIds.find(trg));
+					netGraph.addOutput((int) (tId - firstTr), pId);
 				}
 				vn.pop();
 			}
-		} catch (NavExceptionHuge | XPathParseExceptionHuge | XPathEvalExceptionHuge | InterruptedException e) {
+			netGraph.build((int) (count - firstTr));
+		} catch (NavExceptionHuge | InterruptedException e) {
 			throw new PNMLImportExportException(e);
 		}
-		ap.resetXPath();
+	}
+
+	/**
+	 * Returns the NUPN id of a place, given its index in the place ids
+	 * dictionary, or -1 if it is not in a unit.
+	 */
+	private long getPlaceNupnId(int pl) {
+		return pl == -1 ? -1L : options.getFirstPlaceNumber() + pl;
+	}
+
+	private long getTransitionNupnId(int tr) {
+		return tr == -1 ? -1L : trNupnIds.getLong(tr);
+	}
+
+	/**
+	 * Sets the NUPN id of a transition. A transition declared several times
+	 * keeps the id of its last declaration.
+	 */
+	private void setTransitionNupnId(int tr, long tId) {
+		if (tr == trNupnIds.size()) {
+			trNupnIds.add(tId);
+		} else if (tr != -1) {
+			trNupnIds.set(tr, tId);
+		}
 	}
 
 	private void extractUnits() throws PNMLImportExportException {
@@ -298,10 +331,9 @@ public final class NativeNUPNExtractor {
 			long unitLId;
 			long plId;
 			LongList placesIntId = new LongArrayList();
-			vn.toElement(VTDNavHuge.ROOT);
-			ap.selectXPath(PNMLPaths.NUPN_UNIT);
+			NavPlan.Cursor cursor = PNMLPaths.NUPN_UNIT.cursor(vn);
 			logger.info("Extracting units.");
-			while ((ap.evalXPath()) != -1) {
+			while (cursor.next() != -1) {
 				vn.push();
 				unitSId = vn.toString(vn.getAttrVal(PNMLPaths.ID_ATTR));
 				unitLId = unitsIdMap.getLong(unitSId);
@@ -311,18 +343,14 @@ public final class NativeNUPNExtractor {
 				}
 				nupnsb.append("U").append(unitLId);
 				// places
-				vn.toElement(VTDNavHuge.FIRST_CHILD);
+				vn.toElement(XMLNav.FIRST_CHILD);
 				if (vn.getText() != -1) {
 					places = vn.toString(vn.getText());
 				}
 				if (!places.isEmpty()) {
 					elemId = places.split(NUPNConstants.FS);
 					for (String s : elemId) {
-						plId = plId2nupnMap.getLong(s);
-						if (plId == -1L) {
-							plId = nupnPlIdGen++;
-							plId2nupnMap.put(s, plId);
-						}
+						plId = getPlaceNupnId(plIds.add(s));
 						placesIntId.add(plId);
 					}
 					nupnsb.append(NUPNConstants.WS).append(NUPNConstants.HK).append(placesIntId.size());
@@ -341,7 +369,7 @@ public final class NativeNUPNExtractor {
 							.append(NUPNConstants.ZERO);
 				}
 				// subunits
-				vn.toElement(VTDNavHuge.NEXT_SIBLING);
+				vn.toElement(XMLNav.NEXT_SIBLING);
 				if (vn.getText() != -1) {
 					subunits = vn.toString(vn.getText());
 				}
@@ -368,18 +396,16 @@ public final class NativeNUPNExtractor {
 				places = "";
 				vn.pop();
 			}
-		} catch (NavExceptionHuge | XPathParseExceptionHuge | XPathEvalExceptionHuge e) {
+		} catch (NavExceptionHuge e) {
 			throw new PNMLImportExportException(e);
 		}
-		ap.resetXPath();
 	}
 
 	private void extractSizes() throws PNMLImportExportException {
 		try {
 			logger.info("Extracting sizes.");
-			vn.toElement(VTDNavHuge.ROOT);
-			ap.selectXPath(PNMLPaths.NUPN_SIZE);
-			while ((ap.evalXPath()) != -1) {
+			NavPlan.Cursor cursor = PNMLPaths.NUPN_SIZE.cursor(vn);
+			while (cursor.next() != -1) {
 				vn.push();
 				nbPlaces = Long.parseLong(vn.toString(vn.getAttrVal(PNMLPaths.PLACES_ATTR)));
 				nbTrans = Long.parseLong(vn.toString(vn.getAttrVal(PNMLPaths.TRANS_ATTR)));
@@ -388,18 +414,16 @@ public final class NativeNUPNExtractor {
 			}
 			logger.info("Nb places = {}; nb transitions = {}; nb arcs = {}", nbPlaces, nbTrans, nbArcs);
 
-		} catch (NavExceptionHuge | XPathParseExceptionHuge | XPathEvalExceptionHuge e) {
+		} catch (NavExceptionHuge e) {
 			throw new PNMLImportExportException(e);
 		}
-		ap.resetXPath();
 	}
 
 	private void extractStructure() throws PNMLImportExportException {
 		try {
 			logger.info("Extracting NUPN toolinfo structure.");
-			vn.toElement(VTDNavHuge.ROOT);
-			ap.selectXPath(PNMLPaths.NUPN_STRUCTURE);
-			while ((ap.evalXPath()) != -1) {
+			NavPlan.Cursor cursor = PNMLPaths.NUPN_STRUCTURE.cursor(vn);
+			while (cursor.next() != -1) {
 				vn.push();
 				nbUnits = Long.parseLong(vn.toString(vn.getAttrVal(PNMLPaths.UNITS_ATTR)));
 				rootUnitId = vn.toString(vn.getAttrVal(PNMLPaths.ROOT_ATTR));
@@ -411,10 +435,9 @@ public final class NativeNUPNExtractor {
 			if (isSafe) {
 				ExportUtils.insertUnitSafePragma(nupnQueue, null);
 			}
-		} catch (NavExceptionHuge | XPathParseExceptionHuge | XPathEvalExceptionHuge | InterruptedException e) {
+		} catch (NavExceptionHuge | InterruptedException e) {
 			throw new PNMLImportExportException(e);
 		}
-		ap.resetXPath();
 	}
 
 	private void writeInitialPlaces() throws InterruptedException {
@@ -423,12 +446,12 @@ public final class NativeNUPNExtractor {
 		if (nbMarkedPlaces > 1) {
 			nupnsb.append(NUPNConstants.INIT_PLACES).append(NUPNConstants.WS).append(NUPNConstants.HK)
 					.append(nbMarkedPlaces);
-			for (String pId : markedPlaces) {
-				nupnsb.append(NUPNConstants.WS).append(plId2nupnMap.getLong(pId));
+			for (long pId : markedPlacesNupnId) {
+				nupnsb.append(NUPNConstants.WS).append(pId);
 			}
 		} else {
 			nupnsb.append(NUPNConstants.INIT_PLACE).append(NUPNConstants.WS)
-					.append(plId2nupnMap.getLong(markedPlaces.get(0)));
+					.append(markedPlacesNupnId.getLong(0));
 		}
 		nupnsb.append(NUPNConstants.NL);
 		nupnQueue.put(nupnsb.toString());
@@ -453,9 +476,7 @@ public final class NativeNUPNExtractor {
 	private void writeNUPNPlaces() throws PNMLImportExportException {
 		try {
 			logger.info("Exporting places.");
-			vn.toElement(VTDNavHuge.ROOT);
-			ap.selectXPath(PNMLPaths.COUNT_PLACES_PATH);
-			long nbPl = (long) ap.evalXPathToNumber();
+			long nbPl = PNMLPaths.PLACES_PATH.count(vn);
 			if (nbPl != nbPlaces) {
 				logger.error(
 						"The number of places I counted in the PNML file ({}) is not equal to the number reported ({}) in the NUPN size element!",
@@ -464,159 +485,123 @@ public final class NativeNUPNExtractor {
 			}
 			nupnsb.append(NUPNConstants.PLACES).append(NUPNConstants.WS).append(NUPNConstants.HK).append(nbPlaces)
 					.append(NUPNConstants.WS)
-					.append(MainPNML2NUPN.getFirstPlaceNumber()).append(NUPNConstants.DOTS).append(nbPlaces - 1L + MainPNML2NUPN.getFirstPlaceNumber())
+					.append(options.getFirstPlaceNumber()).append(NUPNConstants.DOTS).append(nbPlaces - 1L + options.getFirstPlaceNumber())
 					.append(NUPNConstants.NL);
 			nupnQueue.put(nupnsb.toString());
 			clearNUPNStringBuilder();
-		} catch (NavExceptionHuge | XPathParseExceptionHuge | InterruptedException e) {
+		} catch (NavExceptionHuge | InterruptedException e) {
 			throw new PNMLImportExportException(e);
 		}
-		ap.resetXPath();
 	}
 	
-	private void writePlaceLabels() {
-		Object2LongLinkedOpenHashMap<String> sortedMap = plId2nupnMap.object2LongEntrySet().stream()
-				.sorted(Map.Entry.comparingByValue())
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-						(oldValue, newValue) -> oldValue, Object2LongLinkedOpenHashMap::new));
-	
-		sortedMap.forEach((pnmlId, nupnId) -> {
-			final String nupnLabel = ExportUtils.getPNMLNodeIdOrName(pnmlId, MainPNML2NUPN.isUsePlaceNames(),
-					plId2NameMap);
-			try {
-				logger.trace("Outputing mapping between nupn place id {} and its label {}", nupnId, nupnLabel);
-				psQueue.put(NUPNConstants.P_PREFX + nupnId + NUPNConstants.WS + nupnLabel + NUPNConstants.NL);
-				labelLength = ExportUtils.updateLabelLength(nupnLabel, labelLength);
-			} catch (InterruptedException e) {
-				logger.error("Error while writing places id-label mappings: {}", e.getMessage(), e);
+	private void writePlaceLabels() throws PNMLImportExportException {
+		long nupnId;
+		int length;
+		try {
+			for (int pl = 0; pl < plIds.size(); pl++) {
+				nupnId = getPlaceNupnId(pl);
+				if (logger.isTraceEnabled()) {
+					logger.trace("Outputing mapping between nupn place id {} and its label {}", nupnId,
+							options.isUsePlaceNames() ? ExportUtils.getPNMLNodeName(vn, plNames, pl)
+									: plIds.toString(pl));
+				}
+				psEnc.token(NUPNConstants.P_PREFX).number(nupnId).space();
+				length = options.isUsePlaceNames()
+						? labels.putName(psQueue, ExportUtils.getPNMLNodeNameToken(plNames, pl))
+						: plIds.put(psQueue, pl);
+				psEnc.newLine();
+				labelLength = ExportUtils.updateLabelLength(length, labelLength);
 			}
-		});
+		} catch (NavExceptionHuge | InterruptedException e) {
+			throw new PNMLImportExportException(e);
+		}
 	}
 
 	private void writeTransitions() throws PNMLImportExportException {
 		logger.info("Exporting transitions.");
 		try {
-			vn.toElement(VTDNavHuge.ROOT);
-			ap.selectXPath(PNMLPaths.COUNT_TRANSITIONS_PATH);
-			long nbTr = (long) ap.evalXPathToNumber();
+			long nbTr = PNMLPaths.TRANSITIONS_PATH.count(vn);
 			if (nbTr != nbTrans) {
 				logger.error(
 						"The number of transitions I counted in the PNML file ({}) is not equal to the number reported ({}) in the NUPN size element!",
 						nbTr, nbTrans);
 				logger.warn("I will output in the NUPN the number reported in the NUPN size element.");
 			}
-			StringBuilder tsSb = new StringBuilder();
-			tsSb.append(NUPNConstants.TRANSITIONS).append(NUPNConstants.WS).append(NUPNConstants.HK).append(nbTrans)
-					.append(NUPNConstants.WS)
-					.append(MainPNML2NUPN.getFirstTransitionNumber()).append(NUPNConstants.DOTS).append(nbTrans - 1L + MainPNML2NUPN.getFirstTransitionNumber())
-					.append(NUPNConstants.NL);
-			nupnQueue.put(tsSb.toString());
-			tsSb.delete(0, tsSb.length());
-
-			LongCollection allTr = new LongRBTreeSet(trId2nupnMap.values());
-
-			for (long trId : allTr) {
-				tsSb.append(NUPNConstants.T).append(trId);
-				buildConnectedPlaces2Transition(tsSb, trId, tr2InPlacesMap);
-				buildConnectedPlaces2Transition(tsSb, trId, tr2OutPlacesMap);
-				tsSb.append(NUPNConstants.NL);
-				nupnQueue.put(tsSb.toString());
-				tsSb.delete(0, tsSb.length());
+			nupnEnc.token(NUPNConstants.TRANSITIONS).space().count(nbTrans).space()
+					.range(options.getFirstTransitionNumber(),
+							nbTrans - 1L + options.getFirstTransitionNumber())
+					.newLine();
+
+			final long firstTr = options.getFirstTransitionNumber();
+			final int nbCollectedTr = netGraph.getNbTransitions();
+			for (int tr = 0; tr < nbCollectedTr; tr++) {
+				nupnEnc.token(NUPNConstants.T).number(firstTr + tr);
+				buildConnectedPlaces2Transition(tr, true);
+				buildConnectedPlaces2Transition(tr, false);
+				nupnEnc.newLine();
 			}
-			tsSb.delete(0, tsSb.length());
-			tsSb = null;
-		} catch (InterruptedException | NavExceptionHuge | XPathParseExceptionHuge e) {
+		} catch (InterruptedException | NavExceptionHuge e) {
 			throw new PNMLImportExportException(e);
 		}
-		ap.resetXPath();
 	}
 
-	private void buildConnectedPlaces2Transition(StringBuilder builder, long trId,
-			Long2ObjectOpenHashMap<LongBigArrayBigList> tr2PlacesMap) {
-		LongBigArrayBigList pls;
-		long plsSize;
-		pls = tr2PlacesMap.get(trId);
-		if (pls != null) {
-			plsSize = pls.size64();
-		} else { // no place in input or output list of this transition
-			plsSize = 0L;
-		}
-		builder.append(NUPNConstants.WS).append(NUPNConstants.HK).append(plsSize);
-
-		if (plsSize > 0L) {
-			for (long plId : pls) {
-				builder.append(NUPNConstants.WS).append(plId);
-			}
+	private void buildConnectedPlaces2Transition(int tr, boolean input) throws InterruptedException {
+		long plsSize = input ? netGraph.getNbInputPlaces(tr) : netGraph.getNbOutputPlaces(tr);
+		nupnEnc.space().count(plsSize);
+		for (long k = 0L; k < plsSize; k++) {
+			nupnEnc.space().number(input ? netGraph.getInputPlace(tr, k) : netGraph.getOutputPlace(tr, k));
 		}
 	}
 
-	private void checkAndSetNavAutopilot() throws PNMLImportExportException {
+	private void checkAndSetNav() throws PNMLImportExportException {
 		if (vn == null) {
-			vn = PNML2NUPNUtils.openXMLStream(inFile).getNav();
-		}
-		if (ap == null) {
-			ap = new AutoPilotHuge(vn);
+			final ConversionMetrics.Span span = metrics.start("parse");
+			vn = context.parseXML(inFile);
+			span.end(inFile.length());
 		}
 	}
 
 	private void openIOChannels() throws IOException {
-		outTSFile = new File(PNML2NUPNUtils.extractBaseName(outFile.getCanonicalPath()) + NUPNConstants.TRANS_EXT);
-		outPSFile = new File(PNML2NUPNUtils.extractBaseName(outFile.getCanonicalPath()) + NUPNConstants.STATES_EXT);
-		ocbNupn = PNML2NUPNUtils.openOutChannel(outFile);
-		ocbTs = PNML2NUPNUtils.openOutChannel(outTSFile);
-		ocbPs = PNML2NUPNUtils.openOutChannel(outPSFile);
-		nupnQueue = PNML2NUPNUtils.initQueue();
-		tsQueue = PNML2NUPNUtils.initQueue();
-		psQueue = PNML2NUPNUtils.initQueue();
-
+		ocbNupn = target.open();
+		nupnQueue = PNML2NUPNUtils.initQueue(options.getQueueCapacity());
+		tsQueue = PNML2NUPNUtils.initSpool();
+		psQueue = PNML2NUPNUtils.initSpool();
+		nupnEnc = new NUPNLineEncoder(nupnQueue);
+		tsEnc = new NUPNLineEncoder(tsQueue);
+		psEnc = new NUPNLineEncoder(psQueue);
 	}
 
 	private void startWriters() {
 		nupnWriter = PNML2NUPNUtils.startWriter(ocbNupn, nupnQueue);
-		tsWriter = PNML2NUPNUtils.startWriter(ocbTs, tsQueue);
-		psWriter = PNML2NUPNUtils.startWriter(ocbPs, psQueue);
 	}
 
-	private void emergencyStop(File outFile) throws InterruptedException, IOException {
-		stop(outFile);
+	private void emergencyStop() throws InterruptedException, IOException {
+		stop();
 		logger.error("Emergency stop. Cancelled the translation and released opened resources.");
+		if (target.isStream() && ocbNupn != null) {
+			logger.error("The NUPN contents written into {} are incomplete.", target);
+		}
 	}
 
 	private void clearNUPNStringBuilder() {
 		nupnsb.delete(0, nupnsb.length());
 	}
 
-	private void stop(File outFile) throws InterruptedException, IOException {
-		PNML2NUPNUtils.cancelWriters(nupnQueue, tsQueue, psQueue);
-		PNML2NUPNUtils.closeChannels(ocbNupn, ocbTs, ocbPs);
-		PNML2NUPNUtils.deleteOutputFiles(outFile, outTSFile, outPSFile);
+	private void stop() throws InterruptedException, IOException {
+		PNML2NUPNUtils.cancelWriters(nupnQueue);
+		PNML2NUPNUtils.clearSpools(tsQueue, psQueue);
+		PNML2NUPNUtils.closeChannels(ocbNupn);
+		target.discard();
 	}
 
 	private void initDataStructures() {
-		if (trId2nupnMap == null) {
-			trId2nupnMap = new Object2LongOpenHashMap<String>();
-			trId2nupnMap.defaultReturnValue(-1L);
-		}
-		if (trId2NameMap == null) {
-			trId2NameMap = new Object2ObjectOpenHashMap<String, String>();
-			trId2NameMap.defaultReturnValue("");
-		}
-		if (tr2InPlacesMap == null) {
-			tr2InPlacesMap = new Long2ObjectOpenHashMap<>();
-			tr2InPlacesMap.defaultReturnValue(null);
-		}
-		if (tr2OutPlacesMap == null) {
-			tr2OutPlacesMap = new Long2ObjectOpenHashMap<>();
-			tr2OutPlacesMap.defaultReturnValue(null);
-		}
-		if (plId2nupnMap == null) {
-			plId2nupnMap = new Object2LongOpenHashMap<String>();
-			plId2nupnMap.defaultReturnValue(-1L);
-		}
-		if (plId2NameMap == null) {
-			plId2NameMap = new Object2ObjectOpenHashMap<String, String>();
-			plId2NameMap.defaultReturnValue("");
-		}
+		trIds = new IdDictionary(vn);
+		trNames = new IntArrayList();
+		trNupnIds = new LongArrayList();
+		netGraph = new NetGraph();
+		plIds = new IdDictionary(vn);
+		plNames = new IntArrayList();
+		labels = new LabelWriter(vn);
 		if (unitsIdMap == null) {
 			unitsIdMap = new Object2LongOpenHashMap<>();
 			unitsIdMap.defaultReturnValue(-1L);
@@ -624,7 +609,6 @@ public final class NativeNUPNExtractor {
 		markedPlaces = new ObjectBigArrayBigList<>();
 		markedPlacesNupnId = new LongBigArrayBigList();
 		nupnLines = new ObjectBigArrayBigList<>();
-		nupnPlIdGen = MainPNML2NUPN.getFirstPlaceNumber();
 		nupnUnitIdGen = 0L;
 	}
 
@@ -632,12 +616,12 @@ public final class NativeNUPNExtractor {
 	 * Clears all internal data structures for places and transitions.
 	 */
 	private void clearDataStructures() {
-		plId2nupnMap.clear();
-		plId2NameMap.clear();
-		trId2nupnMap.clear();
-		trId2NameMap.clear();
-		tr2InPlacesMap.clear();
-		tr2OutPlacesMap.clear();
+		plIds.clear();
+		plNames.clear();
+		trIds.clear();
+		trNames.clear();
+		trNupnIds.clear();
+		netGraph = null;
 		unitsIdMap.clear();
 		markedPlaces.clear();
 		markedPlacesNupnId.clear();
@@ -0,0 +1,179 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import it.unimi.dsi.fastutil.BigArrays;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntBigArrayBigList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongBigArrayBigList;
+import it.unimi.dsi.fastutil.longs.LongBigArrays;
+
+/**
+ * Compact adjacency of the transitions of a net, in compressed sparse row
+ * layout: for input places and for output places, one offset array indexed by
+ * transition, and one flat array of NUPN place ids. The places of transition
+ * <code>t</code> are stored between <code>offsets[t]</code> (inclusive) and
+ * <code>offsets[t + 1]</code> (exclusive), in the order their arcs were added.
+ * <p>
+ * Arcs are first recorded with {@link #addInput(int, long)} and
+ * {@link #addOutput(int, long)}, or in bulk with
+ * {@link #addInputs(IntArrayList, LongArrayList)} and
+ * {@link #addOutputs(IntArrayList, LongArrayList)}. Then {@link #build(int)} counts the degree of
+ * each transition and fills the flat arrays, after which the recorded arcs are
+ * released.
+ * </p>
+ * Transitions are identified by their index, i.e. their NUPN id minus the
+ * first transition number.
+ */
+public final class NetGraph {
+
+	/* Arcs recorded before compaction: transition index and place id */
+	private IntBigArrayBigList inTrs, outTrs;
+	private LongBigArrayBigList inPls, outPls;
+
+	private int nbTransitions;
+	private long[] inOffsets, outOffsets;
+	private long[][] inPlaces, outPlaces;
+
+	public NetGraph() {
+		inTrs = new IntBigArrayBigList();
+		outTrs = new IntBigArrayBigList();
+		inPls = new LongBigArrayBigList();
+		outPls = new LongBigArrayBigList();
+	}
+
+	/**
+	 * Records an arc from place <code>plId</code> to transition <code>tr</code>.
+	 *
+	 * @param tr
+	 *            the transition index
+	 * @param plId
+	 *            the NUPN id of the input place
+	 */
+	public void addInput(int tr, long plId) {
+		inTrs.add(tr);
+		inPls.add(plId);
+	}
+
+	/**
+	 * Records an arc from transition <code>tr</code> to place <code>plId</code>.
+	 *
+	 * @param tr
+	 *            the transition index
+	 * @param plId
+	 *            the NUPN id of the output place
+	 */
+	public void addOutput(int tr, long plId) {
+		outTrs.add(tr);
+		outPls.add(plId);
+	}
+
+	/**
+	 * Records arcs from places to transitions, as {@link #addInput(int, long)}
+	 * would one after the other.
+	 *
+	 * @param trs
+	 *            the transition indexes
+	 * @param plIds
+	 *            the NUPN ids of the input places, one per transition index
+	 */
+	public void addInputs(IntArrayList trs, LongArrayList plIds) {
+		append(inTrs, inPls, trs, plIds);
+	}
+
+	/**
+	 * Records arcs from transitions to places, as {@link #addOutput(int, long)}
+	 * would one after the other.
+	 *
+	 * @param trs
+	 *            the transition indexes
+	 * @param plIds
+	 *            the NUPN ids of the output places, one per transition index
+	 */
+	public void addOutputs(IntArrayList trs, LongArrayList plIds) {
+		append(outTrs, outPls, trs, plIds);
+	}
+
+	private static void append(IntBigArrayBigList trs, LongBigArrayBigList pls, IntArrayList newTrs,
+			LongArrayList newPls) {
+		// A list shorter than a big array segment is a valid single-segment big array
+		trs.addElements(trs.size64(), new int[][] { newTrs.elements() }, 0L, newTrs.size());
+		pls.addElements(pls.size64(), new long[][] { newPls.elements() }, 0L, newPls.size());
+	}
+
+	/**
+	 * Compacts the recorded arcs. Transitions without any recorded arc get an
+	 * empty list of places.
+	 *
+	 * @param nbTransitions
+	 *            the number of transitions of the net
+	 */
+	public void build(int nbTransitions) {
+		this.nbTransitions = nbTransitions;
+		inOffsets = new long[nbTransitions + 1];
+		outOffsets = new long[nbTransitions + 1];
+		inPlaces = compact(inTrs, inPls, inOffsets);
+		outPlaces = compact(outTrs, outPls, outOffsets);
+		inTrs = outTrs = null;
+		inPls = outPls = null;
+	}
+
+	private static long[][] compact(IntBigArrayBigList trs, LongBigArrayBigList pls, long[] offsets) {
+		final long nbArcs = trs.size64();
+		final int nbTr = offsets.length - 1;
+		// first pass: count the degree of each transition
+		for (long i = 0L; i < nbArcs; i++) {
+			offsets[trs.getInt(i) + 1]++;
+		}
+		for (int t = 0; t < nbTr; t++) {
+			offsets[t + 1] += offsets[t];
+		}
+		// second pass: fill, preserving the order of arcs
+		final long[] cursors = new long[nbTr];
+		System.arraycopy(offsets, 0, cursors, 0, nbTr);
+		final long[][] places = LongBigArrays.newBigArray(nbArcs);
+		int t;
+		for (long i = 0L; i < nbArcs; i++) {
+			t = trs.getInt(i);
+			BigArrays.set(places, cursors[t]++, pls.getLong(i));
+		}
+		return places;
+	}
+
+	public int getNbTransitions() {
+		return nbTransitions;
+	}
+
+	public long getNbInputPlaces(int tr) {
+		return inOffsets[tr + 1] - inOffsets[tr];
+	}
+
+	public long getNbOutputPlaces(int tr) {
+		return outOffsets[tr + 1] - outOffsets[tr];
+	}
+
+	/**
+	 * Returns the k-th input place of a transition.
+	 */
+	public long getInputPlace(int tr, long k) {
+		return BigArrays.get(inPlaces, inOffsets[tr] + k);
+	}
+
+	/**
+	 * Returns the k-th output place of a transition.
+	 */
+	public long getOutputPlace(int tr, long k) {
+		return BigArrays.get(outPlaces, outOffsets[tr] + k);
+	}
+}
@@ -15,17 +15,46 @@ package fr.lip6.move.pnml2nupn.export.impl;
 /**
  * Bean to handle channel outputstreams.
  */
+import java.io.File;
 import java.io.FileOutputStream;
 import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 
 public final class OutChannelBean {
 
 	private FileChannel fc;
 	private FileOutputStream fos;
+	private File file;
+	private GatheringByteChannel channel;
+	private long written;
 
 	public OutChannelBean(FileChannel fc, FileOutputStream fos) {
 		this.setFc(fc);
 		this.setFos(fos);
+		this.channel = fc;
+	}
+
+	public OutChannelBean(FileChannel fc, FileOutputStream fos, File file) {
+		this(fc, fos);
+		this.file = file;
+	}
+
+	/**
+	 * @param channel
+	 *            the channel the contents are written into, e.g. a
+	 *            {@link CompressingChannel} over the file channel
+	 */
+	public OutChannelBean(FileChannel fc, FileOutputStream fos, File file, GatheringByteChannel channel) {
+		this(fc, fos, file);
+		this.channel = channel;
+	}
+
+	/**
+	 * Returns the channel the contents are written into: the file channel, or a
+	 * channel compressing into it.
+	 */
+	public GatheringByteChannel getChannel() {
+		return channel;
 	}
 
 	public FileChannel getFc() {
@@ -44,4 +73,24 @@ public final class OutChannelBean {
 		this.fos = fos;
 	}
 
+	/**
+	 * Returns the file written through this channel, or null if unknown.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of bytes the NUPN writer wrote through this channel,
+	 * before any compression. Unlike the file size, it is also known when
+	 * writing into a stream.
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	void addWritten(long bytes) {
+		written += bytes;
+	}
+
 }
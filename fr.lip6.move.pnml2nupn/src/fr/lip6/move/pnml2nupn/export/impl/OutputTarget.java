@@ -0,0 +1,106 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import fr.lip6.move.pnml2nupn.utils.PNML2NUPNUtils;
+
+/**
+ * Where a NUPN file is written: a regular file, or a stream that can be
+ * neither sought nor deleted, i.e. the standard output or a named pipe. The
+ * NUPN sections are written once, in their final order, so that both work the
+ * same way. A cancelled conversion deletes a regular file, and only closes a
+ * stream, whose reader then sees the contents end early.
+ */
+public final class OutputTarget {
+
+	private static final String STDOUT = "the standard output";
+
+	private final File file;
+	private final boolean stdout;
+	private final boolean stream;
+
+	private OutputTarget(File file, boolean stdout) {
+		this.file = file;
+		this.stdout = stdout;
+		// A named pipe exists before the conversion starts, but is not a regular file
+		this.stream = stdout || (file.exists() && !file.isFile());
+	}
+
+	/**
+	 * Returns the target writing into a file, or into the named pipe at its path.
+	 */
+	public static OutputTarget toFile(File file) {
+		return new OutputTarget(file, false);
+	}
+
+	/**
+	 * Returns the target writing into the standard output.
+	 * 
+	 * @param file
+	 *            the path the NUPN file would have, next to which the other
+	 *            output files are still written
+	 */
+	public static OutputTarget toStdout(File file) {
+		return new OutputTarget(file, true);
+	}
+
+	/**
+	 * Returns the path of the NUPN file. The unsafe arcs and metrics files are
+	 * written next to it, and its name tells the compression of the contents.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Tells whether the contents go into a stream rather than a regular file.
+	 */
+	public boolean isStream() {
+		return stream;
+	}
+
+	/**
+	 * Opens the channel the NUPN contents are written into.
+	 */
+	public OutChannelBean open() throws IOException {
+		return PNML2NUPNUtils.openOutChannel(file,
+				stdout ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(file));
+	}
+
+	/**
+	 * Discards the contents of a cancelled conversion: deletes the file, but
+	 * leaves a stream as is.
+	 */
+	public void discard() {
+		if (!stream) {
+			PNML2NUPNUtils.deleteOutputFile(file);
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (stdout) {
+			return STDOUT;
+		}
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+}
@@ -12,8 +12,19 @@
  */
 package fr.lip6.move.pnml2nupn.export.impl;
 
+import static fr.lip6.move.pnml2nupn.utils.NavPlan.attributeEquals;
+import static fr.lip6.move.pnml2nupn.utils.NavPlan.hasChild;
+import static fr.lip6.move.pnml2nupn.utils.NavPlan.not;
+import static fr.lip6.move.pnml2nupn.utils.NavPlan.or;
+import static fr.lip6.move.pnml2nupn.utils.NavPlan.valueAbove;
+import static fr.lip6.move.pnml2nupn.utils.NavPlan.valueAtMost;
+
+import fr.lip6.move.pnml2nupn.utils.NavPlan;
+
 /**
- * A set of in-memory XPATH queries used to parse PNML.
+ * The element names of PNML, and the paths used to parse it, compiled once
+ * into navigation plans. The XPath expression of each plan is given next to
+ * it.
  * @author lom
  *
  */
@@ -33,51 +44,39 @@ public final class PNMLPaths {
 	
 	public static final String TYPE_ATTR = "type";
 	
-	public static final String NETS_PATH = "/pnml/net";
-	
-	public static final String PAGES_PATH = NETS_PATH + "/page";
-	
-	public static final String PLACES_PATH = PAGES_PATH + "/place";
-	
 	public static final String NAME_ELEMENT = "name";
 	
 	public static final String TEXT_ELEMENT = "text";
 	
-	public static final String PLACE_NAMES_PATH =  PLACES_PATH + "/" + NAME_ELEMENT + "/" + TEXT_ELEMENT; 
+	public static final String PNML_ELEMENT = "pnml";
 	
-	public static final String MARKED_PLACES = PLACES_PATH + "/initialMarking[text > 0]";
+	public static final String NET_ELEMENT = "net";
 	
-	public static final String UNSAFE_MARKED_PLACES = PLACES_PATH + "/initialMarking[text > 1]";
+	public static final String PAGE_ELEMENT = "page";
 	
+	public static final String PLACE_ELEMENT = "place";
 	
-	public static final String COUNT_MARKED_PLACES = "count(" + MARKED_PLACES + ")";
+	public static final String TRANSITION_ELEMENT = "transition";
 	
-	public static final String PLACES_PATH_EXCEPT_MKG = PAGES_PATH + "/child::place[not(child::initialMarking)]" 
-			+ " | " + PAGES_PATH  + "/child::place[child::initialMarking[text <= 0]]";
+	public static final String ARC_ELEMENT = "arc";
 	
-	public static final String TRANSITIONS_PATH = PAGES_PATH + "/transition";
+	public static final String INITIAL_MARKING_ELEMENT = "initialMarking";
 	
-	public static final String ARCS_PATH = PAGES_PATH + "/arc";
+	public static final String INSCRIPTION_ELEMENT = "inscription";
 	
-	public static final String UNSAFE_ARCS = ARCS_PATH + "/inscription[text > 1]";
-
-	public static final String COUNT_PLACES_PATH = "count(" + PLACES_PATH + ")";
-
-	public static final String COUNT_TRANSITIONS_PATH = "count(" + TRANSITIONS_PATH + ")";
+	public static final String TOOL_SPECIFIC_ELEMENT = "toolspecific";
 	
-	public static final String TOOL_SPECIFIC = PAGES_PATH + "/toolspecific";
+	public static final String SIZE_ELEMENT = "size";
 	
-	public static final String NUPN_TOOL_SPECIFIC = TOOL_SPECIFIC + "[@tool='nupn']";
+	public static final String STRUCTURE_ELEMENT = "structure";
 	
-	public static final String NUPN_SIZE = NUPN_TOOL_SPECIFIC + "/size";
+	public static final String UNIT_ELEMENT = "unit";
 	
-	public static final String NUPN_STRUCTURE = NUPN_TOOL_SPECIFIC + "/structure";
+	public static final String PLACES_ELEMENT = "places";
 	
-	public static final String NUPN_UNIT = NUPN_STRUCTURE + "/unit";
+	public static final String SUBUNITS_ELEMENT = "subunits";
 	
-	public static final String NUPN_UNIT_PLACES = NUPN_UNIT + "/places";
-	
-	public static final String NUPN_UNIT_SUBUNITS = NUPN_UNIT + "/subunits";
+	public static final String NUPN_TOOL = "nupn";
 	
 	public static final String TOOL_ATTR = "tool";
 	
@@ -95,4 +94,64 @@ public final class PNMLPaths {
 	
 	public static final String SAFE_ATTR = "safe";
 
+	/** /pnml/net */
+	public static final NavPlan NETS_PATH = NavPlan.root(PNML_ELEMENT).child(NET_ELEMENT);
+	
+	/** /pnml/net/page */
+	public static final NavPlan PAGES_PATH = NETS_PATH.child(PAGE_ELEMENT);
+	
+	/** /pnml/net/page/place */
+	public static final NavPlan PLACES_PATH = PAGES_PATH.child(PLACE_ELEMENT);
+	
+	/** /pnml/net/page/place/name/text */
+	public static final NavPlan PLACE_NAMES_PATH = PLACES_PATH.child(NAME_ELEMENT).child(TEXT_ELEMENT);
+	
+	/** /pnml/net/page/place/initialMarking[text &gt; 0] */
+	public static final NavPlan MARKED_PLACES = PLACES_PATH.child(INITIAL_MARKING_ELEMENT,
+			hasChild(TEXT_ELEMENT, valueAbove(0L)));
+	
+	/** /pnml/net/page/place/initialMarking[text &gt; 1] */
+	public static final NavPlan UNSAFE_MARKED_PLACES = PLACES_PATH.child(INITIAL_MARKING_ELEMENT,
+			hasChild(TEXT_ELEMENT, valueAbove(1L)));
+	
+	/**
+	 * /pnml/net/page/place[not(initialMarking)] |
+	 * /pnml/net/page/place[initialMarking[text &lt;= 0]]
+	 */
+	public static final NavPlan PLACES_PATH_EXCEPT_MKG = PAGES_PATH.child(PLACE_ELEMENT,
+			or(not(hasChild(INITIAL_MARKING_ELEMENT)),
+					hasChild(INITIAL_MARKING_ELEMENT, hasChild(TEXT_ELEMENT, valueAtMost(0L)))));
+	
+	/** /pnml/net/page/transition */
+	public static final NavPlan TRANSITIONS_PATH = PAGES_PATH.child(TRANSITION_ELEMENT);
+	
+	/** /pnml/net/page/arc */
+	public static final NavPlan ARCS_PATH = PAGES_PATH.child(ARC_ELEMENT);
+	
+	/** /pnml/net/page/arc/inscription[text &gt; 1] */
+	public static final NavPlan UNSAFE_ARCS = ARCS_PATH.child(INSCRIPTION_ELEMENT,
+			hasChild(TEXT_ELEMENT, valueAbove(1L)));
+	
+	/** /pnml/net/page/toolspecific */
+	public static final NavPlan TOOL_SPECIFIC = PAGES_PATH.child(TOOL_SPECIFIC_ELEMENT);
+	
+	/** /pnml/net/page/toolspecific[@tool='nupn'] */
+	public static final NavPlan NUPN_TOOL_SPECIFIC = PAGES_PATH.child(TOOL_SPECIFIC_ELEMENT,
+			attributeEquals(TOOL_ATTR, NUPN_TOOL));
+	
+	/** /pnml/net/page/toolspecific[@tool='nupn']/size */
+	public static final NavPlan NUPN_SIZE = NUPN_TOOL_SPECIFIC.child(SIZE_ELEMENT);
+	
+	/** /pnml/net/page/toolspecific[@tool='nupn']/structure */
+	public static final NavPlan NUPN_STRUCTURE = NUPN_TOOL_SPECIFIC.child(STRUCTURE_ELEMENT);
+	
+	/** /pnml/net/page/toolspecific[@tool='nupn']/structure/unit */
+	public static final NavPlan NUPN_UNIT = NUPN_STRUCTURE.child(UNIT_ELEMENT);
+	
+	/** /pnml/net/page/toolspecific[@tool='nupn']/structure/unit/places */
+	public static final NavPlan NUPN_UNIT_PLACES = NUPN_UNIT.child(PLACES_ELEMENT);
+	
+	/** /pnml/net/page/toolspecific[@tool='nupn']/structure/unit/subunits */
+	public static final NavPlan NUPN_UNIT_SUBUNITS = NUPN_UNIT.child(SUBUNITS_ELEMENT);
+
 }
@@ -0,0 +1,328 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import com.ximpleware.extended.NavExceptionHuge;
+
+import fr.lip6.move.pnml2nupn.exceptions.InvalidNetException;
+import fr.lip6.move.pnml2nupn.utils.XMLNav;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntBigArrayBigList;
+import it.unimi.dsi.fastutil.longs.LongBigArrayBigList;
+
+/**
+ * Collects places, initial markings, transitions and arcs of a P/T net in a
+ * single linear pass over the VTD index, instead of evaluating one XPath query
+ * per kind of node. Nodes are visited in document order, following
+ * {@link PNMLPaths#PLACES_PATH}, {@link PNMLPaths#TRANSITIONS_PATH} and
+ * {@link PNMLPaths#ARCS_PATH}, so that the collected lists are ordered exactly
+ * like the results of these queries.
+ * <p>
+ * Nodes are collected as their index in an {@link IdDictionary} of the ids of
+ * places, transitions and arc ends: ids and names are only turned into Strings
+ * when their label is written.
+ * </p>
+ */
+public final class PNMLScanner {
+
+	/* What a missing id reads as in labels, like String.valueOf((Object) null) */
+	private static final String UNKNOWN_ID = "null";
+
+	private final XMLNav vn;
+	private final IdDictionary nodes;
+	private final LabelWriter labels;
+
+	private final IntBigArrayBigList placeNodes;
+	/* Places whose initial marking is > 0, and their marking */
+	private final IntBigArrayBigList markedPlaceNodes;
+	private final LongBigArrayBigList markings;
+	private final IntBigArrayBigList transitionNodes;
+	private final IntBigArrayBigList arcSources;
+	private final IntBigArrayBigList arcTargets;
+	/* Inscription of each arc, 1 when the arc has no inscription */
+	private final LongBigArrayBigList inscriptions;
+	/* Arcs whose inscription is > 1: their id token and their index among all arcs */
+	private final IntBigArrayBigList unsafeArcIds;
+	private final LongBigArrayBigList unsafeArcIndexes;
+	/* By node: text token of the name of its first declaration, -1 for none */
+	private final IntArrayList placeNames;
+	private final IntArrayList transitionNames;
+	private boolean usePlaceNames, useTransitionNames;
+
+	public PNMLScanner(XMLNav vn) {
+		this.vn = vn;
+		nodes = new IdDictionary(vn);
+		labels = new LabelWriter(vn);
+		placeNodes = new IntBigArrayBigList();
+		markedPlaceNodes = new IntBigArrayBigList();
+		markings = new LongBigArrayBigList();
+		transitionNodes = new IntBigArrayBigList();
+		arcSources = new IntBigArrayBigList();
+		arcTargets = new IntBigArrayBigList();
+		inscriptions = new LongBigArrayBigList();
+		unsafeArcIds = new IntBigArrayBigList();
+		unsafeArcIndexes = new LongBigArrayBigList();
+		placeNames = new IntArrayList();
+		transitionNames = new IntArrayList();
+	}
+
+	/**
+	 * Scans all the pages of all the nets of the document. Names of places and
+	 * transitions are collected when the corresponding option is set: see
+	 * {@link #putPlaceLabel(SlabOutput, int)} and
+	 * {@link #putTransitionLabel(SlabOutput, int)}.
+	 *
+	 * @param usePlaceNames
+	 * @param useTransitionNames
+	 * @throws NavExceptionHuge
+	 * @throws InvalidNetException
+	 *             if an initial marking or an inscription is not a number
+	 */
+	public void scan(boolean usePlaceNames, boolean useTransitionNames) throws NavExceptionHuge, InvalidNetException {
+		this.usePlaceNames = usePlaceNames;
+		this.useTransitionNames = useTransitionNames;
+		vn.toElement(XMLNav.ROOT);
+		if (!vn.matchElement(PNMLPaths.PNML_ELEMENT)) {
+			return;
+		}
+		vn.push();
+		if (vn.toElement(XMLNav.FIRST_CHILD, PNMLPaths.NET_ELEMENT)) {
+			do {
+				if (vn.toElement(XMLNav.FIRST_CHILD, PNMLPaths.PAGE_ELEMENT)) {
+					do {
+						scanPage();
+					} while (vn.toElement(XMLNav.NEXT_SIBLING, PNMLPaths.PAGE_ELEMENT));
+					vn.toElement(XMLNav.PARENT);
+				}
+			} while (vn.toElement(XMLNav.NEXT_SIBLING, PNMLPaths.NET_ELEMENT));
+		}
+		vn.pop();
+		vn.toElement(XMLNav.ROOT);
+	}
+
+	private void scanPage() throws NavExceptionHuge, InvalidNetException {
+		if (!vn.toElement(XMLNav.FIRST_CHILD)) {
+			return;
+		}
+		int node, id;
+		long val;
+		do {
+			if (vn.matchElement(PNMLPaths.PLACE_ELEMENT)) {
+				vn.push();
+				node = nodes.add(vn.getAttrVal(PNMLPaths.ID_ATTR));
+				placeNodes.add(node);
+				if (usePlaceNames) {
+					ExportUtils.collectPNMLNodeName(vn, placeNames, node);
+				}
+				val = readChildValue(PNMLPaths.INITIAL_MARKING_ELEMENT, 0L, "initial marking of place");
+				if (val > 0L) {
+					markedPlaceNodes.add(node);
+					markings.add(val);
+				}
+				vn.pop();
+			} else if (vn.matchElement(PNMLPaths.TRANSITION_ELEMENT)) {
+				vn.push();
+				node = nodes.add(vn.getAttrVal(PNMLPaths.ID_ATTR));
+				transitionNodes.add(node);
+				if (useTransitionNames) {
+					ExportUtils.collectPNMLNodeName(vn, transitionNames, node);
+				}
+				vn.pop();
+			} else if (vn.matchElement(PNMLPaths.ARC_ELEMENT)) {
+				vn.push();
+				arcSources.add(nodes.add(vn.getAttrVal(PNMLPaths.SRC_ATTR)));
+				arcTargets.add(nodes.add(vn.getAttrVal(PNMLPaths.TRG_ATTR)));
+				val = readChildValue(PNMLPaths.INSCRIPTION_ELEMENT, 1L, "inscription of arc");
+				if (val > 1L) {
+					id = vn.getAttrVal(PNMLPaths.ID_ATTR);
+					if (id != -1) {
+						unsafeArcIds.add(id);
+						unsafeArcIndexes.add(inscriptions.size64());
+					}
+				}
+				inscriptions.add(val);
+				vn.pop();
+			}
+		} while (vn.toElement(XMLNav.NEXT_SIBLING));
+		vn.toElement(XMLNav.PARENT);
+	}
+
+	/**
+	 * Reads the numeric value held by the text child of the given child element
+	 * of the current node (initial marking or inscription). Returns the default
+	 * value if there is no such element.
+	 *
+	 * @param what
+	 *            what the value is, to name it with the current node in the error
+	 *            message
+	 * @throws InvalidNetException
+	 *             if the text is not a number
+	 */
+	private long readChildValue(String childElement, long defaultValue, String what)
+			throws NavExceptionHuge, InvalidNetException {
+		long val = defaultValue;
+		if (vn.toElement(XMLNav.FIRST_CHILD, childElement)) {
+			if (vn.toElement(XMLNav.FIRST_CHILD, PNMLPaths.TEXT_ELEMENT)) {
+				int txt = vn.getText();
+				if (txt != -1) {
+					try {
+						val = vn.parseLong(txt);
+					} catch (NumberFormatException e) {
+						vn.toElement(XMLNav.PARENT);
+						vn.toElement(XMLNav.PARENT);
+						throw new InvalidNetException("Error: the " + what + " "
+								+ vn.toString(vn.getAttrVal(PNMLPaths.ID_ATTR)) + " is not a number: "
+								+ vn.toString(txt).trim(), e);
+					}
+				}
+				vn.toElement(XMLNav.PARENT);
+			}
+			vn.toElement(XMLNav.PARENT);
+		}
+		return val;
+	}
+
+	/**
+	 * Returns the dictionary of the ids of places, transitions and arc ends.
+	 */
+	public IdDictionary getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of distinct ids of places, transitions and arc ends.
+	 */
+	public int getNbNodes() {
+		return nodes.size();
+	}
+
+	/**
+	 * Returns the PNML id of a node, null for -1.
+	 */
+	public String getId(int node) throws NavExceptionHuge {
+		return node == -1 ? null : nodes.toString(node);
+	}
+
+	/**
+	 * Returns the label of a place: its name if option
+	 * {@link fr.lip6.move.pnml2nupn.MainPNML2NUPN#USE_PLACE_NAMES} is set (or
+	 * {@link NUPNConstants#NO_NAME_PREFIX} if it has none), its id otherwise.
+	 */
+	public String getPlaceLabel(int node) throws NavExceptionHuge {
+		return usePlaceNames ? ExportUtils.getPNMLNodeName(vn, placeNames, node) : getId(node);
+	}
+
+	/**
+	 * Writes the label of a place, as {@link #getPlaceLabel(int)} returns it,
+	 * straight from the bytes of the document.
+	 *
+	 * @return the length of the label
+	 */
+	public int putPlaceLabel(SlabOutput out, int node) throws InterruptedException, NavExceptionHuge {
+		return usePlaceNames ? labels.putName(out, ExportUtils.getPNMLNodeNameToken(placeNames, node))
+				: putId(out, node);
+	}
+
+	/**
+	 * Writes the label of a transition: its name if option
+	 * {@link fr.lip6.move.pnml2nupn.MainPNML2NUPN#USE_TRANSITION_NAMES} is set
+	 * (or {@link NUPNConstants#NO_NAME_PREFIX} if it has none), its id otherwise,
+	 * straight from the bytes of the document.
+	 *
+	 * @return the length of the label
+	 */
+	public int putTransitionLabel(SlabOutput out, int node) throws InterruptedException, NavExceptionHuge {
+		return useTransitionNames ? labels.putName(out, ExportUtils.getPNMLNodeNameToken(transitionNames, node))
+				: putId(out, node);
+	}
+
+	private int putId(SlabOutput out, int node) throws InterruptedException, NavExceptionHuge {
+		if (node == -1) {
+			out.put(UNKNOWN_ID);
+			return UNKNOWN_ID.length();
+		}
+		return nodes.put(out, node);
+	}
+
+	public long getNbPlaces() {
+		return placeNodes.size64();
+	}
+
+	public IntBigArrayBigList getPlaceNodes() {
+		return placeNodes;
+	}
+
+	public long getNbMarkedPlaces() {
+		return markedPlaceNodes.size64();
+	}
+
+	public IntBigArrayBigList getMarkedPlaceNodes() {
+		return markedPlaceNodes;
+	}
+
+	public LongBigArrayBigList getMarkings() {
+		return markings;
+	}
+
+	public long getNbTransitions() {
+		return transitionNodes.size64();
+	}
+
+	public IntBigArrayBigList getTransitionNodes() {
+		return transitionNodes;
+	}
+
+	public long getNbArcs() {
+		return inscriptions.size64();
+	}
+
+	public IntBigArrayBigList getArcSources() {
+		return arcSources;
+	}
+
+	public IntBigArrayBigList getArcTargets() {
+		return arcTargets;
+	}
+
+	public LongBigArrayBigList getInscriptions() {
+		return inscriptions;
+	}
+
+	/**
+	 * Returns the id tokens of the arcs whose inscription is > 1.
+	 */
+	public IntBigArrayBigList getUnsafeArcIds() {
+		return unsafeArcIds;
+	}
+
+	public LongBigArrayBigList getUnsafeArcIndexes() {
+		return unsafeArcIndexes;
+	}
+
+	/**
+	 * Releases the collected nodes. The ids and names of the nodes are kept,
+	 * to write their labels.
+	 */
+	public void clear() {
+		placeNodes.clear();
+		markedPlaceNodes.clear();
+		markings.clear();
+		transitionNodes.clear();
+		arcSources.clear();
+		arcTargets.clear();
+		inscriptions.clear();
+		unsafeArcIds.clear();
+		unsafeArcIndexes.clear();
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.export.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Output made of byte slabs, into which contents are encoded in UTF-8
+ * directly. Subclasses decide what happens to a slab once it is full.
+ */
+public abstract class SlabOutput {
+
+	/* Room for the longest UTF-8 sequence */
+	private static final int MAX_CHAR_BYTES = 4;
+
+	SlabOutput() {
+		super();
+	}
+
+	/**
+	 * Returns the slab currently filled, with at least <code>nbBytes</code>
+	 * bytes remaining, so that the caller can encode directly into it.
+	 *
+	 * @param nbBytes
+	 *            the number of bytes the caller is about to write, at most the
+	 *            size of a slab
+	 * @return the slab to write into
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a free slab
+	 */
+	abstract ByteBuffer reserve(int nbBytes) throws InterruptedException;
+
+	/**
+	 * Encodes the given characters into the slabs.
+	 *
+	 * @param cs
+	 *            the characters to append
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a free slab
+	 */
+	public void put(CharSequence cs) throws InterruptedException {
+		final int len = cs.length();
+		ByteBuffer slab = reserve(MAX_CHAR_BYTES);
+		char c;
+		for (int i = 0; i < len; i++) {
+			if (slab.remaining() < MAX_CHAR_BYTES) {
+				slab = reserve(MAX_CHAR_BYTES);
+			}
+			c = cs.charAt(i);
+			if (c < 0x80) {
+				slab.put((byte) c);
+			} else if (c < 0x800) {
+				slab.put((byte) (0xC0 | (c >> 6)));
+				slab.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(cs.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, cs.charAt(++i));
+				slab.put((byte) (0xF0 | (cp >> 18)));
+				slab.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+				slab.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+				slab.put((byte) (0x80 | (cp & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, replaced like String.getBytes does
+				slab.put((byte) '?');
+			} else {
+				slab.put((byte) (0xE0 | (c >> 12)));
+				slab.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				slab.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * Copies bytes into the slabs, as they are.
+	 *
+	 * @param src
+	 *            the bytes to append
+	 * @param offset
+	 *            the offset of the first byte in <code>src</code>
+	 * @param length
+	 *            the number of bytes
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a free slab
+	 */
+	public void put(byte[] src, int offset, int length) throws InterruptedException {
+		ByteBuffer slab;
+		int n;
+		while (length > 0) {
+			slab = reserve(1);
+			n = Math.min(length, slab.remaining());
+			slab.put(src, offset, n);
+			offset += n;
+			length -= n;
+		}
+	}
+}
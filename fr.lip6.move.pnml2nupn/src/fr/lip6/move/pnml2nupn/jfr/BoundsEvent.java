@@ -0,0 +1,42 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *  					CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The computation of the structural bounds of places, to check a net is
+ * 1-safe.
+ */
+@Name("fr.lip6.pnml2nupn.Bounds")
+@Label("Structural Bounds")
+@Category({ PhaseEvent.CATEGORY, "Safeness" })
+@Description("The computation of the structural bounds of the places of a net")
+@StackTrace(false)
+public final class BoundsEvent extends NetEvent {
+
+	@Label("Verdict")
+	@Description("safe, unsafe or inconclusive")
+	public String verdict;
+
+	@Label("Unbounded Places")
+	@Description("Number of places whose upper bound could not be computed")
+	public long unknownBounds;
+
+	@Label("Given Up Parts")
+	public long givenUpParts;
+}
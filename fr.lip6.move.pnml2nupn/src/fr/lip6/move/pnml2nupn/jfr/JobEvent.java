@@ -0,0 +1,58 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *  					CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.jfr;
+
+import fr.lip6.move.pnml2nupn.export.ConversionMetrics;
+import fr.lip6.move.pnml2nupn.export.ConversionReport;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The conversion of a single file, from the command line or by the daemon.
+ */
+@Name("fr.lip6.pnml2nupn.Job")
+@Label("Conversion Job")
+@Category({ PhaseEvent.CATEGORY, "Conversion" })
+@Description("The conversion of a PNML file into NUPN")
+@StackTrace(false)
+public final class JobEvent extends NetEvent {
+
+	@Label("Succeeded")
+	public boolean success;
+
+	/**
+	 * Ends this event, and commits it if it is enabled.
+	 *
+	 * @param src
+	 *            the path of the PNML file
+	 * @param report
+	 *            the report of the conversion, null if it failed
+	 */
+	public void finish(String src, ConversionReport report) {
+		end();
+		if (shouldCommit()) {
+			file = src;
+			success = report != null;
+			final ConversionMetrics metrics = report == null ? null : report.getMetrics();
+			if (metrics != null) {
+				places = metrics.getNbPlaces();
+				transitions = metrics.getNbTransitions();
+				arcs = metrics.getNbArcs();
+			}
+			commit();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *  					CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * An event about a PNML file, and the net it holds. The sizes are 0 until the
+ * net is read.
+ */
+abstract class NetEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("Places")
+	public long places;
+
+	@Label("Transitions")
+	public long transitions;
+
+	@Label("Arcs")
+	@Description("Number of arcs, or the number reported by the NUPN tool specific section")
+	public long arcs;
+}
@@ -0,0 +1,41 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *  					CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A phase of a conversion, as measured by
+ * {@link fr.lip6.move.pnml2nupn.export.ConversionMetrics}.
+ */
+@Name(PhaseEvent.NAME)
+@Label("Conversion Phase")
+@Category({ PhaseEvent.CATEGORY, "Conversion" })
+@Description("A phase of the conversion of a PNML file into NUPN")
+@StackTrace(false)
+public final class PhaseEvent extends NetEvent {
+
+	public static final String CATEGORY = "PNML2NUPN";
+	public static final String NAME = "fr.lip6.pnml2nupn.Phase";
+
+	@Label("Phase")
+	public String phase;
+
+	@Label("Count")
+	@Description("Number of elements the phase went through, -1 if it does not apply")
+	public long count;
+}
@@ -0,0 +1,48 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *  					CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A batch of slabs drained from a write queue into the output file, with a
+ * single gathering write.
+ */
+@Name("fr.lip6.pnml2nupn.WriterBatch")
+@Label("Writer Batch")
+@Category({ PhaseEvent.CATEGORY, "Writer" })
+@Description("A batch of slabs written by a NUPN writer")
+@StackTrace(false)
+public final class WriterBatchEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+
+	@Label("Queue Depth")
+	@Description("Number of filled slabs taken from the queue at once")
+	public int queueDepth;
+
+	@Label("Queue Capacity")
+	@Description("Number of slabs of the queue")
+	public int queueCapacity;
+}
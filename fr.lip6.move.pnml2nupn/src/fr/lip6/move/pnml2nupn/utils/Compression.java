@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Compression formats of PNML and NUPN files, recognized by their last
+ * extension, as in <code>model.pnml.gz</code>.
+ */
+public enum Compression {
+	NONE(""), GZIP(".gz"), XZ(".xz"), ZSTD(".zst");
+
+	private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+	private final String extension;
+
+	private Compression(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Returns the compression format of a file from its name, {@link #NONE} if
+	 * it has none of the known compression extensions.
+	 */
+	public static Compression of(String fileName) {
+		for (Compression c : values()) {
+			if (c != NONE && fileName.endsWith(c.extension)) {
+				return c;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Removes the compression extension of a file name or path, if any.
+	 */
+	public static String strip(String fileName) {
+		return fileName.substring(0, fileName.length() - of(fileName).extension.length());
+	}
+
+	/**
+	 * Returns a stream of the decompressed contents of a stream.
+	 */
+	public InputStream decompress(InputStream in) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPInputStream(in, PNML2NUPNUtils.BUFFERSIZE);
+		case XZ:
+			return new XZInputStream(in);
+		case ZSTD:
+			return new ZstdInputStream(in);
+		default:
+			return in;
+		}
+	}
+
+	/**
+	 * Returns a stream compressing what is written into it, into a stream.
+	 */
+	public OutputStream compress(OutputStream out) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE);
+		case XZ:
+			return new XZOutputStream(out, new LZMA2Options());
+		case ZSTD:
+			return new ZstdOutputStream(out);
+		default:
+			return out;
+		}
+	}
+}
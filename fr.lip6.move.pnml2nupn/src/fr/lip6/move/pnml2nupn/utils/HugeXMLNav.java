@@ -0,0 +1,110 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.utils;
+
+import com.ximpleware.extended.NavExceptionHuge;
+import com.ximpleware.extended.VTDNavHuge;
+
+/**
+ * Navigation in an index built by the extended VTD engine, over a memory
+ * mapped document.
+ */
+final class HugeXMLNav implements XMLNav {
+
+	private final VTDNavHuge vn;
+
+	HugeXMLNav(VTDNavHuge vn) {
+		this.vn = vn;
+	}
+
+	@Override
+	public boolean toElement(int direction) throws NavExceptionHuge {
+		return vn.toElement(direction);
+	}
+
+	@Override
+	public boolean toElement(int direction, String element) throws NavExceptionHuge {
+		return vn.toElement(direction, element);
+	}
+
+	@Override
+	public boolean matchElement(String element) throws NavExceptionHuge {
+		return vn.matchElement(element);
+	}
+
+	@Override
+	public int getAttrVal(String attribute) throws NavExceptionHuge {
+		return vn.getAttrVal(attribute);
+	}
+
+	@Override
+	public int getText() {
+		return vn.getText();
+	}
+
+	@Override
+	public String toString(int index) throws NavExceptionHuge {
+		return vn.toString(index);
+	}
+
+	@Override
+	public long getTokenOffset(int index) {
+		return vn.getTokenOffset(index);
+	}
+
+	@Override
+	public int getTokenLength(int index) {
+		return vn.getTokenLength(index);
+	}
+
+	@Override
+	public byte byteAt(long offset) {
+		return vn.getXML().byteAt(offset);
+	}
+
+	@Override
+	public byte[] getDocument() {
+		// Memory mapped, possibly beyond 2 GB
+		return null;
+	}
+
+	@Override
+	public boolean isUTF8() {
+		return vn.getEncoding() == VTDNavHuge.FORMAT_UTF8 || vn.getEncoding() == VTDNavHuge.FORMAT_ASCII;
+	}
+
+	@Override
+	public void push() {
+		vn.push();
+	}
+
+	@Override
+	public boolean pop() {
+		return vn.pop();
+	}
+
+	@Override
+	public int getCurrentIndex() {
+		return vn.getCurrentIndex();
+	}
+
+	@Override
+	public boolean isHuge() {
+		return true;
+	}
+
+	@Override
+	public boolean isIndexLoaded() {
+		return false;
+	}
+}
@@ -0,0 +1,258 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.utils;
+
+import com.ximpleware.extended.NavExceptionHuge;
+
+/**
+ * A fixed path of elements from the root of a document, like the XPath
+ * expression <code>/pnml/net/page/place</code>, compiled once into a plan of
+ * moves of an {@link XMLNav} from child to child. Each step may be filtered,
+ * which stands for an XPath predicate.
+ * <p>
+ * Plans are immutable and can be shared by threads. A plan is run over a
+ * navigator by a {@link Cursor}, which yields the selected elements in
+ * document order.
+ * </p>
+ */
+public final class NavPlan {
+
+	/**
+	 * A predicate on the element a navigator is on. It must leave the
+	 * navigator on that element.
+	 */
+	@FunctionalInterface
+	public interface Filter {
+		boolean accept(XMLNav vn) throws NavExceptionHuge;
+	}
+
+	private static final Filter ANY = vn -> true;
+
+	private final String[] steps;
+	private final Filter[] filters;
+
+	private NavPlan(String[] steps, Filter[] filters) {
+		this.steps = steps;
+		this.filters = filters;
+	}
+
+	/**
+	 * Returns the plan selecting the root element, if it has the given name.
+	 */
+	public static NavPlan root(String element) {
+		return new NavPlan(new String[] { element }, new Filter[] { ANY });
+	}
+
+	/**
+	 * Returns the plan selecting the children with the given name of the
+	 * elements this plan selects.
+	 */
+	public NavPlan child(String element) {
+		return child(element, ANY);
+	}
+
+	/**
+	 * Returns the plan selecting the children with the given name of the
+	 * elements this plan selects, that the filter accepts.
+	 */
+	public NavPlan child(String element, Filter filter) {
+		final int n = steps.length;
+		final String[] s = new String[n + 1];
+		final Filter[] f = new Filter[n + 1];
+		System.arraycopy(steps, 0, s, 0, n);
+		System.arraycopy(filters, 0, f, 0, n);
+		s[n] = element;
+		f[n] = filter;
+		return new NavPlan(s, f);
+	}
+
+	/**
+	 * Returns a new cursor running this plan over a navigator.
+	 */
+	public Cursor cursor(XMLNav vn) {
+		return new Cursor(vn);
+	}
+
+	/**
+	 * Counts the elements this plan selects, like the XPath <code>count</code>
+	 * function. The navigator is left where it was.
+	 */
+	public long count(XMLNav vn) throws NavExceptionHuge {
+		long nb = 0L;
+		vn.push();
+		final Cursor c = cursor(vn);
+		while (c.next() != -1) {
+			nb++;
+		}
+		vn.pop();
+		return nb;
+	}
+
+	/**
+	 * Accepts elements having a child with the given name: <code>[element]</code>.
+	 */
+	public static Filter hasChild(String element) {
+		return hasChild(element, ANY);
+	}
+
+	/**
+	 * Accepts elements having a child with the given name that the filter
+	 * accepts: <code>[element[filter]]</code>.
+	 */
+	public static Filter hasChild(String element, Filter filter) {
+		return vn -> {
+			boolean found = false;
+			if (vn.toElement(XMLNav.FIRST_CHILD, element)) {
+				do {
+					found = filter.accept(vn);
+				} while (!found && vn.toElement(XMLNav.NEXT_SIBLING, element));
+				vn.toElement(XMLNav.PARENT);
+			}
+			return found;
+		};
+	}
+
+	public static Filter not(Filter filter) {
+		return vn -> !filter.accept(vn);
+	}
+
+	public static Filter or(Filter left, Filter right) {
+		return vn -> left.accept(vn) || right.accept(vn);
+	}
+
+	/**
+	 * Accepts elements whose attribute has the given value: <code>[@attribute='value']</code>.
+	 */
+	public static Filter attributeEquals(String attribute, String value) {
+		return vn -> {
+			final int val = vn.getAttrVal(attribute);
+			return val != -1 && value.equals(vn.toString(val));
+		};
+	}
+
+	/**
+	 * Accepts elements whose text is a number greater than the bound:
+	 * <code>[. &gt; bound]</code>.
+	 */
+	public static Filter valueAbove(long bound) {
+		return vn -> getValue(vn) > bound;
+	}
+
+	/**
+	 * Accepts elements whose text is a number lower than or equal to the bound:
+	 * <code>[. &lt;= bound]</code>.
+	 */
+	public static Filter valueAtMost(long bound) {
+		return vn -> getValue(vn) <= bound;
+	}
+
+	/**
+	 * Returns the text of the current element as a number, NaN if it is not one,
+	 * as XPath compares it. Integers, by far the most frequent, are read in
+	 * place.
+	 */
+	private static double getValue(XMLNav vn) throws NavExceptionHuge {
+		final int text = vn.getText();
+		if (text == -1) {
+			return Double.NaN;
+		}
+		try {
+			return vn.parseLong(text);
+		} catch (NumberFormatException e) {
+			try {
+				return Double.parseDouble(vn.toString(text).trim());
+			} catch (NumberFormatException e1) {
+				return Double.NaN;
+			}
+		}
+	}
+
+	/**
+	 * Runs a plan over a navigator, moving it from one selected element to the
+	 * next. Between two moves, the navigator must be left on the element it
+	 * was moved to, e.g. with {@link XMLNav#push()} and {@link XMLNav#pop()}.
+	 * A cursor is not thread-safe, but can be {@link #reset()} to run its plan
+	 * again.
+	 */
+	public final class Cursor {
+		private static final int START = -1;
+		private static final int DONE = -2;
+
+		private final XMLNav vn;
+		/* Step of the element the navigator is on */
+		private int depth;
+
+		private Cursor(XMLNav vn) {
+			this.vn = vn;
+			this.depth = START;
+		}
+
+		/**
+		 * Moves the navigator to the next selected element.
+		 * 
+		 * @return the index of that element, or -1 when there are no more, the
+		 *         navigator then being on the root
+		 */
+		public int next() throws NavExceptionHuge {
+			final int last = steps.length - 1;
+			boolean descend;
+			if (depth == DONE) {
+				return -1;
+			}
+			if (depth == START) {
+				vn.toElement(XMLNav.ROOT);
+				depth = 0;
+				if (!vn.matchElement(steps[0]) || !filters[0].accept(vn)) {
+					depth = DONE;
+					return -1;
+				}
+				if (last == 0) {
+					return vn.getCurrentIndex();
+				}
+				descend = true;
+			} else {
+				descend = false;
+			}
+			while (true) {
+				if (descend) {
+					if (!vn.toElement(XMLNav.FIRST_CHILD, steps[depth + 1])) {
+						descend = false;
+						continue;
+					}
+					depth++;
+				} else if (depth == 0) {
+					depth = DONE;
+					return -1;
+				} else if (!vn.toElement(XMLNav.NEXT_SIBLING, steps[depth])) {
+					vn.toElement(XMLNav.PARENT);
+					depth--;
+					continue;
+				}
+				if (!filters[depth].accept(vn)) {
+					descend = false;
+				} else if (depth == last) {
+					return vn.getCurrentIndex();
+				} else {
+					descend = true;
+				}
+			}
+		}
+
+		/**
+		 * Makes the next move start again from the root.
+		 */
+		public void reset() {
+			depth = START;
+		}
+	}
+}
@@ -12,25 +12,29 @@
  */
 package fr.lip6.move.pnml2nupn.utils;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.activation.MimetypesFileTypeMap;
 import javax.xml.bind.ValidationException;
 
 import org.slf4j.Logger;
 
+import com.ximpleware.ParseException;
+import com.ximpleware.VTDGen;
 import com.ximpleware.extended.ParseExceptionHuge;
 import com.ximpleware.extended.VTDGenHuge;
 import com.ximpleware.extended.XMLMemMappedBuffer;
@@ -40,6 +44,9 @@ import fr.lip6.move.pnml2nupn.exceptions.InternalException;
 import fr.lip6.move.pnml2nupn.exceptions.InvalidFileException;
 import fr.lip6.move.pnml2nupn.exceptions.InvalidFileTypeException;
 import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import fr.lip6.move.pnml2nupn.export.impl.ByteRingBuffer;
+import fr.lip6.move.pnml2nupn.export.impl.ByteSpool;
+import fr.lip6.move.pnml2nupn.export.impl.CompressingChannel;
 import fr.lip6.move.pnml2nupn.export.impl.NUPNConstants;
 import fr.lip6.move.pnml2nupn.export.impl.NUPNWriter;
 import fr.lip6.move.pnml2nupn.export.impl.OutChannelBean;
@@ -58,22 +65,57 @@ public final class PNML2NUPNUtils {
 	private static final int BUFFERSIZEKB = 8;
 	private static final int CONTENTSSIZEKB = 6;
 	public static final int BUFFERSIZE = BUFFERSIZEKB * 1024;
+	/**
+	 * The standard VTD engine has 30-bit offsets.
+	 */
+	public static final long STANDARD_PARSER_MAX_SIZE = 1L << 30;
+	/**
+	 * Size of a PNML document from which it is parsed with the extended VTD
+	 * engine, by default.
+	 */
+	public static final long DEFAULT_HUGE_PARSER_THRESHOLD = 512L << 20;
 	public static final int CONTENTSSIZE = CONTENTSSIZEKB * 1024;
+	/* Each writer queue holds at most NB_SLABS * SLAB_SIZE bytes (1 MB) by default */
+	public static final int SLAB_SIZE = 64 * 1024;
+	public static final int NB_SLABS = 16;
+	public static final long DEFAULT_QUEUE_CAPACITY = (long) NB_SLABS * SLAB_SIZE;
+	/* Bounds of the number of slabs of a writer queue: 128 KB to 1 GB */
+	private static final int MIN_SLABS = 2;
+	private static final int MAX_SLABS = 16 * 1024;
 	public static final String FILE_ENCODING = "UTF-8";
 
 	private PNML2NUPNUtils() {
 		super();
 	}
 
-	public static OutChannelBean openOutChannel(File outFile) throws FileNotFoundException {
-		final FileOutputStream fos = new FileOutputStream(outFile);
+	/**
+	 * Opens an output channel into a file. If the file name ends with a
+	 * compression extension, the contents written into the channel are
+	 * compressed in that format.
+	 */
+	public static OutChannelBean openOutChannel(File outFile) throws IOException {
+		return openOutChannel(outFile, new FileOutputStream(outFile));
+	}
+
+	/**
+	 * Opens an output channel into a stream, such as the standard output or a
+	 * named pipe, the contents of which are named after a file.
+	 * 
+	 * @see #openOutChannel(File)
+	 */
+	public static OutChannelBean openOutChannel(File outFile, FileOutputStream fos) throws IOException {
 		final FileChannel fc = fos.getChannel();
-		OutChannelBean ocb = new OutChannelBean(fc, fos);
+		final Compression compression = Compression.of(outFile.getName());
+		if (compression != Compression.NONE) {
+			return new OutChannelBean(fc, fos, outFile, new CompressingChannel(compression.compress(fos)));
+		}
+		OutChannelBean ocb = new OutChannelBean(fc, fos, outFile);
 		return ocb;
 	}
 
 	public static void closeOutChannel(OutChannelBean ocb) throws IOException {
 		if (ocb != null) {
+			ocb.getChannel().close();
 			ocb.getFc().close();
 			ocb.getFos().close();
 		}
@@ -223,7 +265,7 @@ public final class PNML2NUPNUtils {
 			}
 			final MimetypesFileTypeMap ftm = new MimetypesFileTypeMap();
 			ftm.addMimeTypes("text/xml xml pnml XML PNML");
-			final String contentType = ftm.getContentType(pFile);
+			final String contentType = ftm.getContentType(Compression.strip(pFile.getName()));
 			if (!contentType.contains("text/xml")) {
 				String message = pFile.getName() + " is not an XML file: " + contentType;
 				throw new InvalidFileTypeException(message, new Throwable(message));
@@ -300,21 +342,53 @@ public final class PNML2NUPNUtils {
 	}
 	
 	/**
-	 * Initializes and returns and blocking queue.
+	 * Initializes and returns a bounded byte queue to a writer.
 	 * @return
 	 */
-	public static final BlockingQueue<String> initQueue() {
-		BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+	public static final ByteRingBuffer initQueue() {
+		ByteRingBuffer queue = new ByteRingBuffer(NB_SLABS, SLAB_SIZE);
 		return queue;
 	}
+
+	/**
+	 * Initializes and returns a writer queue holding at most about
+	 * <code>capacity</code> bytes, rounded down to whole slabs, between 128 KB
+	 * and 1 GB.
+	 */
+	public static final ByteRingBuffer initQueue(long capacity) {
+		final int nbSlabs = (int) Math.max(MIN_SLABS, Math.min(capacity / SLAB_SIZE, MAX_SLABS));
+		return new ByteRingBuffer(nbSlabs, SLAB_SIZE);
+	}
 	
+	/**
+	 * Initializes and returns an in-memory section, to be appended to an output
+	 * channel at the end.
+	 * @return
+	 */
+	public static final ByteSpool initSpool() {
+		return new ByteSpool(SLAB_SIZE);
+	}
+
+	/**
+	 * Releases in-memory sections in case of stop.
+	 * 
+	 * @param spools
+	 */
+	public static final void clearSpools(ByteSpool... spools) {
+		for (ByteSpool s : spools) {
+			if (s != null) {
+				s.clear();
+			}
+		}
+	}
+
 	/**
 	 * Creates and starts a new thread.
 	 * @param ocb
 	 * @param queue
 	 * @return the started thread
 	 */
-	public static final Thread startWriter(OutChannelBean ocb, BlockingQueue<String> queue) {
+	public static final Thread startWriter(OutChannelBean ocb, ByteRingBuffer queue) {
 		Thread t = new Thread(new NUPNWriter(ocb, queue));
 		t.start();
 		return t;
@@ -328,9 +402,8 @@ public final class PNML2NUPNUtils {
 	 * @param psQueue
 	 * @throws InterruptedException
 	 */
-	@SafeVarargs
-	public static final void cancelWriters(BlockingQueue<String>...queues) throws InterruptedException {
-		for (BlockingQueue<String> q: queues) {
+	public static final void cancelWriters(ByteRingBuffer...queues) throws InterruptedException {
+		for (ByteRingBuffer q: queues) {
 			PNML2NUPNUtils.cancelWriter(q);
 		}
 	}
@@ -341,9 +414,9 @@ public final class PNML2NUPNUtils {
 	 * @param queue
 	 * @throws InterruptedException
 	 */
-	public static final void cancelWriter(BlockingQueue<String> queue) throws InterruptedException {
+	public static final void cancelWriter(ByteRingBuffer queue) throws InterruptedException {
 		if (queue != null) {
-			queue.put(NUPNConstants.CANCEL);
+			queue.cancel();
 		}
 	}
 	/**
@@ -352,9 +425,8 @@ public final class PNML2NUPNUtils {
 	 * @param queues the set of queues to the writers
 	 * @throws InterruptedException
 	 */
-	@SafeVarargs
-	public static final void stopWriters(BlockingQueue<String>...queues) throws InterruptedException {
-		for (BlockingQueue<String> q : queues) {
+	public static final void stopWriters(ByteRingBuffer...queues) throws InterruptedException {
+		for (ByteRingBuffer q : queues) {
 			PNML2NUPNUtils.stopWriter(q);
 		}
 	}
@@ -365,32 +437,148 @@ public final class PNML2NUPNUtils {
 	 * @param queue
 	 * @throws InterruptedException
 	 */
-	public static final void stopWriter(BlockingQueue<String> queue) throws InterruptedException {
+	public static final void stopWriter(ByteRingBuffer queue) throws InterruptedException {
 		if (queue != null)
-			queue.put(NUPNConstants.STOP);
+			queue.stop();
 	}
 	
-	public static final void insertCreatorPragma(BlockingQueue<String> nupnQueue) throws InterruptedException {
+	/**
+	 * Waits for a writer to end, once its queue is stopped, and checks it wrote
+	 * all the contents put into its queue.
+	 * 
+	 * @param writer
+	 *            the thread started by {@link #startWriter(OutChannelBean, ByteRingBuffer)}
+	 * @param queue
+	 *            the queue to the writer
+	 * @throws InterruptedException
+	 * @throws PNMLImportExportException
+	 *             if the writer could not write into its channel
+	 */
+	public static final void joinWriter(Thread writer, ByteRingBuffer queue)
+			throws InterruptedException, PNMLImportExportException {
+		writer.join();
+		final IOException failure = queue.getFailure();
+		if (failure != null) {
+			throw new PNMLImportExportException("Could not write the NUPN contents: " + failure.getMessage(), failure);
+		}
+	}
+
+	public static final void insertCreatorPragma(ByteRingBuffer nupnQueue) throws InterruptedException {
 		insertPragma(MainPNML2NUPN.getPragmaCreator() + NUPNConstants.NL, nupnQueue);
 	}
 	
-	public static final void insertPragma(String pragma, BlockingQueue<String> nupnQueue) throws InterruptedException {
+	public static final void insertPragma(String pragma, ByteRingBuffer nupnQueue) throws InterruptedException {
 		nupnQueue.put(pragma);
 	}
 	
-	public static final VTDGenHuge openXMLStream(File inFile) throws PNMLImportExportException {
-		XMLMemMappedBuffer xb = new XMLMemMappedBuffer();
-		VTDGenHuge vg = new VTDGenHuge();
+	/**
+	 * Parses a PNML document with the standard VTD engine, from memory, if it is
+	 * smaller than {@link #DEFAULT_HUGE_PARSER_THRESHOLD}, or with the extended
+	 * engine, from a memory mapped file, otherwise.
+	 */
+	public static final XMLNav openXMLStream(File inFile) throws PNMLImportExportException {
+		return openXMLStream(inFile, DEFAULT_HUGE_PARSER_THRESHOLD);
+	}
+
+	/**
+	 * Parses a PNML document with the standard VTD engine, from memory, if it is
+	 * smaller than the threshold, or with the extended engine, from a memory
+	 * mapped file, otherwise. The standard engine is faster and its index is
+	 * smaller, but it cannot handle documents of 1 GB or more.
+	 * 
+	 * @param inFile
+	 *            the PNML document
+	 * @param hugeThreshold
+	 *            size in bytes from which the extended engine is used; it is
+	 *            always used if this is negative or 0
+	 */
+	public static final XMLNav openXMLStream(File inFile, long hugeThreshold) throws PNMLImportExportException {
+		return openXMLStream(inFile, hugeThreshold, 0L);
+	}
+
+	/**
+	 * Same as {@link #openXMLStream(File, long)}, except that the index built by
+	 * the standard engine is taken from the default {@link VTDIndexCache}, or
+	 * stored into it.
+	 * 
+	 * @param indexCacheSize
+	 *            size bound in bytes of the index cache, 0 meaning no cache
+	 */
+	public static final XMLNav openXMLStream(File inFile, long hugeThreshold, long indexCacheSize)
+			throws PNMLImportExportException {
+		final long standardMaxSize = Math.max(0L, Math.min(hugeThreshold, STANDARD_PARSER_MAX_SIZE));
+		final Compression compression = Compression.of(inFile.getName());
 		try {
-			xb.readFile(inFile.getCanonicalPath());
-			vg.setDoc(xb);
-			vg.parse(true);
-		} catch (ParseExceptionHuge | IOException e) {
+			if (compression != Compression.NONE) {
+				return openCompressedXMLStream(inFile, compression, standardMaxSize, indexCacheSize);
+			}
+			if (inFile.length() < standardMaxSize) {
+				final byte[] doc = Files.readAllBytes(inFile.toPath());
+				return parseStandard(inFile, doc, doc.length, indexCacheSize);
+			}
+			return parseHuge(inFile);
+		} catch (ParseException | ParseExceptionHuge | IOException e) {
 			throw new PNMLImportExportException(e);
 		}
-		return vg;
 	}
-	
+
+	private static XMLNav parseStandard(File inFile, byte[] doc, int length, long indexCacheSize)
+			throws IOException, ParseException {
+		if (indexCacheSize > 0L) {
+			return VTDIndexCache.getDefault().open(inFile, doc, length, indexCacheSize);
+		}
+		final VTDGen vg = new VTDGen();
+		vg.setDoc(doc, 0, length);
+		vg.parse(true);
+		return new StdXMLNav(vg.getNav(), false);
+	}
+
+	private static XMLNav parseHuge(File inFile) throws IOException, ParseExceptionHuge {
+		final XMLMemMappedBuffer xb = new XMLMemMappedBuffer();
+		final VTDGenHuge vg = new VTDGenHuge();
+		xb.readFile(inFile.getCanonicalPath());
+		vg.setDoc(xb);
+		vg.parse(true);
+		return new HugeXMLNav(vg.getNav());
+	}
+
+	/**
+	 * Decompresses a PNML document into memory, as long as it is smaller than
+	 * the maximum size for the standard engine. Beyond, the decompressed
+	 * document is spilled into a temporary file, which is memory mapped for the
+	 * extended engine, then deleted.
+	 */
+	private static XMLNav openCompressedXMLStream(File inFile, Compression compression, long standardMaxSize,
+			long indexCacheSize) throws IOException, ParseException, ParseExceptionHuge {
+		try (InputStream in = compression
+				.decompress(new BufferedInputStream(new FileInputStream(inFile), BUFFERSIZE))) {
+			byte[] doc = new byte[(int) Math.min(standardMaxSize, Math.max(BUFFERSIZE, inFile.length() * 4L))];
+			int length = 0;
+			for (int n = 0; n >= 0 && length < standardMaxSize; length += Math.max(n, 0)) {
+				if (length == doc.length) {
+					doc = Arrays.copyOf(doc, (int) Math.min(standardMaxSize, 2L * length));
+				}
+				n = in.read(doc, length, doc.length - length);
+			}
+			if (length < standardMaxSize) {
+				return parseStandard(inFile, doc, length, indexCacheSize);
+			}
+			final File spill = File.createTempFile(MainPNML2NUPN.PNML_EXT, MainPNML2NUPN.DOT + MainPNML2NUPN.PNML_EXT);
+			try {
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(spill), BUFFERSIZE)) {
+					out.write(doc, 0, length);
+					doc = null;
+					in.transferTo(out);
+				}
+				return parseHuge(spill);
+			} finally {
+				if (!spill.delete()) {
+					spill.deleteOnExit();
+				}
+			}
+		}
+	}
+
 	public static final void setMin(long newNb, LongArrayList minHolder) {
 		if (minHolder.isEmpty()) {
 			minHolder.add(newNb);
@@ -12,311 +12,174 @@
  */
 package fr.lip6.move.pnml2nupn.utils;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ExecutionException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 import org.slf4j.LoggerFactory;
 
-import fr.lip6.move.pnml.cpnami.cami.CamiFactory;
-import fr.lip6.move.pnml.cpnami.cami.Runner;
-import fr.lip6.move.pnml.cpnami.exceptions.CamiException;
-import fr.lip6.move.pnml2nupn.MainPNML2NUPN;
-import fr.lip6.move.pnml2nupn.exceptions.PNMLImportExportException;
+import com.ximpleware.extended.NavExceptionHuge;
 
+import fr.lip6.move.pnml2nupn.export.impl.PNMLScanner;
+import fr.lip6.move.pnml2nupn.jfr.BoundsEvent;
+import it.unimi.dsi.fastutil.ints.IntBigArrayBigList;
+import it.unimi.dsi.fastutil.longs.LongBigArrayBigList;
+
+/**
+ * Checks that a P/T net is 1-safe, using the structural bounds of its places
+ * (see {@link StructuralBounds}), computed from the net collected by a
+ * {@link PNMLScanner}.
+ * <p>
+ * Unsafe places are reported as <code>place [lower...upper]</code>, the upper
+ * bound being <code>oo</code> when the place is unbounded, or when it could not
+ * be computed.
+ * </p>
+ */
 public final class SafePNChecker {
 
 	private static final String SEP = ", ";
-	private static final String CAMI_EXT = ".cami";
-	private static final String PNML_EXT = ".pnml";
-	private static final String UNKNOWN_CAMI_COMMAND = "Unknown CAMI command";
-	private static final String JAVA_IO_TMPDIR = "java.io.tmpdir";
-	private static final String TMP_DIR = System.getProperty("user.dir") + "/tmp/";
-	private static final int ONE = 1;
-	private static final int ZERO = 0;
-	private static final String UNSAFE_PLACES_NB_REPORT = "unsafe.places.nb.report";
-	private static String P2C_OPT = "-p2c";
-	private static String BOUNDS = "bounds";
-	private static String EXE = ".exe";
-	private static String BOUNDS_INPACKAGE = "main/resources/bounds";
-	private static String BOUNDS_PATTERN = "(.*)\\s\\[(\\d+).{3}(\\d+|o{2})\\]$";
+	private static final String UNBOUNDED = "oo";
 
-	private String pnmlDocPath;
 	private StringBuffer explain;
-	private Timer timer;
-	private int boundsExitValue;
 	private org.slf4j.Logger log;
-	/*The bounds tool might not be able to compute the bounds: [Cannot compute the bound...Cannot compute the bound]*/
-	private static boolean inconclusive;
-
-	public SafePNChecker(String pnmlDocumentPath) {
-		this.setPnmlDocPath(pnmlDocumentPath);
-		boundsExitValue = -99;
-		initLog();
-	}
+	/* Some places could not be bounded, and no place was proven unsafe */
+	private boolean inconclusive;
 
 	public SafePNChecker() {
-		this.pnmlDocPath = null;
 		initLog();
 	}
-	
-	public String getPnmlDocPath() {
-		return pnmlDocPath;
-	}
-
-	public void setPnmlDocPath(String pnmlDocPath) {
-		this.pnmlDocPath = pnmlDocPath;
-	}
 
-	public boolean isNet1Safe() throws PNMLImportExportException {
-		boolean res = false;
-		if (pnmlDocPath != null) {
-			File camiFile = transformPnml2Cami();
-			File tmpBoundFile = createJavaTmpBoundsFile();
-			try {
-				PNML2NUPNUtils.extractFile(BOUNDS_INPACKAGE, tmpBoundFile.getCanonicalPath());
-				tmpBoundFile.setExecutable(true);
-				res = checkNetIs1Safe(camiFile, tmpBoundFile);
-
-			} catch (IOException | ExecutionException e) {
-				throw new PNMLImportExportException(e.getMessage(), e.getCause());
-			} finally {
-				deleteCamiFile(camiFile);
-				cleanTmp(tmpBoundFile);
+	/**
+	 * Checks the net collected by the scanner is 1-safe. A net is not 1-safe if
+	 * the structural bounds of one of its places is not within 0 and 1, or if one
+	 * of its places is structurally unbounded. If the upper bound of some places
+	 * could not be computed, and all the other ones are within 0 and 1, the
+	 * verdict is inconclusive: see {@link #isBoundsVerdictInconclusive()}.
+	 *
+	 * @param scanner
+	 *            the scanner, after it scanned the net
+	 * @param nbUnsafePlaces
+	 *            number of unsafe places to report, -1 meaning all of them
+	 * @param file
+	 *            the path of the PNML file, for the {@link BoundsEvent}
+	 * @return true if the net is proven 1-safe
+	 * @throws NavExceptionHuge
+	 */
+	public boolean isNet1Safe(PNMLScanner scanner, int nbUnsafePlaces, String file) throws NavExceptionHuge {
+		explain.setLength(0);
+		final BoundsEvent event = new BoundsEvent();
+		event.begin();
+		final long startTime = System.nanoTime();
+		log.info("Computing the structural bounds of places.");
+
+		final IntBigArrayBigList placeNodes = scanner.getPlaceNodes();
+		final IntBigArrayBigList trNodes = scanner.getTransitionNodes();
+		final int nbPl = (int) placeNodes.size64();
+		final int nbTr = (int) trNodes.size64();
+		final int[] plIndexes = indexes(placeNodes, scanner.getNbNodes());
+		final int[] trIndexes = indexes(trNodes, scanner.getNbNodes());
+
+		final StructuralBounds bounds = new StructuralBounds(nbPl, nbTr);
+		final IntBigArrayBigList markedPlaceNodes = scanner.getMarkedPlaceNodes();
+		final LongBigArrayBigList markings = scanner.getMarkings();
+		for (long i = 0L; i < markedPlaceNodes.size64(); i++) {
+			final int p = index(plIndexes, markedPlaceNodes.getInt(i));
+			if (p >= 0) {
+				bounds.setInitialMarking(p, markings.getLong(i));
 			}
 		}
-
-		return res;
-	}
-	
-	public String getExplanation() {
-		return explain.toString();
-	}
-	
-	public static boolean isBoundsVerdictInconclusive(){
-		return inconclusive;
-	}
-
-	private void initLog() {
-		log = LoggerFactory.getLogger(SafePNChecker.class.getCanonicalName());
-		explain = new StringBuffer();
-	}
-	
-	private void deleteCamiFile(File camiFile) {
-		if (MainPNML2NUPN.isCamiTmpDelete()) {
-			camiFile.delete();
-		}
-	}
-
-	private boolean checkNetIs1Safe(File camiFile, File tmpBoundFile) throws IOException, ExecutionException {
-		boolean totalRes = true, neverMatched = true;
-		boolean ligneRes;
-		List<String> command = new ArrayList<String>();
-		command.add(tmpBoundFile.getCanonicalPath());
-		command.add(camiFile.getCanonicalPath());
-		command.add("-i");
-		int nbUnsafePlaces = 0; // -1 means all unsafe places must be reported
-		String unsafeArcs = System.getProperty(UNSAFE_PLACES_NB_REPORT);
-		if (unsafeArcs != null) {
-			try {
-				nbUnsafePlaces = Integer.valueOf(unsafeArcs).intValue();
-			} catch (NumberFormatException e) {
-				log.error("Could not convert nb of unsafe places to report from the input string");
+		final IntBigArrayBigList arcSources = scanner.getArcSources();
+		final IntBigArrayBigList arcTargets = scanner.getArcTargets();
+		final LongBigArrayBigList inscriptions = scanner.getInscriptions();
+		int src, trg;
+		int p, t;
+		for (long i = 0L; i < scanner.getNbArcs(); i++) {
+			src = arcSources.getInt(i);
+			trg = arcTargets.getInt(i);
+			if ((p = index(plIndexes, src)) >= 0 && (t = index(trIndexes, trg)) >= 0) {
+				bounds.addArc(p, t, inscriptions.getLong(i), true);
+			} else if ((t = index(trIndexes, src)) >= 0 && (p = index(plIndexes, trg)) >= 0) {
+				bounds.addArc(p, t, inscriptions.getLong(i), false);
 			}
 		}
-		String line;
-		Matcher m;
-		long startTime = System.nanoTime();
-		log.info("Launching the Bounds tool.");
-		ProcessBuilder pb = new ProcessBuilder(command);
-		Process pr = pb.start();
-		InputStream stdOut = pr.getInputStream();
-		BufferedReader br = new BufferedReader(new InputStreamReader(new BufferedInputStream(stdOut)));
-		Pattern p = Pattern.compile(BOUNDS_PATTERN);
-		line = br.readLine();
-		if (line != null && UNKNOWN_CAMI_COMMAND.equalsIgnoreCase(line)) {
-			totalRes = false;
-		} else if (line != null) {
-			do {
-				m = p.matcher(line);
-				if (m.matches()) {
-					ligneRes = (checkBoundIsZeroOrOne(m.group(2)) && checkBoundIsZeroOrOne(m.group(3)));
-					totalRes &= ligneRes;
-					if (!ligneRes) {
-						if (nbUnsafePlaces > 0) {
-							explain.append(line).append(SEP);
-							nbUnsafePlaces--;
-						} else if (nbUnsafePlaces == -1) {
-							explain.append(line).append(SEP);
-						}
-					}
-					neverMatched = false;
+		bounds.compute();
+
+		int nbReported = 0;
+		boolean totalRes = true;
+		int nbUnknown = 0;
+		long lower, upper;
+		for (p = 0; p < nbPl; p++) {
+			lower = bounds.getLowerBound(p);
+			upper = bounds.getUpperBound(p);
+			if (upper == StructuralBounds.UNKNOWN) {
+				nbUnknown++;
+				if (lower <= 1L) {
+					continue;
 				}
-			} while ((line = br.readLine()) != null);
-		}
-		br.close();
-		try {
-			// wait for finishing bounds executable during a determined amount
-			// of time.
-			boundsExitValue = pr.waitFor();
-			long endTime = System.nanoTime();
-			log.info("The Bounds tool took {} seconds to perform the check.", (endTime - startTime) / 1.0e9);
-		} catch (InterruptedException e) {
+			} else if (upper != StructuralBounds.UNBOUNDED && upper <= 1L) {
+				continue;
+			}
 			totalRes = false;
-			throw new ExecutionException("Interrupted while waiting for the Bounds tool to complete", e.getCause());
+			if (nbUnsafePlaces == -1 || nbReported < nbUnsafePlaces) {
+				explain.append(scanner.getId(placeNodes.getInt(p))).append(" [").append(lower).append("...")
+						.append(upper < 0L ? UNBOUNDED : String.valueOf(upper)).append(']')
+						.append(SEP);
+				nbReported++;
+			}
 		}
 		if (explain.length() != 0) {
-			explain.delete(explain.length() - 2, explain.length());
+			explain.delete(explain.length() - SEP.length(), explain.length());
 		}
-		if (neverMatched) {
-			inconclusive = true;
+		inconclusive = totalRes && (nbUnknown > 0 || nbPl == 0);
+		if (inconclusive) {
+			log.warn("Could not compute the upper bound of {} places ({} parts of the net given up).", nbUnknown,
+					bounds.getNbGivenUpParts());
 			totalRes = false;
-		} else {
-			inconclusive = false;
 		}
-		return totalRes;
-	}
-
-	class StopWaitingTask extends TimerTask {
-		Thread parent;
-
-		public StopWaitingTask(Thread launcher) {
-			parent = launcher;
-		}
-
-		@Override
-		public void run() {
-			if (boundsExitValue == -99) {
-				timer.cancel();
-				parent.interrupt();
-			}
-		}
-	}
-
-	private boolean checkBoundIsZeroOrOne(String bound) {
-		return checkBoundIsZero(bound) || checkBoundIsOne(bound);
-	}
-
-	private boolean checkBoundIsZero(String bound) {
-		try {
-			int val = Integer.valueOf(bound).intValue();
-			return val == ZERO;
-		} catch (NumberFormatException e) {
-			if (MainPNML2NUPN.isDebug())
-				log.warn("While checking a bound is equal to 0: could not convert bound string {} to a number.", bound);
-			return false;
-		}
-	}
-
-	private boolean checkBoundIsOne(String bound) {
-		try {
-			int val = Integer.valueOf(bound).intValue();
-			return val == ONE;
-		} catch (NumberFormatException e) {
-			if (MainPNML2NUPN.isDebug())
-				log.warn("While checking a bound is equal to 1: could not convert bound string {} to a number.", bound);
-			return false;
+		log.info("Structural bounds of places computed in {} seconds.", (System.nanoTime() - startTime) / 1.0e9);
+		event.end();
+		if (event.shouldCommit()) {
+			event.file = file;
+			event.places = nbPl;
+			event.transitions = nbTr;
+			event.arcs = scanner.getNbArcs();
+			event.verdict = totalRes ? "safe" : inconclusive ? "inconclusive" : "unsafe";
+			event.unknownBounds = nbUnknown;
+			event.givenUpParts = bounds.getNbGivenUpParts();
+			event.commit();
 		}
+		return totalRes;
 	}
 
-	private File createJavaTmpBoundsFile() {
-		File tmpExeFile = null;
-		boolean successful = true;
-		String tmp = System.getProperty(JAVA_IO_TMPDIR);
-		if (tmp != null) {
-			try {
-				tmpExeFile = File.createTempFile(BOUNDS, EXE);
-			} catch (IOException e) {
-				successful = false;
-				e.printStackTrace();
-			}
-
-		} else { // default behaviour, will work on Linux and Mac only.
-			tmp = TMP_DIR;
-
-			successful = false;
-		}
-		if (!successful) {
-			File tmpDir = new File(tmp);
-			if (!tmpDir.exists()) {
-				tmpDir.mkdir();
-			}
-			tmpExeFile = new File(tmp + BOUNDS);
-		}
-
-		return tmpExeFile;
+	public String getExplanation() {
+		return explain.toString();
 	}
 
-	@SuppressWarnings("unused")
-	private File createSysTmpBoundsFile() {
-		// default behaviour, will work on Linux and Mac.
-		File dir = new File(TMP_DIR);
-		if (!dir.exists()) {
-			dir.mkdir();
-		}
-		File tmpExeFile = new File(TMP_DIR + BOUNDS + EXE);
-		return tmpExeFile;
+	public boolean isBoundsVerdictInconclusive() {
+		return inconclusive;
 	}
 
-	private void cleanTmp(File f) {
-		f.delete();
-		File tmpDir = new File(TMP_DIR);
-		if (tmpDir.exists()) {
-			tmpDir.delete();
-		}
+	private void initLog() {
+		log = LoggerFactory.getLogger(SafePNChecker.class.getCanonicalName());
+		explain = new StringBuffer();
 	}
 
 	/**
-	 * Translates PNML P/T document into Cami The path to the PNML document must
-	 * be set with {@link #setPnmlDocPath(String)}, or passed to the
-	 * constructor.
-	 * 
-	 * @throws PNMLImportExportException
-	 * 
+	 * Returns the index of each node in the given list, -1 for the nodes not in
+	 * it. A node listed several times keeps the index of its last occurrence.
 	 */
-	private File transformPnml2Cami() throws PNMLImportExportException {
-		String[] arg = new String[] { P2C_OPT, pnmlDocPath };
-
-		final Runner camiRunner = CamiFactory.SINSTANCE.createRunner();
-		try {
-			camiRunner.run(arg);
-			// successful get the path to cami file
-			int pnmlLI = pnmlDocPath.lastIndexOf(PNML_EXT);
-			String camiFilePath = pnmlDocPath.substring(0, pnmlLI) + CAMI_EXT;
-			File camiFile = new File(camiFilePath);
-			if (!camiFile.exists()) {
-				throw new CamiException("Transformation to Cami finished, but Cami file does not exist: "
-						+ camiFile.getCanonicalPath());
+	private static int[] indexes(IntBigArrayBigList nodes, int nbNodes) {
+		final int[] res = new int[nbNodes];
+		Arrays.fill(res, -1);
+		int node;
+		for (int i = 0; i < nodes.size64(); i++) {
+			node = nodes.getInt(i);
+			if (node != -1) {
+				res[node] = i;
 			}
-			return camiFile;
-		} catch (CamiException | IOException e) {
-			throw new PNMLImportExportException(e.getMessage(), e.getCause());
 		}
+		return res;
 	}
 
-	public static void main(String[] args) {
-		// PNML2BPNUtils.extractFile("main/resources/bounds",
-		// "resources/bounds");
-		Pattern p = Pattern.compile(BOUNDS_PATTERN);
-		Matcher m = p.matcher(args[0] + " " + args[1]);
-		System.out.println(args[0] + " " + args[1]);
-		boolean b = m.matches();
-		if (b) {
-			System.out.println("Matches!");
-			System.out.println(m.group(2) + "..." + m.group(3));
-		} else {
-			System.out.println("Does not match!");
-		}
+	private static int index(int[] indexes, int node) {
+		return node == -1 ? -1 : indexes[node];
 	}
-
 }
@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.utils;
+
+import com.ximpleware.NavException;
+import com.ximpleware.VTDNav;
+import com.ximpleware.extended.NavExceptionHuge;
+
+/**
+ * Navigation in an index built by the standard VTD engine, over a document
+ * held in memory. The exceptions of the standard engine are translated into
+ * those of the extended one.
+ */
+final class StdXMLNav implements XMLNav {
+
+	private final VTDNav vn;
+	private final boolean indexLoaded;
+
+	StdXMLNav(VTDNav vn, boolean indexLoaded) {
+		this.vn = vn;
+		this.indexLoaded = indexLoaded;
+	}
+
+	@Override
+	public boolean toElement(int direction) throws NavExceptionHuge {
+		try {
+			return vn.toElement(direction);
+		} catch (NavException e) {
+			throw new NavExceptionHuge(e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean toElement(int direction, String element) throws NavExceptionHuge {
+		try {
+			return vn.toElement(direction, element);
+		} catch (NavException e) {
+			throw new NavExceptionHuge(e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean matchElement(String element) throws NavExceptionHuge {
+		try {
+			return vn.matchElement(element);
+		} catch (NavException e) {
+			throw new NavExceptionHuge(e.getMessage());
+		}
+	}
+
+	@Override
+	public int getAttrVal(String attribute) throws NavExceptionHuge {
+		try {
+			return vn.getAttrVal(attribute);
+		} catch (NavException e) {
+			throw new NavExceptionHuge(e.getMessage());
+		}
+	}
+
+	@Override
+	public int getText() {
+		return vn.getText();
+	}
+
+	@Override
+	public String toString(int index) throws NavExceptionHuge {
+		try {
+			return vn.toString(index);
+		} catch (NavException e) {
+			throw new NavExceptionHuge(e.getMessage());
+		}
+	}
+
+	@Override
+	public long getTokenOffset(int index) {
+		return vn.getTokenOffset(index);
+	}
+
+	@Override
+	public int getTokenLength(int index) {
+		return vn.getTokenLength(index);
+	}
+
+	@Override
+	public byte byteAt(long offset) {
+		return vn.getXML().byteAt((int) offset);
+	}
+
+	@Override
+	public byte[] getDocument() {
+		return vn.getXML().getBytes();
+	}
+
+	@Override
+	public boolean isUTF8() {
+		return vn.getEncoding() == VTDNav.FORMAT_UTF8 || vn.getEncoding() == VTDNav.FORMAT_ASCII;
+	}
+
+	@Override
+	public void push() {
+		vn.push();
+	}
+
+	@Override
+	public boolean pop() {
+		return vn.pop();
+	}
+
+	@Override
+	public int getCurrentIndex() {
+		return vn.getCurrentIndex();
+	}
+
+	@Override
+	public boolean isHuge() {
+		return false;
+	}
+
+	@Override
+	public boolean isIndexLoaded() {
+		return indexLoaded;
+	}
+}
@@ -0,0 +1,686 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ * 							CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.utils;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongHeapPriorityQueue;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+/**
+ * Structural bounds of the places of a P/T net, computed from its positive
+ * place invariants (P-semiflows).
+ * <p>
+ * For a semiflow <code>y</code>, <code>y.M = y.M0</code> in every reachable
+ * marking <code>M</code>, hence <code>M(p) &lt;= y.M0 / y(p)</code> for every
+ * place <code>p</code> of its support. Semiflows are computed with the Farkas
+ * algorithm, separately on each connected part of the net. A part whose
+ * computation would exceed {@link #MAX_ROWS} rows in a single step is given up.
+ * </p>
+ * <p>
+ * A place that no transition can increase is bounded by its initial marking. A
+ * transition consuming from such a place can only fire a bounded number of
+ * times, which bounds the places that only such transitions increase.
+ * </p>
+ * <p>
+ * A place is {@link #UNBOUNDED} if a transition that can fire again and again
+ * from the initial marking increases it. Such transitions are those whose input
+ * places are all marked enough and not decreased by them, then those whose
+ * other input places are already proven unbounded. The other places without a
+ * bound keep an {@link #UNKNOWN} upper bound.
+ * </p>
+ * Lower bounds are derived from the same semiflows and from the places that no
+ * transition can decrease.
+ */
+public final class StructuralBounds {
+
+	public static final long UNKNOWN = -1L;
+	public static final long UNBOUNDED = -2L;
+	/* Limit of the Farkas algorithm on one connected part of the net */
+	private static final int MAX_ROWS = 100_000;
+
+	private final int nbPlaces;
+	private final int nbTransitions;
+	private final long[] initialMarking;
+	/* Incidence C(p, t), keyed by p << 32 | t */
+	private final Long2LongOpenHashMap incidence;
+	/* Weight of the arcs from p to t, read arcs included, keyed by p << 32 | t */
+	private final Long2LongOpenHashMap preset;
+
+	private long[] upper;
+	private long[] lower;
+	private int nbGivenUpParts;
+
+	public StructuralBounds(int nbPlaces, int nbTransitions) {
+		this.nbPlaces = nbPlaces;
+		this.nbTransitions = nbTransitions;
+		this.initialMarking = new long[nbPlaces];
+		this.incidence = new Long2LongOpenHashMap();
+		this.preset = new Long2LongOpenHashMap();
+	}
+
+	public void setInitialMarking(int place, long tokens) {
+		initialMarking[place] = tokens;
+	}
+
+	/**
+	 * Records an arc between a place and a transition.
+	 *
+	 * @param place
+	 *            the place index
+	 * @param transition
+	 *            the transition index
+	 * @param weight
+	 *            the arc inscription
+	 * @param toTransition
+	 *            true if the arc goes from the place to the transition
+	 */
+	public void addArc(int place, int transition, long weight, boolean toTransition) {
+		final long key = ((long) place << 32) | transition;
+		incidence.addTo(key, toTransition ? -weight : weight);
+		if (toTransition) {
+			preset.addTo(key, weight);
+		}
+	}
+
+	/**
+	 * Computes the bounds of all places.
+	 */
+	public void compute() {
+		upper = new long[nbPlaces];
+		lower = new long[nbPlaces];
+		Arrays.fill(upper, UNKNOWN);
+		nbGivenUpParts = 0;
+
+		// Non-zero incidence, grouped by place and by transition
+		final int[][] plTr = new int[nbPlaces][];
+		final long[][] plVal = new long[nbPlaces][];
+		final int[][] trPl = new int[nbTransitions][];
+		groupIncidence(plTr, plVal, trPl);
+
+		// Places no transition can increase (resp. decrease)
+		for (int p = 0; p < nbPlaces; p++) {
+			boolean neverIncreased = true, neverDecreased = true;
+			for (long c : plVal[p]) {
+				neverIncreased &= c <= 0L;
+				neverDecreased &= c >= 0L;
+			}
+			if (neverIncreased) {
+				upper[p] = initialMarking[p];
+			}
+			if (neverDecreased) {
+				lower[p] = initialMarking[p];
+			}
+		}
+		boundByFirings(plTr, plVal);
+
+		// Connected parts, through the transitions
+		final int[] parent = new int[nbPlaces];
+		for (int p = 0; p < nbPlaces; p++) {
+			parent[p] = p;
+		}
+		for (int t = 0; t < nbTransitions; t++) {
+			for (int i = 1; i < trPl[t].length; i++) {
+				union(parent, trPl[t][0], trPl[t][i]);
+			}
+		}
+		final int[] partSize = new int[nbPlaces];
+		for (int p = 0; p < nbPlaces; p++) {
+			partSize[find(parent, p)]++;
+		}
+		final int[][] parts = new int[nbPlaces][];
+		final int[] fill = new int[nbPlaces];
+		for (int p = 0; p < nbPlaces; p++) {
+			final int r = find(parent, p);
+			if (parts[r] == null) {
+				parts[r] = new int[partSize[r]];
+			}
+			parts[r][fill[r]++] = p;
+		}
+
+		final ObjectArrayList<Row> semiflows = new ObjectArrayList<>();
+		for (int r = 0; r < nbPlaces; r++) {
+			if (parts[r] == null) {
+				continue;
+			}
+			final ObjectArrayList<Row> partSemiflows = computeSemiflows(parts[r], plTr, plVal, trPl);
+			if (partSemiflows == null) {
+				nbGivenUpParts++;
+			} else {
+				semiflows.addAll(partSemiflows);
+			}
+		}
+
+		for (Row y : semiflows) {
+			updateUpperBounds(y);
+		}
+		markUnbounded(plTr, plVal, trPl);
+		for (Row y : semiflows) {
+			updateLowerBounds(y);
+		}
+	}
+
+	private void groupIncidence(int[][] plTr, long[][] plVal, int[][] trPl) {
+		final int[] plDeg = new int[nbPlaces];
+		final int[] trDeg = new int[nbTransitions];
+		for (Long2LongMap.Entry e : incidence.long2LongEntrySet()) {
+			if (e.getLongValue() != 0L) {
+				plDeg[(int) (e.getLongKey() >>> 32)]++;
+				trDeg[(int) e.getLongKey()]++;
+			}
+		}
+		for (int p = 0; p < nbPlaces; p++) {
+			plTr[p] = new int[plDeg[p]];
+			plVal[p] = new long[plDeg[p]];
+			plDeg[p] = 0;
+		}
+		for (int t = 0; t < nbTransitions; t++) {
+			trPl[t] = new int[trDeg[t]];
+			trDeg[t] = 0;
+		}
+		// Keys sorted so that the transitions of each place are sorted
+		final long[] keys = incidence.keySet().toLongArray();
+		Arrays.sort(keys);
+		long c;
+		int p, t;
+		for (long k : keys) {
+			c = incidence.get(k);
+			if (c != 0L) {
+				p = (int) (k >>> 32);
+				t = (int) k;
+				plTr[p][plDeg[p]] = t;
+				plVal[p][plDeg[p]++] = c;
+				trPl[t][trDeg[t]++] = p;
+			}
+		}
+	}
+
+	/**
+	 * Bounds the places that are only increased by transitions consuming from a
+	 * place no transition increases. Must run when the only known upper bounds are
+	 * those of such places.
+	 */
+	private void boundByFirings(int[][] plTr, long[][] plVal) {
+		final long[] maxFirings = new long[nbTransitions];
+		Arrays.fill(maxFirings, UNKNOWN);
+		for (int p = 0; p < nbPlaces; p++) {
+			if (upper[p] == UNKNOWN) {
+				continue;
+			}
+			for (int i = 0; i < plTr[p].length; i++) {
+				final int t = plTr[p][i];
+				final long f = initialMarking[p] / -plVal[p][i];
+				if (maxFirings[t] == UNKNOWN || f < maxFirings[t]) {
+					maxFirings[t] = f;
+				}
+			}
+		}
+		final long[] bounds = new long[nbPlaces];
+		for (int p = 0; p < nbPlaces; p++) {
+			bounds[p] = upper[p];
+			if (upper[p] != UNKNOWN) {
+				continue;
+			}
+			long b = initialMarking[p];
+			try {
+				for (int i = 0; i < plTr[p].length && b != UNKNOWN; i++) {
+					if (plVal[p][i] > 0L) {
+						final long f = maxFirings[plTr[p][i]];
+						b = f == UNKNOWN ? UNKNOWN : Math.addExact(b, Math.multiplyExact(plVal[p][i], f));
+					}
+				}
+			} catch (ArithmeticException e) {
+				b = UNKNOWN;
+			}
+			bounds[p] = b;
+		}
+		upper = bounds;
+	}
+
+	/**
+	 * Marks as unbounded the places still without an upper bound that a
+	 * transition able to fire forever increases. A transition fires forever once
+	 * each of its input places is either unbounded, or marked enough initially and
+	 * not decreased by it: the marking then never goes below the initial one
+	 * outside the unbounded places, which the previous transitions feed.
+	 */
+	private void markUnbounded(int[][] plTr, long[][] plVal, int[][] trPl) {
+		// Input places that prevent each transition from firing forever, until unbounded
+		final int[] blocking = new int[nbTransitions];
+		final int[] nbBlocked = new int[nbPlaces];
+		final long[] keys = preset.keySet().toLongArray();
+		int p, t;
+		for (int k = 0; k < keys.length; k++) {
+			p = (int) (keys[k] >>> 32);
+			if (incidence.get(keys[k]) < 0L || preset.get(keys[k]) > initialMarking[p]) {
+				blocking[(int) keys[k]]++;
+				nbBlocked[p]++;
+			} else {
+				keys[k] = -1L;
+			}
+		}
+		final int[][] blocked = new int[nbPlaces][];
+		for (p = 0; p < nbPlaces; p++) {
+			blocked[p] = new int[nbBlocked[p]];
+			nbBlocked[p] = 0;
+		}
+		for (long k : keys) {
+			if (k != -1L) {
+				p = (int) (k >>> 32);
+				blocked[p][nbBlocked[p]++] = (int) k;
+			}
+		}
+
+		final boolean[] unbounded = new boolean[nbPlaces];
+		final IntArrayList ready = new IntArrayList();
+		for (t = 0; t < nbTransitions; t++) {
+			if (blocking[t] == 0) {
+				ready.add(t);
+			}
+		}
+		while (!ready.isEmpty()) {
+			t = ready.popInt();
+			for (int q : trPl[t]) {
+				if (unbounded[q] || plVal[q][Arrays.binarySearch(plTr[q], t)] < 0L) {
+					continue;
+				}
+				unbounded[q] = true;
+				for (int u : blocked[q]) {
+					if (--blocking[u] == 0) {
+						ready.add(u);
+					}
+				}
+			}
+		}
+		for (p = 0; p < nbPlaces; p++) {
+			if (unbounded[p] && upper[p] == UNKNOWN) {
+				upper[p] = UNBOUNDED;
+			}
+		}
+	}
+
+	/**
+	 * Farkas algorithm on a connected part of the net.
+	 *
+	 * @return the semiflows of this part, or null if given up
+	 */
+	private ObjectArrayList<Row> computeSemiflows(int[] places, int[][] plTr, long[][] plVal, int[][] trPl) {
+		// Transitions of this part, and the rows having a non-zero value for them
+		final ObjectArrayList<Row> rows = new ObjectArrayList<>(places.length);
+		final ColumnIndex byTransition = new ColumnIndex();
+		for (int p : places) {
+			final Row r = new Row(new int[] { p }, new long[] { 1L }, plTr[p].clone(), plVal[p].clone());
+			rows.add(r);
+			byTransition.add(r);
+		}
+		int alive = rows.size();
+		final LongHeapPriorityQueue columns = new LongHeapPriorityQueue();
+		for (int t : byTransition.keys()) {
+			columns.enqueue(byTransition.entry(t));
+		}
+		try {
+			while (!columns.isEmpty()) {
+				final long entry = columns.dequeueLong();
+				final int t = (int) entry;
+				if (byTransition.isDone(t) || byTransition.entry(t) != entry) {
+					// stale entry, a fresher one was queued
+					continue;
+				}
+				final ObjectArrayList<Row> pos = new ObjectArrayList<>();
+				final ObjectArrayList<Row> neg = new ObjectArrayList<>();
+				byTransition.split(t, pos, neg);
+				if (alive - pos.size() - neg.size() + (long) pos.size() * neg.size() > MAX_ROWS) {
+					return null;
+				}
+				final ObjectOpenHashSet<Row> created = new ObjectOpenHashSet<>();
+				for (Row a : pos) {
+					final long ca = a.valueAt(t);
+					for (Row b : neg) {
+						final long cb = -b.valueAt(t);
+						created.add(Row.combine(a, cb, b, ca, t));
+					}
+				}
+				for (Row r : pos) {
+					r.alive = false;
+				}
+				for (Row r : neg) {
+					r.alive = false;
+				}
+				alive += created.size() - pos.size() - neg.size();
+				byTransition.markDone(t);
+				final int[] touched = byTransition.removeAll(pos, neg);
+				for (Row r : created) {
+					rows.add(r);
+					byTransition.add(r);
+				}
+				for (int u : touched) {
+					if (!byTransition.isDone(u)) {
+						columns.enqueue(byTransition.entry(u));
+					}
+				}
+				for (Row r : created) {
+					for (int u : r.tr) {
+						columns.enqueue(byTransition.entry(u));
+					}
+				}
+			}
+		} catch (ArithmeticException e) {
+			// coefficients overflow
+			return null;
+		}
+		final ObjectArrayList<Row> semiflows = new ObjectArrayList<>(alive);
+		for (Row r : rows) {
+			if (r.alive) {
+				semiflows.add(r);
+			}
+		}
+		return semiflows;
+	}
+
+	private void updateUpperBounds(Row y) {
+		final long k = weightedMarking(y);
+		if (k < 0L) {
+			return;
+		}
+		for (int i = 0; i < y.pl.length; i++) {
+			final long b = k / y.pc[i];
+			final int p = y.pl[i];
+			if (upper[p] == UNKNOWN || b < upper[p]) {
+				upper[p] = b;
+			}
+		}
+	}
+
+	private void updateLowerBounds(Row y) {
+		final long k = weightedMarking(y);
+		if (k < 0L) {
+			return;
+		}
+		long maxOthers = 0L;
+		try {
+			for (int i = 0; i < y.pl.length; i++) {
+				if (upper[y.pl[i]] < 0L) {
+					return;
+				}
+				maxOthers = Math.addExact(maxOthers, Math.multiplyExact(y.pc[i], upper[y.pl[i]]));
+			}
+		} catch (ArithmeticException e) {
+			return;
+		}
+		for (int i = 0; i < y.pl.length; i++) {
+			final int p = y.pl[i];
+			// y(p).M(p) = k - sum of the others >= k - (maxOthers - y(p).upper(p))
+			final long rest = k - (maxOthers - y.pc[i] * upper[p]);
+			if (rest > 0L) {
+				final long b = (rest + y.pc[i] - 1L) / y.pc[i];
+				if (b > lower[p]) {
+					lower[p] = b;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns y.M0, or -1 on overflow.
+	 */
+	private long weightedMarking(Row y) {
+		long k = 0L;
+		try {
+			for (int i = 0; i < y.pl.length; i++) {
+				k = Math.addExact(k, Math.multiplyExact(y.pc[i], initialMarking[y.pl[i]]));
+			}
+		} catch (ArithmeticException e) {
+			return -1L;
+		}
+		return k;
+	}
+
+	/**
+	 * Returns the upper bound of a place, {@link #UNBOUNDED} or {@link #UNKNOWN}.
+	 */
+	public long getUpperBound(int place) {
+		return upper[place];
+	}
+
+	public long getLowerBound(int place) {
+		return lower[place];
+	}
+
+	/**
+	 * Returns the number of connected parts of the net on which the computation
+	 * was given up.
+	 */
+	public int getNbGivenUpParts() {
+		return nbGivenUpParts;
+	}
+
+	private static int find(int[] parent, int p) {
+		int r = p;
+		while (parent[r] != r) {
+			r = parent[r];
+		}
+		while (parent[p] != r) {
+			final int next = parent[p];
+			parent[p] = r;
+			p = next;
+		}
+		return r;
+	}
+
+	private static void union(int[] parent, int p, int q) {
+		final int rp = find(parent, p), rq = find(parent, q);
+		if (rp != rq) {
+			parent[rp] = rq;
+		}
+	}
+
+	/**
+	 * A row of the Farkas algorithm: a combination of places (sorted place
+	 * indexes and their positive coefficients) and the corresponding combination
+	 * of incidence rows (sorted transition indexes and their non-zero values).
+	 */
+	private static final class Row {
+		final int[] pl;
+		final long[] pc;
+		final int[] tr;
+		final long[] tc;
+		boolean alive = true;
+
+		Row(int[] pl, long[] pc, int[] tr, long[] tc) {
+			this.pl = pl;
+			this.pc = pc;
+			this.tr = tr;
+			this.tc = tc;
+		}
+
+		long valueAt(int t) {
+			final int i = Arrays.binarySearch(tr, t);
+			return i < 0 ? 0L : tc[i];
+		}
+
+		/**
+		 * Returns ca.a + cb.b, whose value for transition t is zero, divided by the
+		 * gcd of its coefficients.
+		 */
+		static Row combine(Row a, long ca, Row b, long cb, int t) {
+			final long[][] plc = merge(a.pl, a.pc, ca, b.pl, b.pc, cb, -1);
+			final long[][] trc = merge(a.tr, a.tc, ca, b.tr, b.tc, cb, t);
+			long g = 0L;
+			for (long v : plc[1]) {
+				g = gcd(g, v);
+			}
+			for (long v : trc[1]) {
+				g = gcd(g, v);
+			}
+			final int[] pl = toInts(plc[0]);
+			final int[] tr = toInts(trc[0]);
+			if (g > 1L) {
+				for (int i = 0; i < plc[1].length; i++) {
+					plc[1][i] /= g;
+				}
+				for (int i = 0; i < trc[1].length; i++) {
+					trc[1][i] /= g;
+				}
+			}
+			return new Row(pl, plc[1], tr, trc[1]);
+		}
+
+		private static long[][] merge(int[] ia, long[] va, long ca, int[] ib, long[] vb, long cb, int skip) {
+			final long[] idx = new long[ia.length + ib.length];
+			final long[] val = new long[ia.length + ib.length];
+			int i = 0, j = 0, n = 0;
+			long v;
+			int k;
+			while (i < ia.length || j < ib.length) {
+				if (j >= ib.length || (i < ia.length && ia[i] < ib[j])) {
+					k = ia[i];
+					v = Math.multiplyExact(ca, va[i++]);
+				} else if (i >= ia.length || ib[j] < ia[i]) {
+					k = ib[j];
+					v = Math.multiplyExact(cb, vb[j++]);
+				} else {
+					k = ia[i];
+					v = Math.addExact(Math.multiplyExact(ca, va[i++]), Math.multiplyExact(cb, vb[j++]));
+				}
+				if (v != 0L && k != skip) {
+					idx[n] = k;
+					val[n++] = v;
+				}
+			}
+			return new long[][] { Arrays.copyOf(idx, n), Arrays.copyOf(val, n) };
+		}
+
+		private static int[] toInts(long[] l) {
+			final int[] res = new int[l.length];
+			for (int i = 0; i < l.length; i++) {
+				res[i] = (int) l[i];
+			}
+			return res;
+		}
+
+		private static long gcd(long a, long b) {
+			a = Math.abs(a);
+			b = Math.abs(b);
+			while (b != 0L) {
+				final long r = a % b;
+				a = b;
+				b = r;
+			}
+			return a;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Arrays.hashCode(pl) + Arrays.hashCode(pc);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Row)) {
+				return false;
+			}
+			final Row r = (Row) o;
+			return Arrays.equals(pl, r.pl) && Arrays.equals(pc, r.pc) && Arrays.equals(tr, r.tr)
+					&& Arrays.equals(tc, r.tc);
+		}
+	}
+
+	/**
+	 * For each transition not processed yet, the rows having a non-zero value
+	 * for it, and the number of those values that are positive and negative.
+	 */
+	private static final class ColumnIndex {
+		private final Int2ObjectOpenHashMap<ObjectArrayList<Row>> lists = new Int2ObjectOpenHashMap<>();
+		private final Int2LongOpenHashMap counts = new Int2LongOpenHashMap();
+		private final IntOpenHashSet done = new IntOpenHashSet();
+
+		void add(Row r) {
+			for (int i = 0; i < r.tr.length; i++) {
+				ObjectArrayList<Row> l = lists.get(r.tr[i]);
+				if (l == null) {
+					l = new ObjectArrayList<>();
+					lists.put(r.tr[i], l);
+				}
+				l.add(r);
+				counts.addTo(r.tr[i], r.tc[i] > 0L ? 1L << 32 : 1L);
+			}
+		}
+
+		int[] keys() {
+			return lists.keySet().toIntArray();
+		}
+
+		/**
+		 * Priority queue entry of a transition: the number of pairs its elimination
+		 * creates, then the transition.
+		 */
+		long entry(int t) {
+			final long c = counts.get(t);
+			final long pairs = Math.min((c >>> 32) * (c & 0xFFFFFFFFL), Integer.MAX_VALUE);
+			return (pairs << 32) | t;
+		}
+
+		void split(int t, ObjectArrayList<Row> pos, ObjectArrayList<Row> neg) {
+			for (Row r : lists.get(t)) {
+				if (r.alive) {
+					if (r.valueAt(t) > 0L) {
+						pos.add(r);
+					} else {
+						neg.add(r);
+					}
+				}
+			}
+		}
+
+		boolean isDone(int t) {
+			return done.contains(t);
+		}
+
+		void markDone(int t) {
+			done.add(t);
+			lists.remove(t);
+			counts.remove(t);
+		}
+
+		/**
+		 * Forgets the given (dead) rows, and returns the transitions whose counts
+		 * changed.
+		 */
+		int[] removeAll(ObjectArrayList<Row> pos, ObjectArrayList<Row> neg) {
+			final IntOpenHashSet touched = new IntOpenHashSet();
+			for (ObjectArrayList<Row> rows : Arrays.asList(pos, neg)) {
+				for (Row r : rows) {
+					for (int i = 0; i < r.tr.length; i++) {
+						final int u = r.tr[i];
+						if (!done.contains(u)) {
+							counts.addTo(u, r.tc[i] > 0L ? -(1L << 32) : -1L);
+							touched.add(u);
+						}
+					}
+				}
+			}
+			for (int u : touched) {
+				final ObjectArrayList<Row> l = lists.get(u);
+				l.removeIf(r -> !r.alive);
+			}
+			return touched.toIntArray();
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ximpleware.IndexReadException;
+import com.ximpleware.IndexWriteException;
+import com.ximpleware.ParseException;
+import com.ximpleware.VTDGen;
+import com.ximpleware.VTDNav;
+
+/**
+ * Directory of VTD indexes of PNML documents, so that converting the same
+ * document again loads its index instead of parsing it. An index is keyed by
+ * the path, size, modification time and CRC-32C of its document. It is stored
+ * in the VTD+XML format, i.e. with a copy of the document: vtd-xml 2.13 cannot
+ * reload the VTD records stored apart from the document. The least recently
+ * used indexes are evicted when the directory grows beyond its size bound.
+ * <p>
+ * The directory is <code>~/.pnml2nupn/index-cache</code>, unless set with the
+ * <code>index.cache.dir</code> system property. Only the standard VTD engine
+ * can reload an index, so only documents it parses are cached.
+ * </p>
+ * The cache is only an optimisation: a directory that cannot be written is
+ * reported as a warning, and the document is converted without caching it.
+ */
+public final class VTDIndexCache {
+
+	public static final String INDEX_CACHE_DIR = "index.cache.dir";
+	private static final String INDEX_EXT = ".vxi";
+	private static final String TMP_EXT = ".tmp";
+	private static final VTDIndexCache DEFAULT = new VTDIndexCache(Paths.get(System.getProperty(INDEX_CACHE_DIR,
+			System.getProperty("user.home") + File.separator + ".pnml2nupn" + File.separator + "index-cache")));
+
+	private final Path dir;
+	private final Logger log;
+
+	public VTDIndexCache(Path dir) {
+		this.dir = dir;
+		this.log = LoggerFactory.getLogger(VTDIndexCache.class.getCanonicalName());
+	}
+
+	/**
+	 * Returns the cache in the default directory.
+	 */
+	public static VTDIndexCache getDefault() {
+		return DEFAULT;
+	}
+
+	public Path getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Loads the index of a document with the standard VTD engine, or parses the
+	 * document and stores its index if there is none yet.
+	 * 
+	 * @param inFile
+	 *            the document file, possibly compressed
+	 * @param doc
+	 *            the (decompressed) contents of the document, smaller than 1 GB
+	 * @param length
+	 *            the length of the contents in the array
+	 * @param maxSize
+	 *            size in bytes the cache directory is brought back to, once
+	 *            a new index is stored
+	 */
+	public XMLNav open(File inFile, byte[] doc, int length, long maxSize) throws IOException, ParseException {
+		final Path index = dir.resolve(key(inFile, doc, length) + INDEX_EXT);
+		if (Files.isRegularFile(index)) {
+			try {
+				final VTDNav vn = new VTDGen().loadIndex(Files.readAllBytes(index));
+				Files.setLastModifiedTime(index, FileTime.fromMillis(System.currentTimeMillis()));
+				return new StdXMLNav(vn, true);
+			} catch (IndexReadException | IOException e) {
+				// Truncated or foreign index: parse the document again and replace it
+				try {
+					Files.deleteIfExists(index);
+				} catch (IOException e1) {
+					log.warn("Could not delete the unreadable index {}: {}", index, e1.toString());
+				}
+			}
+		}
+		final VTDGen vg = new VTDGen();
+		vg.setDoc(doc, 0, length);
+		vg.parse(true);
+		store(vg, index, maxSize);
+		return new StdXMLNav(vg.getNav(), false);
+	}
+
+	/**
+	 * Stores the index of a parsed document. The document stays parsed if the
+	 * index cannot be stored: it is just not cached.
+	 */
+	private void store(VTDGen vg, Path index, long maxSize) {
+		try {
+			Files.createDirectories(dir);
+			final Path tmp = Files.createTempFile(dir, index.getFileName().toString(), TMP_EXT);
+			try {
+				try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp),
+						PNML2NUPNUtils.BUFFERSIZE)) {
+					vg.writeIndex(os);
+				}
+				if (Files.size(tmp) > maxSize) {
+					return;
+				}
+				Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (IndexWriteException | IOException e) {
+			log.warn("Could not store the VTD index in {}, the document is not cached: {}", dir, e.toString());
+			return;
+		}
+		evict(maxSize);
+	}
+
+	/**
+	 * Deletes the least recently used indexes until the cache directory holds
+	 * at most the given number of bytes. Failures are only reported as warnings.
+	 */
+	void evict(long maxSize) {
+		final List<Path> indexes;
+		try (Stream<Path> s = Files.list(dir)) {
+			indexes = s.filter(p -> p.getFileName().toString().endsWith(INDEX_EXT)).collect(Collectors.toList());
+		} catch (IOException e) {
+			log.warn("Could not list the VTD index cache {}: {}", dir, e.toString());
+			return;
+		}
+		final List<IndexEntry> entries = new ArrayList<>(indexes.size());
+		long total = 0L;
+		for (Path p : indexes) {
+			try {
+				final IndexEntry e = new IndexEntry(p, Files.size(p), Files.getLastModifiedTime(p).toMillis());
+				entries.add(e);
+				total += e.size;
+			} catch (IOException e) {
+				// Evicted concurrently
+			}
+		}
+		entries.sort(Comparator.comparingLong(e -> e.lastUsed));
+		for (int i = 0; i < entries.size() && total > maxSize; i++) {
+			try {
+				Files.deleteIfExists(entries.get(i).path);
+				total -= entries.get(i).size;
+			} catch (IOException e) {
+				log.warn("Could not evict the VTD index {}: {}", entries.get(i).path, e.toString());
+			}
+		}
+	}
+
+	private static String key(File inFile, byte[] doc, int length) throws IOException {
+		final CRC32C crc = new CRC32C();
+		crc.update(doc, 0, length);
+		final byte[] path;
+		try {
+			path = MessageDigest.getInstance("SHA-1").digest(inFile.getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 8; i++) {
+			sb.append(Character.forDigit((path[i] >> 4) & 0xf, 16)).append(Character.forDigit(path[i] & 0xf, 16));
+		}
+		return sb.append('-').append(Long.toHexString(length)).append('-')
+				.append(Long.toHexString(inFile.lastModified())).append('-').append(Long.toHexString(crc.getValue()))
+				.toString();
+	}
+
+	private static final class IndexEntry {
+		private final Path path;
+		private final long size, lastUsed;
+
+		private IndexEntry(Path path, long size, long lastUsed) {
+			this.path = path;
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
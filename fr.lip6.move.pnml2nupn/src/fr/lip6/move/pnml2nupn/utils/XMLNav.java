@@ -0,0 +1,145 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.utils;
+
+import com.ximpleware.extended.NavExceptionHuge;
+import com.ximpleware.extended.VTDNavHuge;
+
+/**
+ * Navigation in the VTD index of a PNML document, whatever the VTD engine that
+ * built it: the standard one, with 32-bit offsets, for documents under 1 GB, or
+ * the extended one for larger documents. Errors are always reported with the
+ * exceptions of the extended engine. Elements are selected by the
+ * {@link NavPlan} of their path.
+ * 
+ * @see PNML2NUPNUtils#openXMLStream(java.io.File, long, long)
+ */
+public interface XMLNav {
+
+	int ROOT = VTDNavHuge.ROOT;
+	int PARENT = VTDNavHuge.PARENT;
+	int FIRST_CHILD = VTDNavHuge.FIRST_CHILD;
+	int LAST_CHILD = VTDNavHuge.LAST_CHILD;
+	int NEXT_SIBLING = VTDNavHuge.NEXT_SIBLING;
+	int PREV_SIBLING = VTDNavHuge.PREV_SIBLING;
+
+	boolean toElement(int direction) throws NavExceptionHuge;
+
+	boolean toElement(int direction, String element) throws NavExceptionHuge;
+
+	boolean matchElement(String element) throws NavExceptionHuge;
+
+	int getAttrVal(String attribute) throws NavExceptionHuge;
+
+	int getText();
+
+	String toString(int index) throws NavExceptionHuge;
+
+	/**
+	 * Returns the offset of a token in the document, in bytes. Tokens are kept
+	 * as they are written in the document, i.e. with their entity references.
+	 */
+	long getTokenOffset(int index);
+
+	/**
+	 * Returns the length of a text or attribute value token in the document, in
+	 * bytes.
+	 */
+	int getTokenLength(int index);
+
+	/**
+	 * Returns a byte of the document.
+	 */
+	byte byteAt(long offset);
+
+	/**
+	 * Returns the array holding the document, to read its bytes directly, or
+	 * null if the document is not held in a single array.
+	 */
+	byte[] getDocument();
+
+	/**
+	 * Returns true if the document is encoded in UTF-8 (or ASCII), so that the
+	 * bytes of a token without entity references are its UTF-8 encoding.
+	 */
+	boolean isUTF8();
+
+	/**
+	 * Parses the decimal long held by a text or attribute value token, like
+	 * <code>Long.parseLong(toString(index).trim())</code> but reading the digits
+	 * in place, without creating any String. Tokens holding entity references,
+	 * non-ASCII characters or an invalid number are left to
+	 * {@link Long#parseLong(String)}, which then decodes or rejects them.
+	 *
+	 * @throws NumberFormatException
+	 *             if the token is not a number or overflows a long
+	 */
+	default long parseLong(int index) throws NavExceptionHuge {
+		if (index == -1 || !isUTF8()) {
+			return Long.parseLong(toString(index).trim());
+		}
+		final byte[] doc = getDocument();
+		long j = getTokenOffset(index);
+		long end = j + getTokenLength(index);
+		while (j < end && (byteAt(doc, j) & 0xFF) <= ' ') {
+			j++;
+		}
+		while (end > j && (byteAt(doc, end - 1) & 0xFF) <= ' ') {
+			end--;
+		}
+		final boolean negative = j < end && byteAt(doc, j) == '-';
+		if (j < end && (negative || byteAt(doc, j) == '+')) {
+			j++;
+		}
+		if (j == end) {
+			return Long.parseLong(toString(index).trim());
+		}
+		// Accumulated negatively, as the negative range is the larger one
+		final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		final long multLimit = limit / 10;
+		long result = 0L;
+		int digit;
+		for (; j < end; j++) {
+			digit = byteAt(doc, j) - '0';
+			if (digit < 0 || digit > 9 || result < multLimit || result * 10 < limit + digit) {
+				return Long.parseLong(toString(index).trim());
+			}
+			result = result * 10 - digit;
+		}
+		return negative ? result : -result;
+	}
+
+	private byte byteAt(byte[] doc, long offset) {
+		return doc != null ? doc[(int) offset] : byteAt(offset);
+	}
+
+	void push();
+
+	boolean pop();
+
+	/**
+	 * Returns the index of the element the navigator is on.
+	 */
+	int getCurrentIndex();
+
+	/**
+	 * Returns true if this index was built by the extended VTD engine.
+	 */
+	boolean isHuge();
+
+	/**
+	 * Returns true if this index was loaded from the {@link VTDIndexCache},
+	 * instead of parsing the document.
+	 */
+	boolean isIndexLoaded();
+}
@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2014-2019 Université Paris Nanterre and Sorbonne Université,
+ *			 			CNRS, LIP6
+ *
+ *  All rights reserved.   This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Project leader / Initial Contributor:
+ *    Lom Messan Hillah - <lom-messan.hillah@lip6.fr>
+ */
+package fr.lip6.move.pnml2nupn.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Structural bounds on small nets whose bounds are known.
+ */
+public class StructuralBoundsTest {
+
+	@Test
+	public void mutualExclusionIsSafe() {
+		// idle1, cs1, idle2, cs2, mutex; enter1, leave1, enter2, leave2
+		final StructuralBounds sb = new StructuralBounds(5, 4);
+		sb.setInitialMarking(0, 1L);
+		sb.setInitialMarking(2, 1L);
+		sb.setInitialMarking(4, 1L);
+		for (int i = 0; i < 2; i++) {
+			final int idle = 2 * i, cs = idle + 1, enter = 2 * i, leave = enter + 1;
+			sb.addArc(idle, enter, 1L, true);
+			sb.addArc(4, enter, 1L, true);
+			sb.addArc(cs, enter, 1L, false);
+			sb.addArc(cs, leave, 1L, true);
+			sb.addArc(idle, leave, 1L, false);
+			sb.addArc(4, leave, 1L, false);
+		}
+		sb.compute();
+		for (int p = 0; p < 5; p++) {
+			assertEquals(1L, sb.getUpperBound(p));
+		}
+		assertEquals(0, sb.getNbGivenUpParts());
+	}
+
+	@Test
+	public void weightedArcs() {
+		final StructuralBounds sb = new StructuralBounds(2, 2);
+		sb.setInitialMarking(0, 2L);
+		sb.addArc(0, 0, 2L, true);
+		sb.addArc(1, 0, 1L, false);
+		sb.addArc(1, 1, 1L, true);
+		sb.addArc(0, 1, 2L, false);
+		sb.compute();
+		assertEquals(2L, sb.getUpperBound(0));
+		assertEquals(1L, sb.getUpperBound(1));
+	}
+
+	@Test
+	public void sourceTransitionMakesPlacesUnbounded() {
+		// t0 -> p0 -> t1 -> p1, and p2 -> t2 -> p2 + p3 with p2 marked
+		final StructuralBounds sb = new StructuralBounds(4, 3);
+		sb.setInitialMarking(2, 1L);
+		sb.addArc(0, 0, 1L, false);
+		sb.addArc(0, 1, 1L, true);
+		sb.addArc(1, 1, 1L, false);
+		sb.addArc(2, 2, 1L, true);
+		sb.addArc(2, 2, 1L, false);
+		sb.addArc(3, 2, 1L, false);
+		sb.compute();
+		assertEquals(StructuralBounds.UNBOUNDED, sb.getUpperBound(0));
+		assertEquals(StructuralBounds.UNBOUNDED, sb.getUpperBound(1));
+		assertEquals(1L, sb.getUpperBound(2));
+		assertEquals(1L, sb.getLowerBound(2));
+		assertEquals(StructuralBounds.UNBOUNDED, sb.getUpperBound(3));
+	}
+
+	@Test
+	public void deadTransitionDoesNotMakePlacesUnbounded() {
+		// p0 -> t0 -> p1 -> t1 -> p0 with p0 marked, and t2 -> p1 with a read arc on the empty q
+		final StructuralBounds sb = new StructuralBounds(3, 3);
+		sb.setInitialMarking(0, 1L);
+		sb.addArc(0, 0, 1L, true);
+		sb.addArc(1, 0, 1L, false);
+		sb.addArc(1, 1, 1L, true);
+		sb.addArc(0, 1, 1L, false);
+		sb.addArc(2, 2, 1L, true);
+		sb.addArc(2, 2, 1L, false);
+		sb.addArc(1, 2, 1L, false);
+		sb.compute();
+		assertEquals(StructuralBounds.UNKNOWN, sb.getUpperBound(0));
+		assertEquals(StructuralBounds.UNKNOWN, sb.getUpperBound(1));
+		assertEquals(0L, sb.getUpperBound(2));
+	}
+
+	@Test(timeout = 10_000L)
+	public void wideTransitionIsGivenUpQuickly() {
+		// One transition from 3000 marked places to 3000 other ones
+		final int n = 3000;
+		final StructuralBounds sb = new StructuralBounds(2 * n, 1);
+		for (int p = 0; p < n; p++) {
+			sb.setInitialMarking(p, 1L);
+			sb.addArc(p, 0, 1L, true);
+			sb.addArc(n + p, 0, 1L, false);
+		}
+		sb.compute();
+		assertEquals(1, sb.getNbGivenUpParts());
+		for (int p = 0; p < 2 * n; p++) {
+			assertEquals(1L, sb.getUpperBound(p));
+		}
+	}
+
+	@Test(timeout = 10_000L)
+	public void givenUpPartKeepsUnknownBounds() {
+		// t0 moves 400 places to 400 other ones, t1 moves them back
+		final int n = 400;
+		final StructuralBounds sb = new StructuralBounds(2 * n, 2);
+		for (int p = 0; p < n; p++) {
+			sb.setInitialMarking(p, 1L);
+			sb.addArc(p, 0, 1L, true);
+			sb.addArc(n + p, 0, 1L, false);
+			sb.addArc(n + p, 1, 1L, true);
+			sb.addArc(p, 1, 1L, false);
+		}
+		sb.compute();
+		assertEquals(1, sb.getNbGivenUpParts());
+		for (int p = 0; p < 2 * n; p++) {
+			assertEquals(StructuralBounds.UNKNOWN, sb.getUpperBound(p));
+		}
+	}
+}